@@ -66,6 +66,18 @@ public class BukkitChunk_1_7 extends CharFaweChunk<Chunk, BukkitQueue17> {
         return datas[i];
     }
 
+    @Override
+    public void fillCuboid(int x1, int x2, int y1, int y2, int z1, int z2, int id, byte data) {
+        // The byte ids are set per block
+        for (int x = x1; x <= x2; x++) {
+            for (int y = y1; y <= y2; y++) {
+                for (int z = z1; z <= z2; z++) {
+                    setBlock(x, y, z, id, data);
+                }
+            }
+        }
+    }
+
     @Override
     public void setBlock(int x, int y, int z, int id) {
         this.setBlock(x, y, z, id, 0);
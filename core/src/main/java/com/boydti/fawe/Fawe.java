@@ -6,6 +6,7 @@ import com.boydti.fawe.config.Commands;
 import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.object.FawePlayer;
 import com.boydti.fawe.object.brush.visualization.VisualQueue;
+import com.boydti.fawe.object.changeset.HistorySegments;
 import com.boydti.fawe.regions.general.plot.PlotSquaredFeature;
 import com.boydti.fawe.util.*;
 import com.boydti.fawe.util.chat.ChatManager;
@@ -83,6 +84,7 @@ import java.io.InputStream;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryNotificationInfo;
 import java.lang.management.MemoryUsage;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -146,7 +148,7 @@ public class Fawe {
     private FaweVersion version;
     private VisualQueue visualQueue;
     private Updater updater;
-    private TextureUtil textures;
+    private volatile TextureUtil textures;
     private DefaultTransformParser transformParser;
     private ChatManager chatManager = new PlainChatManager();
 
@@ -228,6 +230,15 @@ public class Fawe {
                 MainUtil.deleteOlder(MainUtil.getFile(IMP.getDirectory(), Settings.IMP.PATHS.CLIPBOARD), TimeUnit.DAYS.toMillis(Settings.IMP.CLIPBOARD.DELETE_AFTER_DAYS), false);
             }
         });
+        if (Settings.IMP.HISTORY.USE_DISK && Settings.IMP.HISTORY.COMPACT_AFTER_HOURS > 0) {
+            // Pack older history every hour
+            TaskManager.IMP.repeatAsync(new Runnable() {
+                @Override
+                public void run() {
+                    HistorySegments.compactAll();
+                }
+            }, 20 * 60 * 60);
+        }
 
         if (Settings.IMP.METRICS) {
             try {
@@ -265,6 +276,18 @@ public class Fawe {
             });
         }
 
+        // Load the textures in the background if they have been used before (e.g. by /cfi or a color brush)
+        File textureSnapshot = TextureUtil.getSnapshotFile();
+        if (textureSnapshot != null && textureSnapshot.exists()) {
+            TaskManager.IMP.laterAsync(() -> {
+                try {
+                    getTextureUtil();
+                } catch (Throwable e) {
+                    MainUtil.handleError(e);
+                }
+            }, 20);
+        }
+
         // Delayed worldedit setup
         TaskManager.IMP.later(() -> {
             try {
@@ -365,8 +388,9 @@ public class Fawe {
                 tmp = textures;
                 if (tmp == null) {
                     try {
-                        textures = tmp = new TextureUtil();
+                        tmp = new TextureUtil();
                         tmp.loadModTextures();
+                        textures = tmp;
                     } catch (IOException e) {
                         throw new RuntimeException(e);
                     }
@@ -687,9 +711,9 @@ public class Fawe {
             ne.addNotificationListener(new NotificationListener() {
                 @Override
                 public void handleNotification(final Notification notification, final Object handback) {
-                    final long heapSize = Runtime.getRuntime().totalMemory();
-                    final long heapMaxSize = Runtime.getRuntime().maxMemory();
-                    if (heapSize < heapMaxSize) {
+                    // Usage after a collection is real pressure, current usage may just be garbage
+                    if (!MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())
+                            && MemUtil.getLiveBytes() < MemUtil.getBudgetBytes()) {
                         return;
                     }
                     MemUtil.memoryLimitedTask();
@@ -706,6 +730,9 @@ public class Fawe {
                     }
                     final long alert = (max * Settings.IMP.MAX_MEMORY_PERCENT) / 100;
                     mp.setUsageThreshold(alert);
+                    if (mp.isCollectionUsageThresholdSupported()) {
+                        mp.setCollectionUsageThreshold(alert);
+                    }
                 }
             }
         } catch (Throwable e) {
@@ -10,12 +10,15 @@ import com.boydti.fawe.object.FaweQueue;
 import com.boydti.fawe.object.PseudoRandom;
 import com.boydti.fawe.object.RegionWrapper;
 import com.boydti.fawe.object.changeset.DiskStorageHistory;
+import com.boydti.fawe.object.changeset.HistoryManifest;
+import com.boydti.fawe.object.changeset.HistorySegments;
 import com.boydti.fawe.object.schematic.Schematic;
 import com.boydti.fawe.regions.FaweMaskManager;
 import com.boydti.fawe.util.EditSessionBuilder;
 import com.boydti.fawe.util.MainUtil;
 import com.boydti.fawe.util.MemUtil;
 import com.boydti.fawe.util.SetQueue;
+import com.boydti.fawe.util.StringMan;
 import com.boydti.fawe.util.TaskManager;
 import com.boydti.fawe.util.WEManager;
 import com.boydti.fawe.wrappers.WorldWrapper;
@@ -40,6 +43,8 @@ import com.sk89q.worldedit.internal.registry.InputParser;
 import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.world.AbstractWorld;
 import com.sk89q.worldedit.world.World;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -52,6 +57,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -327,9 +333,31 @@ public class FaweAPI {
         return history;
     }
 
+    private static final class EditRef {
+        private final UUID uuid;
+        private final int index;
+
+        private EditRef(UUID uuid, int index) {
+            this.uuid = uuid;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof EditRef && ((EditRef) obj).index == index && ((EditRef) obj).uuid.equals(uuid);
+        }
+
+        @Override
+        public int hashCode() {
+            return uuid.hashCode() * 31 + index;
+        }
+    }
+
     /**
      * Used in the RollBack to generate a list of DiskStorageHistory objects<br>
      * - Note: An edit outside the radius may be included if it overlaps with an edit inside that depends on it.
+     * - The bounds of each edit are taken from the player's {@link HistoryManifest} when it has them (instead of reading the edit)
+     * - Includes the older edits packed into the world's {@link HistorySegments}
      *
      * @param origin   - The origin location
      * @param user     - The uuid (may be null)
@@ -345,7 +373,8 @@ public class FaweAPI {
             return new ArrayList<>();
         }
         long now = System.currentTimeMillis();
-        ArrayList<File> files = new ArrayList<>();
+        ArrayList<EditRef> edits = new ArrayList<>();
+        HashSet<EditRef> loose = new HashSet<>();
         for (File userFile : history.listFiles()) {
             if (!userFile.isDirectory()) {
                 continue;
@@ -359,39 +388,66 @@ public class FaweAPI {
             if (user != null && !userUUID.equals(user)) {
                 continue;
             }
-            ArrayList<Integer> ids = new ArrayList<>();
             for (File file : userFile.listFiles()) {
-                if (file.getName().endsWith(".bd")) {
+                String name = file.getName();
+                if (name.endsWith(".bd")) {
+                    Integer index = StringMan.toInteger(name, 0, name.length() - 3);
+                    if (index == null) {
+                        continue;
+                    }
+                    EditRef edit = new EditRef(userUUID, index);
+                    loose.add(edit);
                     if (timediff >= Integer.MAX_VALUE || now - file.lastModified() <= timediff) {
-                        files.add(file);
-                        if (files.size() > 2048) {
+                        edits.add(edit);
+                        if (edits.size() > 2048) {
                             return null;
                         }
                     }
                 }
             }
         }
+        // Older edits are packed into the world's segments
+        for (Map.Entry<UUID, Int2ObjectOpenHashMap<HistorySegments.Entry>> entry : HistorySegments.get(origin.world).getEdits(user).entrySet()) {
+            for (Int2ObjectMap.Entry<HistorySegments.Entry> packed : entry.getValue().int2ObjectEntrySet()) {
+                EditRef edit = new EditRef(entry.getKey(), packed.getIntKey());
+                if (loose.contains(edit)) {
+                    continue;
+                }
+                if (timediff >= Integer.MAX_VALUE || now - packed.getValue().modified <= timediff) {
+                    edits.add(edit);
+                    if (edits.size() > 2048) {
+                        return null;
+                    }
+                }
+            }
+        }
         World world = origin.getWorld();
-        Collections.sort(files, new Comparator<File>() {
+        Collections.sort(edits, new Comparator<EditRef>() {
             @Override
-            public int compare(File a, File b) {
-                String aName = a.getName();
-                String bName = b.getName();
-                int aI = Integer.parseInt(aName.substring(0, aName.length() - 3));
-                int bI = Integer.parseInt(bName.substring(0, bName.length() - 3));
-                long value = aI - bI;
-                return value == 0 ? 0 : value < 0 ? -1 : 1;
+            public int compare(EditRef a, EditRef b) {
+                return Integer.compare(a.index, b.index);
             }
         });
         RegionWrapper bounds = new RegionWrapper(origin.x - radius, origin.x + radius, origin.z - radius, origin.z + radius);
         RegionWrapper boundsPlus = new RegionWrapper(bounds.minX - 64, bounds.maxX + 512, bounds.minZ - 64, bounds.maxZ + 512);
         HashSet<RegionWrapper> regionSet = new HashSet<RegionWrapper>(Arrays.asList(bounds));
         ArrayList<DiskStorageHistory> result = new ArrayList<>();
-        for (File file : files) {
-            UUID uuid = UUID.fromString(file.getParentFile().getName());
-            DiskStorageHistory dsh = new DiskStorageHistory(world, uuid, Integer.parseInt(file.getName().split("\\.")[0]));
-            DiskStorageHistory.DiskStorageSummary summary = dsh.summarize(boundsPlus, shallow);
-            RegionWrapper region = new RegionWrapper(summary.minX, summary.maxX, summary.minZ, summary.maxZ);
+        HashMap<UUID, HistoryManifest> manifests = new HashMap<>();
+        for (EditRef edit : edits) {
+            DiskStorageHistory dsh = new DiskStorageHistory(world, edit.uuid, edit.index);
+            // Use the bounds in the manifest, instead of reading the edit
+            HistoryManifest manifest = manifests.get(edit.uuid);
+            if (manifest == null && !manifests.containsKey(edit.uuid)) {
+                manifests.put(edit.uuid, manifest = HistoryManifest.load(new File(history, edit.uuid.toString())));
+            }
+            HistoryManifest.Entry entry = manifest == null ? null : manifest.get(edit.index);
+            RegionWrapper region;
+            if (entry != null && entry.hasBounds()) {
+                region = new RegionWrapper(entry.minX, entry.maxX, entry.minZ, entry.maxZ);
+            } else {
+                DiskStorageHistory.DiskStorageSummary summary = dsh.summarize(boundsPlus, shallow);
+                region = new RegionWrapper(summary.minX, summary.maxX, summary.minZ, summary.maxZ);
+            }
             boolean encompassed = false;
             boolean isIn = false;
             for (RegionWrapper allowed : regionSet) {
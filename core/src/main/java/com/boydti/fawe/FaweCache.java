@@ -1,5 +1,7 @@
 package com.boydti.fawe;
 
+import com.boydti.fawe.jnbt.NBTIntern;
+import com.boydti.fawe.object.BlockProperties;
 import com.boydti.fawe.object.PseudoRandom;
 import com.sk89q.jnbt.ByteArrayTag;
 import com.sk89q.jnbt.ByteTag;
@@ -17,7 +19,6 @@ import com.sk89q.jnbt.Tag;
 import com.sk89q.worldedit.WorldEdit;
 import com.sk89q.worldedit.blocks.BaseBlock;
 import com.sk89q.worldedit.blocks.BaseItem;
-import com.sk89q.worldedit.blocks.BlockType;
 import com.sk89q.worldedit.blocks.ImmutableBlock;
 import com.sk89q.worldedit.blocks.ImmutableDatalessBlock;
 import com.sk89q.worldedit.blocks.ImmutableNBTBlock;
@@ -56,8 +57,14 @@ public class FaweCache {
      */
     public final static byte[][] CACHE_Z = new byte[16][4096];
 
-    public final static boolean[] CACHE_PASSTHROUGH = new boolean[65535];
-    public final static boolean[] CACHE_TRANSLUSCENT = new boolean[65535];
+    /**
+     * [ id ] => material, or null if unknown (see {@link #setMaterial})
+     */
+    private final static BundledBlockData.FaweBlockMaterial[] MATERIALS = new BundledBlockData.FaweBlockMaterial[4096];
+    /**
+     * Built from MATERIALS when first needed, null after a material changed
+     */
+    private static volatile BlockProperties properties;
 
     /**
      * Immutable biome cache
@@ -200,18 +207,10 @@ public class FaweCache {
         try {
             BundledBlockData bundled = BundledBlockData.getInstance();
             bundled.loadFromResource();
-            for (int i = 0; i < Character.MAX_VALUE; i++) {
-                int id = i >> 4;
-                int data = i & 0xf;
-                CACHE_TRANSLUSCENT[i] = BlockType.isTranslucent(id);
-                CACHE_PASSTHROUGH[i] = BlockType.canPassThrough(id, data);
+            for (int id = 0; id < MATERIALS.length; id++) {
                 BundledBlockData.BlockEntry blockEntry = bundled.findById(id);
-                if (blockEntry != null) {
-                    BundledBlockData.FaweBlockMaterial material = blockEntry.material;
-                    if (material != null) {
-                        CACHE_TRANSLUSCENT[i] = !material.isOpaque();
-                        CACHE_PASSTHROUGH[i] = !material.isMovementBlocker();
-                    }
+                if (blockEntry != null && blockEntry.material != null) {
+                    setMaterial(id, blockEntry.material);
                 }
             }
         } catch (Throwable ignore) {
@@ -291,12 +290,63 @@ public class FaweCache {
         }
     }
 
+    /**
+     * Update the material of a block id (called when {@link BundledBlockData} adds a block)<br>
+     * - The property table is rebuilt when next needed
+     *
+     * @param id
+     * @param material the material, or null if the id is unknown
+     */
+    public static void setMaterial(int id, BundledBlockData.FaweBlockMaterial material) {
+        if (id < 0 || id >= MATERIALS.length) {
+            return;
+        }
+        synchronized (MATERIALS) {
+            MATERIALS[id] = material;
+            properties = null;
+        }
+    }
+
+    /**
+     * Get the (immutable) property table of every block
+     *
+     * @return
+     */
+    public static BlockProperties getProperties() {
+        BlockProperties table = properties;
+        if (table == null) {
+            synchronized (MATERIALS) {
+                table = properties;
+                if (table == null) {
+                    properties = table = new BlockProperties(MATERIALS);
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @param id
+     * @return the light opacity of a block (0-15)
+     */
+    public static int getOpacity(int id) {
+        return getProperties().getOpacity(id << 4);
+    }
+
+    /**
+     * @param id
+     * @return the light a block emits (0-15)
+     */
+    public static int getBrightness(int id) {
+        return getProperties().getBrightness(id << 4);
+    }
+
     public static boolean canPassThrough(int id, int data) {
-        return CACHE_PASSTHROUGH[FaweCache.getCombined(id, data)];
+        return getProperties().canPassThrough(FaweCache.getCombined(id, data));
     }
 
     public static boolean isTranslucent(int id, int data) {
-        return CACHE_TRANSLUSCENT[FaweCache.getCombined(id, data)];
+        return getProperties().isTranslucent(FaweCache.getCombined(id, data));
     }
 
     public static boolean isLiquidOrGas(int id) {
@@ -939,11 +989,11 @@ public class FaweCache {
     }
 
     public static ShortTag asTag(short value) {
-        return new ShortTag(value);
+        return NBTIntern.asTag(value);
     }
 
     public static IntTag asTag(int value) {
-        return new IntTag(value);
+        return NBTIntern.asTag(value);
     }
 
     public static DoubleTag asTag(double value) {
@@ -951,7 +1001,7 @@ public class FaweCache {
     }
 
     public static ByteTag asTag(byte value) {
-        return new ByteTag(value);
+        return NBTIntern.asTag(value);
     }
 
     public static FloatTag asTag(float value) {
@@ -971,17 +1021,19 @@ public class FaweCache {
     }
 
     public static StringTag asTag(String value) {
-        return new StringTag(value);
+        return NBTIntern.asTag(value);
     }
 
     public static CompoundTag asTag(Map<String, Object> value) {
-        HashMap<String, Tag> map = new HashMap<>();
+        int size = value.size();
+        String[] keys = new String[size];
+        Tag[] values = new Tag[size];
+        int i = 0;
         for (Map.Entry<String, Object> entry : value.entrySet()) {
-            Object child = entry.getValue();
-            Tag tag = asTag(child);
-            map.put(entry.getKey(), tag);
+            keys[i] = NBTIntern.name(entry.getKey());
+            values[i++] = asTag(entry.getValue());
         }
-        return new CompoundTag(map);
+        return new CompoundTag(NBTIntern.compound(keys, values, i));
     }
 
     public static Tag asTag(Object value) {
@@ -4,6 +4,7 @@ import com.boydti.fawe.Fawe;
 import com.boydti.fawe.FaweAPI;
 import com.boydti.fawe.FaweCache;
 import com.boydti.fawe.config.BBC;
+import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.jnbt.anvil.*;
 import com.boydti.fawe.jnbt.anvil.filters.*;
 import com.boydti.fawe.jnbt.anvil.history.IAnvilHistory;
@@ -76,6 +77,23 @@ public class AnvilCommands {
 
     @Deprecated
     public static <G, T extends MCAFilter<G>> T runWithWorld(Player player, String folder, T filter, boolean force, boolean unsafe) {
+        return runWithWorld(player, folder, filter, force, unsafe, null);
+    }
+
+    /**
+     * Run safely on an unloaded world (no selection)
+     *
+     * @param player
+     * @param folder
+     * @param filter
+     * @param force
+     * @param unsafe
+     * @param job    the command and its arguments, used to resume the job if it was interrupted (null to not keep a journal)
+     * @param <G>
+     * @param <T>
+     * @return
+     */
+    public static <G, T extends MCAFilter<G>> T runWithWorld(Player player, String folder, T filter, boolean force, boolean unsafe, String job) {
         boolean copy = false;
         if (FaweAPI.getWorld(folder) != null) {
             if (!force) {
@@ -86,11 +104,42 @@ public class AnvilCommands {
         }
         FaweQueue defaultQueue = SetQueue.IMP.getNewQueue(folder, true, false);
         MCAQueue queue = new MCAQueue(defaultQueue);
-        if (copy && !unsafe) {
-            return queue.filterCopy(filter, RegionWrapper.GLOBAL());
-        } else {
-            return queue.filterWorld(filter);
+        AnvilJournal journal = null;
+        if (Settings.IMP.ANVIL.JOURNAL && job != null) {
+            try {
+                journal = AnvilJournal.open(queue.getSaveFolder(), filter, job);
+                if (journal.isResumed()) {
+                    BBC.ANVIL_RESUMED.send(player, journal.getDone(), journal.getFile());
+                }
+                queue.setJournal(journal);
+            } catch (IOException e) {
+                MainUtil.handleError(e);
+            }
+        }
+        T result = null;
+        try {
+            if (copy && !unsafe) {
+                result = queue.filterCopy(filter, RegionWrapper.GLOBAL());
+            } else {
+                result = queue.filterWorld(filter);
+            }
+        } finally {
+            if (journal != null) {
+                // Keep the journal if the job didn't finish, so it can be resumed
+                journal.close(result != null);
+                if (journal.getInDoubt() > 0) {
+                    BBC.ANVIL_IN_DOUBT.send(player, journal.getInDoubt(), journal.getFile());
+                }
+                if (journal.getFailed() > 0) {
+                    BBC.ANVIL_FAILED.send(player, journal.getFailed(), journal.getFile());
+                }
+            }
         }
+        return result;
+    }
+
+    private static String job(String command, Object... args) {
+        return command + " " + StringMan.join(args, " ");
     }
 
     /**
@@ -157,7 +206,7 @@ public class AnvilCommands {
         }
         final FaweBlockMatcher matchTo = FaweBlockMatcher.setBlocks(worldEdit.getBlocks(player, to, true));
         ReplaceSimpleFilter filter = new ReplaceSimpleFilter(matchFrom, matchTo);
-        ReplaceSimpleFilter result = runWithWorld(player, folder, filter, true);
+        ReplaceSimpleFilter result = runWithWorld(player, folder, filter, true, false, job("replaceall", folder, from, to, useData));
         if (result != null) player.print(BBC.getPrefix() + BBC.VISITOR_BLOCK.format(result.getTotal()));
     }
 
@@ -182,7 +231,7 @@ public class AnvilCommands {
             to = ClipboardRemapper.RemapPlatform.PC;
         }
         RemapFilter filter = new RemapFilter(from, to);
-        RemapFilter result = runWithWorld(player, folder, filter, true);
+        RemapFilter result = runWithWorld(player, folder, filter, true, false, job("remapall", folder, from, to));
         if (result != null) player.print(BBC.getPrefix() + BBC.VISITOR_BLOCK.format(result.getTotal()));
     }
 
@@ -202,7 +251,7 @@ public class AnvilCommands {
     public void deleteAllUnvisited(Player player, String folder, int inhabitedTicks, @Optional("60000") int fileDurationMillis) throws WorldEditException {
         long chunkInactivityMillis = fileDurationMillis; // Use same value for now
         DeleteUninhabitedFilter filter = new DeleteUninhabitedFilter(fileDurationMillis, inhabitedTicks, chunkInactivityMillis);
-        DeleteUninhabitedFilter result = runWithWorld(player, folder, filter, true);
+        DeleteUninhabitedFilter result = runWithWorld(player, folder, filter, true, false, job("deleteallunvisited", folder, inhabitedTicks, fileDurationMillis));
         if (result != null) player.print(BBC.getPrefix() + BBC.VISITOR_BLOCK.format(result.getTotal()));
     }
 
@@ -223,7 +272,7 @@ public class AnvilCommands {
         long chunkInactivityMillis = fileDurationMillis; // Use same value for now
         DeleteUnclaimedFilter filter = new DeleteUnclaimedFilter(player.getWorld(), fileDurationMillis, inhabitedTicks, chunkInactivityMillis);
         if (debug) filter.enableDebug();
-        DeleteUnclaimedFilter result = runWithWorld(player, folder, filter, true);
+        DeleteUnclaimedFilter result = runWithWorld(player, folder, filter, true, false, job("deleteallunclaimed", folder, inhabitedTicks, fileDurationMillis));
         if (result != null) player.print(BBC.getPrefix() + BBC.VISITOR_BLOCK.format(result.getTotal()));
     }
 
@@ -263,7 +312,7 @@ public class AnvilCommands {
     public void deleteAllOldRegions(Player player, String folder, String time) throws WorldEditException {
         long duration = MainUtil.timeToSec(time) * 1000l;
         DeleteOldFilter filter = new DeleteOldFilter(duration);
-        DeleteOldFilter result = runWithWorld(player, folder, filter, true);
+        DeleteOldFilter result = runWithWorld(player, folder, filter, true, false, job("deletealloldregions", folder, time));
         if (result != null) player.print(BBC.getPrefix() + BBC.VISITOR_BLOCK.format(result.getTotal()));
     }
 
@@ -294,7 +343,7 @@ public class AnvilCommands {
     @CommandPermissions("worldedit.anvil.trimallair")
     public void deleteBiome(Player player, String folder, BaseBiome biome, @Switch('u') boolean unsafe) {
         DeleteBiomeFilterSimple filter = new DeleteBiomeFilterSimple(biome);
-        DeleteBiomeFilterSimple result = runWithWorld(player, folder, filter, true, unsafe);
+        DeleteBiomeFilterSimple result = runWithWorld(player, folder, filter, true, unsafe, job("deletebiomechunks", folder, biome.getId(), unsafe));
         if (result != null) player.print(BBC.getPrefix() + BBC.VISITOR_BLOCK.format(result.getTotal()));
     }
 
@@ -305,7 +354,7 @@ public class AnvilCommands {
     @CommandPermissions("worldedit.anvil.trimallair")
     public void trimAllAir(Player player, String folder, @Switch('u') boolean unsafe) throws WorldEditException {
         TrimAirFilter filter = new TrimAirFilter();
-        TrimAirFilter result = runWithWorld(player, folder, filter, true, unsafe);
+        TrimAirFilter result = runWithWorld(player, folder, filter, true, unsafe, job("trimallair", folder, unsafe));
         if (result != null) player.print(BBC.getPrefix() + BBC.VISITOR_BLOCK.format(result.getTotal()));
     }
 
@@ -317,7 +366,7 @@ public class AnvilCommands {
     @CommandPermissions("worldedit.anvil.debugfixair")
     public void debugfixair(Player player, String folder) throws WorldEditException {
         DebugFixAir filter = new DebugFixAir();
-        DebugFixAir result = runWithWorld(player, folder, filter, true, true);
+        DebugFixAir result = runWithWorld(player, folder, filter, true, true, job("debugfixair", folder));
         if (result != null) player.print(BBC.getPrefix() + BBC.VISITOR_BLOCK.format(result.getTotal()));
     }
 
@@ -360,7 +409,8 @@ public class AnvilCommands {
             }
             filter = new ReplacePatternFilter(matchFrom, to);
         }
-        MCAFilterCounter result = runWithWorld(player, folder, filter, true);
+        // Not journaled, as the pattern can't be compared with a previous run's
+        MCAFilterCounter result = runWithWorld(player, folder, filter, true, false, null);
         if (result != null) player.print(BBC.getPrefix() + BBC.VISITOR_BLOCK.format(result.getTotal()));
     }
 
@@ -385,7 +435,8 @@ public class AnvilCommands {
             searchBlocks.forEach(counter::addBlock);
             filter = counter;
         }
-        MCAFilterCounter result = runWithWorld(player, folder, filter, true);
+        // Not journaled, as a resumed count would miss the files counted by the previous run
+        MCAFilterCounter result = runWithWorld(player, folder, filter, true, false, null);
         if (result != null) player.print(BBC.getPrefix() + BBC.SELECTION_COUNT.format(result.getTotal()));
     }
 
@@ -475,6 +526,18 @@ public class AnvilCommands {
         MCAFilter<long[]> counts;
         if (useData) {
             counts = runWithSelection(player, editSession, selection, new MCAFilter<long[]>() {
+                @Override
+                public boolean applyReader(MCAChunkReader reader, long[] counts) {
+                    for (int layer = 0; layer < 16; layer++) {
+                        if (reader.doesSectionExist(layer)) {
+                            for (int i = 0; i < 4096; i++) {
+                                counts[(reader.getId(layer, i) << 4) + reader.getData(layer, i)]++;
+                            }
+                        }
+                    }
+                    return true;
+                }
+
                 @Override
                 public void applyBlock(int x, int y, int z, BaseBlock block, long[] counts) {
                     counts[block.getCombined()]++;
@@ -488,6 +551,20 @@ public class AnvilCommands {
             count = new long[Character.MAX_VALUE + 1];
         } else {
             counts = runWithSelection(player, editSession, selection, new MCAFilter<long[]>() {
+                @Override
+                public boolean applyReader(MCAChunkReader reader, long[] counts) {
+                    byte[] buffer = reader.getBuffer();
+                    for (int layer = 0; layer < 16; layer++) {
+                        if (reader.doesSectionExist(layer)) {
+                            int offset = reader.getIdsOffset(layer);
+                            for (int i = offset; i < offset + 4096; i++) {
+                                counts[buffer[i] & 0xFF]++;
+                            }
+                        }
+                    }
+                    return true;
+                }
+
                 @Override
                 public void applyBlock(int x, int y, int z, BaseBlock block, long[] counts) {
                     counts[block.getId()]++;
@@ -74,8 +74,8 @@ public class Rollback extends FaweCommand {
                             RegionWrapper region = new RegionWrapper(summary.minX, summary.maxX, summary.minZ, summary.maxZ);
                             int distance = region.distance(origin.x, origin.z);
                             String name = Fawe.imp().getName(edit.getUUID());
-                            long seconds = (System.currentTimeMillis() - edit.getBDFile().lastModified()) / 1000;
-                            total += edit.getBDFile().length();
+                            long seconds = (System.currentTimeMillis() - edit.lastModified()) / 1000;
+                            total += edit.getCompressedSize();
                             int size = summary.getSize();
                             Map<Integer, Double> percents = summary.getPercents();
                             StringBuilder percentString = new StringBuilder();
@@ -115,6 +115,9 @@ public enum BBC {
     SELECTION_CLEARED("Selection cleared", "WorldEdit.Selection"),
 
     WORLD_IS_LOADED("The world shouldn't be in use when executing. Unload the world, or use use -f to override (save first)", "WorldEdit.Anvil"),
+    ANVIL_RESUMED("Resuming the previous run of this job (%s0 files already done). Delete %s1 to start over", "WorldEdit.Anvil"),
+    ANVIL_IN_DOUBT("%s0 files were skipped as the previous run may have partly written them, see %s1", "WorldEdit.Anvil"),
+    ANVIL_FAILED("%s0 files failed (see the console) and will be filtered again by the next run, see %s1", "WorldEdit.Anvil"),
 
     BRUSH_RESET("Reset your brush. (SHIFT + Click)", "WorldEdit.Brush"),
     BRUSH_NONE("You aren't holding a brush!", "WorldEdit.Brush"),
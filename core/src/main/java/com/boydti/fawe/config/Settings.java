@@ -52,6 +52,8 @@ public class Settings extends Config {
     @Create
     public CLIPBOARD CLIPBOARD;
     @Create
+    public SCHEMATIC_BROWSER SCHEMATIC_BROWSER;
+    @Create
     public LIGHTING LIGHTING;
     @Create
     public TICK_LIMITER TICK_LIMITER;
@@ -62,6 +64,8 @@ public class Settings extends Config {
     @Create
     public EXPERIMENTAL EXPERIMENTAL;
     @Create
+    public ANVIL ANVIL;
+    @Create
     public QUEUE QUEUE;
     @Create
     public HISTORY HISTORY;
@@ -86,6 +90,11 @@ public class Settings extends Config {
                 " - Use a shared directory or NFS/Samba"
         })
         public String CLIPBOARD = "clipboard";
+        @Comment({
+                "Snapshots of the block registry and texture colors, to speed up startup",
+                " - These are regenerated when the inputs change, and are safe to delete"
+        })
+        public String CACHE = "cache";
         @Comment("Each player has their own sub directory for schematics")
         public boolean PER_PLAYER_SCHEMATICS = true;
     }
@@ -143,6 +152,12 @@ public class Settings extends Config {
                 " - Having an artificial delay will use more CPU/Memory",
         })
         public int SPEED_REDUCTION = 0;
+        @Comment({
+                "The share of chunk placement time given to these edits:",
+                " - Relative to other players (e.g. 2 = twice as much time as a player with 1)",
+                " - Only used when queue.fair-scheduling is enabled",
+        })
+        public int QUEUE_SHARE = 1;
         @Comment({
                 "Place chunks instead of individual blocks:",
                 " - Disabling this will negatively impact performance",
@@ -229,6 +244,24 @@ public class Settings extends Config {
         public int CHUNK_WAIT_MS = 1000;
         @Comment("Delete history on disk after a number of days")
         public int DELETE_AFTER_DAYS = 7;
+        @Comment({
+                "Pack history older than this many hours into one file per world and day:",
+                " - Far fewer files, so backups and purges are faster",
+                " - 0 = Disabled",
+        })
+        public int COMPACT_AFTER_HOURS = 24;
+        @Comment({
+                "Recompress history when packing it (see compression-level):",
+                " - 0 = Keep the current compression",
+        })
+        public int COMPACT_COMPRESSION_LEVEL = 0;
+        @Comment({
+                "How many batches of blocks to decompress ahead when undoing or redoing:",
+                " - Blocks are decompressed on another thread while the previous batch is applied",
+                " - Each batch is up to 65536 blocks, so this bounds the memory used",
+                " - 0 = Decompress and apply blocks one at a time",
+        })
+        public int REPLAY_READ_AHEAD = 4;
         @Comment("Delete history in memory on logout (does not effect disk)")
         public boolean DELETE_ON_LOGOUT = true;
         @Comment({
@@ -285,6 +318,19 @@ public class Settings extends Config {
         })
         public int EXTRA_TIME_MS = 0;
 
+        @Comment({
+                "Cache the terrain of columns which brushes and masks look up the surface of",
+                " - The cache is shared by everyone editing the same world",
+                " - When FAWE changes a chunk, the cached columns are updated with the changes",
+                " - The maximum number of chunks cached per world (0 = disabled)"
+        })
+        public int SURFACE_CACHE_CHUNKS = 512;
+        @Comment({
+                "How long (ms) a chunk stays in the surface cache",
+                " - Changes not made by FAWE (e.g. by players) are seen after this time"
+        })
+        public int SURFACE_CACHE_MS = 5000;
+
         @Comment({
                 "Loading the right amount of chunks beforehand can speed up operations",
                 " - Low values may result in FAWE waiting on requests to the main thread",
@@ -299,6 +345,35 @@ public class Settings extends Config {
         })
         public int DISCARD_AFTER_MS = 60000;
 
+        @Comment({
+                "When memory is limited, slow down edits for up to this many ms per new chunk",
+                " - Gives the queue time to place pending chunks instead of cancelling the edit",
+                " - 0 = Disabled"
+        })
+        public int BACKPRESSURE_MS = 50;
+
+        @Comment({
+                "Share chunk placement fairly between players:",
+                " - A large edit will no longer block everyone else's edits",
+                " - Each player gets time in proportion to their `queue-share` limit",
+                " - Console and plugin edits share a single turn"
+        })
+        public boolean FAIR_SCHEDULING = true;
+
+        @Comment({
+                "Edits which have changed this many blocks (or fewer) are placed first when fair-scheduling is enabled",
+                " - E.g. Brushes and other small interactive edits",
+                " - The whole edit is counted, not just the chunks waiting to be placed"
+        })
+        public int PRIORITY_CHANGES = 65536;
+
+        @Comment({
+                "How far ahead (ms of placement time) of the least served player a small edit may still be placed first",
+                " - Stops a player from using brushes to take more than their share",
+                " - Past this, their small edits wait their turn like any other edit"
+        })
+        public int PRIORITY_LEAD_MS = 1000;
+
         public static class PROGRESS {
             @Comment({"Display constant titles about the progress of a user's edit",
                     " - false = disabled",
@@ -360,6 +435,46 @@ public class Settings extends Config {
         public boolean MODERN_CRAFTSCRIPTS = false;
     }
 
+    @Comment("Settings for the /anvil commands")
+    public static class ANVIL {
+        @Comment({
+                "How many region files an anvil job works on at the same time",
+                " - Reading, filtering and writing of different files will overlap",
+                " - Higher values use more memory and more disk bandwidth",
+                " - Filters which keep state per file always use 1"
+        })
+        public int PARALLEL_FILES = 4;
+        @Comment({
+                "The number of threads an anvil job uses",
+                " - Lower this to leave more CPU for the server while a job runs",
+                " - 0 = The number of processors"
+        })
+        public int THREADS = 0;
+        @Comment({
+                "Wait this many ms before starting each region file",
+                " - Spreads the disk and CPU load of long running jobs"
+        })
+        public int FILE_DELAY_MS = 0;
+        @Comment({
+                "Record which region files a world wide job has finished (in the region folder)",
+                " - If the server stops during a job, running the same command again resumes it",
+                " - Files the previous run may have partly written are skipped and reported"
+        })
+        public boolean JOURNAL = true;
+        @Comment({
+                "Keep a summary of each chunk next to the region files (r.x.z.mca.summary)",
+                " - Later jobs can skip or count chunks without reading them",
+                " - Uses a few KB per region file"
+        })
+        public boolean CHUNK_SUMMARY = true;
+        @Comment({
+                "How much memory (MB) the compressed chunks of region files being generated may use",
+                " - e.g. when exporting a CFI map, chunks of several region files are built at the same time",
+                " - Higher values keep more threads busy, at least one region file is always generated"
+        })
+        public int EXPORT_MEMORY_MB = 256;
+    }
+
     public static class WEB {
         @Comment({
             "Should download urls be shortened?",
@@ -430,6 +545,18 @@ public class Settings extends Config {
         public int DELETE_AFTER_DAYS = 1;
     }
 
+    public static class SCHEMATIC_BROWSER {
+        @Comment("How many chunks around the player are shown when browsing schematics (//schem show)")
+        public int VIEW_DISTANCE = 15;
+        @Comment({
+                "The number of converted schematic chunks to keep in memory",
+                " - Shared by everyone browsing, the least recently viewed schematics are dropped first"
+        })
+        public int CACHE_CHUNKS = 4096;
+        @Comment("The number of threads used to convert and load schematics for browsing")
+        public int THREADS = 2;
+    }
+
     public static class LIGHTING {
         @Comment({
                 "If packet sending should be delayed until relight is finished",
@@ -478,6 +605,7 @@ public class Settings extends Config {
                 limit.MAX_EXPRESSION_MS = Math.max(limit.MAX_EXPRESSION_MS, newLimit.MAX_EXPRESSION_MS != -1 ? newLimit.MAX_EXPRESSION_MS : Integer.MAX_VALUE);
                 limit.INVENTORY_MODE = Math.min(limit.INVENTORY_MODE, newLimit.INVENTORY_MODE);
                 limit.SPEED_REDUCTION = Math.min(limit.SPEED_REDUCTION, newLimit.SPEED_REDUCTION);
+                limit.QUEUE_SHARE = Math.max(limit.QUEUE_SHARE, newLimit.QUEUE_SHARE);
                 limit.FAST_PLACEMENT |= newLimit.FAST_PLACEMENT;
                 limit.CONFIRM_LARGE &= newLimit.CONFIRM_LARGE;
                 if (limit.STRIP_NBT == null) limit.STRIP_NBT = newLimit.STRIP_NBT.isEmpty() ? Collections.emptySet() : new HashSet<>(newLimit.STRIP_NBT);
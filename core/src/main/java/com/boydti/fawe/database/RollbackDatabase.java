@@ -19,17 +19,30 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * The summary of the edits in a world (who, where and when), used to find edits to inspect or roll back<br>
+ * - Writes (inserts, deletes, purges) are run in order on one thread, with inserts batched into one transaction<br>
+ * - Queries use their own connection, and the database uses write-ahead logging, so queries don't wait for writes
+ */
 public class RollbackDatabase extends AsyncNotifyQueue {
 
+    private static final int BATCH_SIZE = 1024;
+
     private final String prefix;
     private final File dbLocation;
     private final String worldName;
     private final World world;
     private Connection connection;
+    // The statement used for inserts, reused for each batch
+    private PreparedStatement insertStmt;
+
+    private final Object queryLock = new Object();
+    private Connection queryConnection;
 
     private String INSERT_EDIT;
     private String CREATE_TABLE;
@@ -100,9 +113,9 @@ public class RollbackDatabase extends AsyncNotifyQueue {
             @Override
             public void run() {
                 try (PreparedStatement stmt = connection.prepareStatement(DELETE_EDIT_USER)) {
-                    byte[] uuidBytes = ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
-                    stmt.setBytes(1, uuidBytes);
+                    stmt.setBytes(1, toBytes(uuid));
                     stmt.setInt(2, id);
+                    stmt.executeUpdate();
                 } catch (SQLException e) {
                     e.printStackTrace();
                 }
@@ -128,44 +141,12 @@ public class RollbackDatabase extends AsyncNotifyQueue {
 
     public void getPotentialEdits(final UUID uuid, final long minTime, final Vector pos1, final Vector pos2, final RunnableVal<DiskStorageHistory> onEach, final Runnable whenDone, final boolean delete, final boolean ascending) {
         final World world = FaweAPI.getWorld(this.worldName);
-        addTask(new Runnable() {
+        TaskManager.IMP.async(new Runnable() {
             @Override
             public void run() {
                 String stmtStr = ascending ? (uuid == null ? GET_EDITS_ASC : GET_EDITS_USER_ASC) : (uuid == null ? GET_EDITS : GET_EDITS_USER);
-                try (PreparedStatement stmt = connection.prepareStatement(stmtStr)) {
-                    stmt.setInt(1, pos1.getBlockX());
-                    stmt.setInt(2, pos2.getBlockX());
-                    stmt.setByte(3, (byte) (pos1.getBlockY() - 128));
-                    stmt.setByte(4, (byte) (pos2.getBlockY() - 128));
-                    stmt.setInt(5, pos1.getBlockZ());
-                    stmt.setInt(6, pos2.getBlockZ());
-                    stmt.setInt(7, (int) (minTime / 1000));
-                    if (uuid != null) {
-                        byte[] uuidBytes = ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
-                        stmt.setBytes(8, uuidBytes);
-                    }
-                    ResultSet result = stmt.executeQuery();
-                    if (!result.next()) {
-                        TaskManager.IMP.taskNow(whenDone, false);
-                        return;
-                    }
-                    do {
-                        byte[] uuidBytes = result.getBytes(1);
-                        int index = result.getInt(2);
-                        ByteBuffer bb = ByteBuffer.wrap(uuidBytes);
-                        long high = bb.getLong();
-                        long low = bb.getLong();
-                        DiskStorageHistory history = new DiskStorageHistory(world, new UUID(high, low), index);
-                        if (history.getBDFile().exists()) {
-                            onEach.run(history);
-                        }
-                    } while (result.next());
-                    TaskManager.IMP.taskNow(whenDone, false);
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-                if (delete && uuid != null) {
-                    try (PreparedStatement stmt = connection.prepareStatement(DELETE_EDITS_USER)) {
+                synchronized (queryLock) {
+                    try (PreparedStatement stmt = getQueryConnection().prepareStatement(stmtStr)) {
                         stmt.setInt(1, pos1.getBlockX());
                         stmt.setInt(2, pos2.getBlockX());
                         stmt.setByte(3, (byte) (pos1.getBlockY() - 128));
@@ -173,16 +154,55 @@ public class RollbackDatabase extends AsyncNotifyQueue {
                         stmt.setInt(5, pos1.getBlockZ());
                         stmt.setInt(6, pos2.getBlockZ());
                         stmt.setInt(7, (int) (minTime / 1000));
-                        byte[] uuidBytes = ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
-                        stmt.setBytes(8, uuidBytes);
-                    } catch (SQLException e) {
+                        if (uuid != null) {
+                            stmt.setBytes(8, toBytes(uuid));
+                        }
+                        try (ResultSet result = stmt.executeQuery()) {
+                            while (result.next()) {
+                                byte[] uuidBytes = result.getBytes(1);
+                                int index = result.getInt(2);
+                                ByteBuffer bb = ByteBuffer.wrap(uuidBytes);
+                                long high = bb.getLong();
+                                long low = bb.getLong();
+                                DiskStorageHistory history = new DiskStorageHistory(world, new UUID(high, low), index);
+                                if (history.exists()) {
+                                    onEach.run(history);
+                                }
+                            }
+                        }
+                        TaskManager.IMP.taskNow(whenDone, false);
+                    } catch (SQLException | ClassNotFoundException e) {
                         e.printStackTrace();
                     }
                 }
+                if (delete && uuid != null) {
+                    addTask(new Runnable() {
+                        @Override
+                        public void run() {
+                            try (PreparedStatement stmt = connection.prepareStatement(DELETE_EDITS_USER)) {
+                                stmt.setInt(1, pos1.getBlockX());
+                                stmt.setInt(2, pos2.getBlockX());
+                                stmt.setByte(3, (byte) (pos1.getBlockY() - 128));
+                                stmt.setByte(4, (byte) (pos2.getBlockY() - 128));
+                                stmt.setInt(5, pos1.getBlockZ());
+                                stmt.setInt(6, pos2.getBlockZ());
+                                stmt.setInt(7, (int) (minTime / 1000));
+                                stmt.setBytes(8, toBytes(uuid));
+                                stmt.executeUpdate();
+                            } catch (SQLException e) {
+                                e.printStackTrace();
+                            }
+                        }
+                    });
+                }
             }
         });
     }
 
+    private static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
+    }
+
     public void logEdit(RollbackOptimizedHistory history) {
         queue(() -> historyChanges.add(history));
     }
@@ -206,26 +226,24 @@ public class RollbackDatabase extends AsyncNotifyQueue {
         try {
             runTasks();
             commit();
-            if (connection.getAutoCommit()) {
-                connection.setAutoCommit(false);
-            }
-            int size = Math.min(1048572, historyChanges.size());
-
+            int size = Math.min(BATCH_SIZE, historyChanges.size());
             if (size == 0) {
                 return false;
             }
-
-            RollbackOptimizedHistory[] copy = new RollbackOptimizedHistory[size];
-            for (int i = 0; i < size; i++) {
-                copy[i] = historyChanges.poll();
+            if (insertStmt == null) {
+                insertStmt = connection.prepareStatement(INSERT_EDIT);
             }
-
-            try (PreparedStatement stmt = connection.prepareStatement(INSERT_EDIT)) {
-                for (RollbackOptimizedHistory change : copy) {
+            connection.setAutoCommit(false);
+            PreparedStatement stmt = insertStmt;
+            int added = 0;
+            try {
+                for (int i = 0; i < size; i++) {
+                    RollbackOptimizedHistory change = historyChanges.poll();
+                    if (change == null) {
+                        break;
+                    }
                     // `player`,`id`,`x1`,`y1`,`z1`,`x2`,`y2`,`z2`,`time`
-                    UUID uuid = change.getUUID();
-                    byte[] uuidBytes = ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
-                    stmt.setBytes(1, uuidBytes);
+                    stmt.setBytes(1, toBytes(change.getUUID()));
                     stmt.setInt(2, change.getIndex());
                     stmt.setInt(3, change.getMinX());
                     stmt.setByte(4, (byte) (change.getMinY() - 128));
@@ -234,11 +252,20 @@ public class RollbackDatabase extends AsyncNotifyQueue {
                     stmt.setByte(7, (byte) (change.getMaxY() - 128));
                     stmt.setInt(8, change.getMaxZ());
                     stmt.setInt(9, (int) (change.getTime() / 1000));
-                    stmt.executeUpdate();
-                    stmt.clearParameters();
+                    stmt.addBatch();
+                    added++;
                 }
+                stmt.executeBatch();
             } catch (Exception e) {
                 e.printStackTrace();
+                // Don't send the failed rows again with the next batch, they are already polled so can't be retried
+                try {
+                    stmt.clearBatch();
+                    connection.rollback();
+                } catch (SQLException e2) {
+                    e2.printStackTrace();
+                }
+                Fawe.debug("&cUnable to add " + added + " edits to the rollback database of " + worldName);
             }
             commit();
             return true;
@@ -278,17 +305,32 @@ public class RollbackDatabase extends AsyncNotifyQueue {
                 Fawe.debug("&cUnable to create database!");
             }
         }
-        Class.forName("org.sqlite.JDBC");
-        connection = DriverManager.getConnection("jdbc:sqlite:" + dbLocation);
-        return connection;
+        return forceConnection();
     }
 
     public Connection forceConnection() throws SQLException, ClassNotFoundException {
         Class.forName("org.sqlite.JDBC");
         connection = DriverManager.getConnection("jdbc:sqlite:" + dbLocation);
+        insertStmt = null;
+        try (Statement stmt = connection.createStatement()) {
+            // Let queries read while a batch is being written
+            stmt.execute("PRAGMA journal_mode=WAL");
+            stmt.execute("PRAGMA synchronous=NORMAL");
+        }
         return connection;
     }
 
+    /**
+     * Get the connection used for queries (the caller should hold the query lock)
+     */
+    private Connection getQueryConnection() throws SQLException, ClassNotFoundException {
+        if (queryConnection == null || queryConnection.isClosed()) {
+            Class.forName("org.sqlite.JDBC");
+            queryConnection = DriverManager.getConnection("jdbc:sqlite:" + dbLocation);
+        }
+        return queryConnection;
+    }
+
     /**
      * Gets the connection with the database
      *
@@ -321,8 +363,18 @@ public class RollbackDatabase extends AsyncNotifyQueue {
             if (connection == null) {
                 return false;
             }
+            if (insertStmt != null) {
+                insertStmt.close();
+                insertStmt = null;
+            }
             connection.close();
             connection = null;
+            synchronized (queryLock) {
+                if (queryConnection != null) {
+                    queryConnection.close();
+                    queryConnection = null;
+                }
+            }
             return true;
         }
     }
@@ -100,6 +100,21 @@ public abstract class CharFaweChunk<T, V extends FaweQueue> extends FaweChunk<T>
         return total;
     }
 
+    @Override
+    public long getMemoryUsage() {
+        long total = 128 + heightMap.length + (count.length << 2);
+        for (char[] section : ids) {
+            if (section != null) {
+                total += 16 + (section.length << 1);
+            }
+        }
+        if (biomes != null) total += biomes.length;
+        // Rough size of a small compound tag
+        if (tiles != null) total += tiles.size() * 256;
+        if (entities != null) total += entities.size() * 512;
+        return total;
+    }
+
     @Override
     public int getBitMask() {
         int bitMask = 0;
@@ -341,6 +356,58 @@ public abstract class CharFaweChunk<T, V extends FaweQueue> extends FaweChunk<T>
         }
     }
 
+    /**
+     * Fill a cuboid in this chunk with a block, writing to the section arrays directly
+     */
+    @Override
+    public void fillCuboid(int x1, int x2, int y1, int y2, int z1, int z2, int id, byte data) {
+        if (x1 > x2 || y1 > y2 || z1 > z2) {
+            return;
+        }
+        // Set one block normally, to get the value stored for this id and data
+        setBlock(x1, y1, z1, id, data);
+        final char value = this.ids[y1 >> 4][FaweCache.CACHE_J[y1][z1][x1]];
+        final boolean isAir = value == 1;
+        for (int i = y1 >> 4; i <= y2 >> 4; i++) {
+            char[] vs = this.ids[i];
+            if (vs == null) {
+                vs = this.ids[i] = new char[4096];
+            }
+            int count = this.count[i];
+            int air = this.air[i];
+            int minY = Math.max(y1, i << 4) & 15;
+            int maxY = Math.min(y2, (i << 4) + 15) & 15;
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = z1; z <= z2; z++) {
+                    int j = (y << 8) | (z << 4) | x1;
+                    for (int x = x1; x <= x2; x++, j++) {
+                        switch (vs[j]) {
+                            case 0:
+                                count++;
+                                break;
+                            case 1:
+                                air--;
+                                break;
+                        }
+                        vs[j] = value;
+                        if (isAir) {
+                            air++;
+                        }
+                    }
+                }
+            }
+            this.count[i] = (short) count;
+            this.air[i] = (short) air;
+        }
+        if (!isAir) {
+            for (int z = z1; z <= z2; z++) {
+                for (int x = x1; x <= x2; x++) {
+                    heightMap[z << 4 | x] = (byte) y2;
+                }
+            }
+        }
+    }
+
     @Deprecated
     public void setBitMask(int ignore) {
         // Remove
@@ -0,0 +1,163 @@
+package com.boydti.fawe.example;
+
+import com.boydti.fawe.config.BBC;
+import com.boydti.fawe.object.exception.FaweException;
+import com.boydti.fawe.util.MathMan;
+import com.sk89q.worldedit.EditSession;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The blocks of the world (without the changes queued), cached per section<br>
+ * - Used to get the previous block for the history, when the stages aren't combined<br>
+ * - A block is read from the queue on first access, so sparse edits don't read whole sections<br>
+ * - A chunk's copy is dropped once the queue commits the chunk (see {@link MappedFaweQueue#addSnapshotCache})<br>
+ * - {@link #close()} unregisters it from the queue, once the edit is flushed<br>
+ * - Not thread safe (like the extents using it)
+ */
+public class ChunkSnapshotCache {
+
+    private static final int MAX_SECTIONS = 1024;
+
+    private final MappedFaweQueue queue;
+    private final Long2ObjectOpenHashMap<Snapshot> chunks = new Long2ObjectOpenHashMap<>();
+    // Chunks which have been committed (added by the thread dispatching the chunk)
+    private final ConcurrentLinkedQueue<Long> committed = new ConcurrentLinkedQueue<>();
+    private int sections;
+
+    private int lastX = Integer.MIN_VALUE;
+    private int lastZ = Integer.MIN_VALUE;
+    private Snapshot lastSnapshot;
+    private boolean closed;
+
+    private static final class Snapshot {
+        private final char[][] ids = new char[16][];
+        // [ layer ][ index >> 6 ] => bit (index & 63) is set if the block has been read
+        private final long[][] known = new long[16][];
+    }
+
+    public ChunkSnapshotCache(MappedFaweQueue queue) {
+        this.queue = queue;
+        queue.addSnapshotCache(this);
+    }
+
+    /**
+     * Unregister from the queue and drop the cached blocks<br>
+     * - Blocks are then read from the queue directly
+     */
+    public void close() {
+        if (!closed) {
+            closed = true;
+            queue.removeSnapshotCache(this);
+            chunks.clear();
+            committed.clear();
+            sections = 0;
+            lastX = Integer.MIN_VALUE;
+            lastZ = Integer.MIN_VALUE;
+            lastSnapshot = null;
+        }
+    }
+
+    private Snapshot getSnapshot(int cx, int cz) {
+        if (!committed.isEmpty()) {
+            Long committedKey;
+            while ((committedKey = committed.poll()) != null) {
+                release(committedKey);
+            }
+        }
+        if (cx == lastX && cz == lastZ) {
+            return lastSnapshot;
+        }
+        long key = MathMan.pairInt(cx, cz);
+        Snapshot snapshot = chunks.get(key);
+        if (snapshot == null) {
+            if (sections >= MAX_SECTIONS) {
+                chunks.clear();
+                sections = 0;
+            }
+            snapshot = new Snapshot();
+            chunks.put(key, snapshot);
+        }
+        lastX = cx;
+        lastZ = cz;
+        lastSnapshot = snapshot;
+        return snapshot;
+    }
+
+    private void release(long key) {
+        Snapshot snapshot = chunks.remove(key);
+        if (snapshot == null) {
+            return;
+        }
+        for (char[] section : snapshot.ids) {
+            if (section != null) {
+                sections--;
+            }
+        }
+        if (snapshot == lastSnapshot) {
+            lastX = Integer.MIN_VALUE;
+            lastZ = Integer.MIN_VALUE;
+            lastSnapshot = null;
+        }
+    }
+
+    /**
+     * The same as {@link com.boydti.fawe.object.FaweQueue#getCombinedId4DataDebug}
+     */
+    public int getCombinedId4DataDebug(int x, int y, int z, int def, EditSession session) {
+        if (y < 0 || y > 255 || closed) {
+            return queue.getCombinedId4DataDebug(x, y, z, def, session);
+        }
+        int cx = x >> 4;
+        int cz = z >> 4;
+        int cy = y >> 4;
+        Snapshot snapshot = getSnapshot(cx, cz);
+        char[] ids = snapshot.ids[cy];
+        long[] known;
+        if (ids == null) {
+            try {
+                if (queue.ensureChunkLoaded(cx, cz) == null) {
+                    // Not cached, the chunk may load later
+                    return 0;
+                }
+            } catch (FaweException ignore) {
+                session.debug(BBC.WORLDEDIT_FAILED_LOAD_CHUNK, cx, cz);
+                return def;
+            } catch (Throwable e) {
+                return 0;
+            }
+            snapshot.ids[cy] = ids = new char[4096];
+            snapshot.known[cy] = known = new long[64];
+            sections++;
+        } else {
+            known = snapshot.known[cy];
+        }
+        int index = ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+        long bit = 1L << (index & 63);
+        if ((known[index >> 6] & bit) == 0) {
+            int combined;
+            try {
+                combined = queue.getCombinedId4Data(x, y, z);
+            } catch (FaweException ignore) {
+                session.debug(BBC.WORLDEDIT_FAILED_LOAD_CHUNK, cx, cz);
+                return def;
+            } catch (Throwable e) {
+                return 0;
+            }
+            ids[index] = (char) combined;
+            known[index >> 6] |= bit;
+            return combined;
+        }
+        return ids[index];
+    }
+
+    /**
+     * Called by the queue (from the thread dispatching chunks) when a chunk was committed, so its snapshot is dropped
+     *
+     * @param cx
+     * @param cz
+     */
+    public void onCommit(int cx, int cz) {
+        committed.add(MathMan.pairInt(cx, cz));
+    }
+}
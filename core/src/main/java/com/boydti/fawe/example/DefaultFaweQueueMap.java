@@ -4,6 +4,7 @@ import com.boydti.fawe.object.FaweChunk;
 import com.boydti.fawe.object.FaweQueue;
 import com.boydti.fawe.object.RunnableVal;
 import com.boydti.fawe.util.MathMan;
+import com.boydti.fawe.util.MemUtil;
 import com.boydti.fawe.util.SetQueue;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import java.util.Collection;
@@ -68,6 +69,8 @@ public class DefaultFaweQueueMap implements IFaweQueueMap {
         long pair = MathMan.pairInt(cx, cz);
         FaweChunk chunk = this.blocks.get(pair);
         if (chunk == null) {
+            // Slow down the edit if pending chunks are using too much memory
+            MemUtil.throttle();
             chunk = this.getNewFaweChunk(cx, cz);
             FaweChunk previous = this.blocks.put(pair, chunk);
             if (previous != null) {
@@ -12,20 +12,18 @@ import com.boydti.fawe.object.RunnableVal2;
 import com.boydti.fawe.object.exception.FaweException;
 import com.boydti.fawe.object.extent.LightingExtent;
 import com.boydti.fawe.util.MainUtil;
-import com.boydti.fawe.util.MathMan;
 import com.boydti.fawe.util.SetQueue;
 import com.boydti.fawe.util.TaskManager;
 import com.sk89q.jnbt.CompoundTag;
 import com.sk89q.worldedit.EditSession;
-import com.sk89q.worldedit.blocks.BlockMaterial;
 import com.sk89q.worldedit.world.World;
 import com.sk89q.worldedit.world.biome.BaseBiome;
-import com.sk89q.worldedit.world.registry.BundledBlockData;
 import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
@@ -53,6 +51,8 @@ public abstract class MappedFaweQueue<WORLD, CHUNK, CHUNKSECTIONS, SECTION> impl
     private Settings settings = Settings.IMP;
     public ConcurrentLinkedDeque<Runnable> tasks = new ConcurrentLinkedDeque<>();
 
+    private final CopyOnWriteArrayList<ChunkSnapshotCache> snapshotCaches = new CopyOnWriteArrayList<>();
+
     private CHUNK cachedLoadChunk;
     public final RunnableVal<IntegerPair> loadChunk = new RunnableVal<IntegerPair>() {
 
@@ -226,10 +226,56 @@ public abstract class MappedFaweQueue<WORLD, CHUNK, CHUNKSECTIONS, SECTION> impl
     }
 
     public void end(FaweChunk chunk) {
+        SurfaceCache cache = getSurfaceCache();
+        if (cache != null && chunk instanceof CharFaweChunk) {
+            cache.update((CharFaweChunk) chunk);
+        } else {
+            SurfaceCache.invalidate(getWorldName(), chunk.getX(), chunk.getZ());
+        }
         if (getProgressTask() != null) {
             getProgressTask().run(ProgressType.DISPATCH, size() + 1);
         }
         chunk.end();
+        if (!snapshotCaches.isEmpty()) {
+            for (ChunkSnapshotCache snapshotCache : snapshotCaches) {
+                snapshotCache.onCommit(chunk.getX(), chunk.getZ());
+            }
+        }
+    }
+
+    /**
+     * Tell a snapshot cache of this queue (see {@link ChunkSnapshotCache}) when a chunk is committed
+     *
+     * @param cache
+     */
+    public void addSnapshotCache(ChunkSnapshotCache cache) {
+        snapshotCaches.add(cache);
+    }
+
+    /**
+     * @param cache a cache added with {@link #addSnapshotCache(ChunkSnapshotCache)}
+     */
+    public void removeSnapshotCache(ChunkSnapshotCache cache) {
+        snapshotCaches.remove(cache);
+    }
+
+    /**
+     * @return the terrain cache shared by the queues of this world, or null if this queue shouldn't use one
+     */
+    protected SurfaceCache getSurfaceCache() {
+        return SurfaceCache.get(getWorldName());
+    }
+
+    @Override
+    public int getNearestSurfaceTerrainBlock(int x, int z, int y, int minY, int maxY, int failedMin, int failedMax, boolean ignoreAir) {
+        // The shared cache only knows the world, so not for chunks with changes in this queue
+        if (minY >= 0 && maxY <= 255 && map.getCachedFaweChunk(x >> 4, z >> 4) == null) {
+            SurfaceCache cache = getSurfaceCache();
+            if (cache != null) {
+                return cache.getNearestSurfaceTerrainBlock(this, x, z, y, minY, maxY, failedMin, failedMax, ignoreAir);
+            }
+        }
+        return FaweQueue.super.getNearestSurfaceTerrainBlock(x, z, y, minY, maxY, failedMin, failedMax, ignoreAir);
     }
 
     @Override
@@ -492,11 +538,7 @@ public abstract class MappedFaweQueue<WORLD, CHUNK, CHUNKSECTIONS, SECTION> impl
         if (combined == 0) {
             return 0;
         }
-        BlockMaterial block = BundledBlockData.getInstance().getMaterialById(FaweCache.getId(combined));
-        if (block == null) {
-            return 15;
-        }
-        return Math.min(15, block.getLightOpacity());
+        return FaweCache.getProperties().getOpacity(combined);
     }
 
     public int getBrightness(SECTION section, int x, int y, int z) {
@@ -504,15 +546,15 @@ public abstract class MappedFaweQueue<WORLD, CHUNK, CHUNKSECTIONS, SECTION> impl
         if (combined == 0) {
             return 0;
         }
-        BlockMaterial block = BundledBlockData.getInstance().getMaterialById(FaweCache.getId(combined));
-        if (block == null) {
-            return 15;
-        }
-        return Math.min(15, block.getLightValue());
+        return FaweCache.getProperties().getBrightness(combined);
     }
 
     public int getOpacityBrightnessPair(SECTION section, int x, int y, int z) {
-        return MathMan.pair16(Math.min(15, getOpacity(section, x, y, z)), getBrightness(section, x, y, z));
+        int combined = getCombinedId4Data(section, x, y, z);
+        if (combined == 0) {
+            return 0;
+        }
+        return FaweCache.getProperties().getLightPair(combined);
     }
 
     public abstract int getSkyLight(SECTION sections, int x, int y, int z);
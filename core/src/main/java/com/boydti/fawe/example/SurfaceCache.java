@@ -0,0 +1,229 @@
+package com.boydti.fawe.example;
+
+import com.boydti.fawe.FaweCache;
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.FaweQueue;
+import com.boydti.fawe.util.MathMan;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The terrain of recently queried columns in a world, shared by every queue (and so every brush and mask) of that world<br>
+ * - A column is stored as three bits per y (0-255): has been read, can pass through, and is air<br>
+ * - Only the y values a search reads are stored, so a short search doesn't read the whole column<br>
+ * - This answers {@link FaweQueue#getNearestSurfaceTerrainBlock} exactly, for any start y<br>
+ * - When a queue commits a chunk, its changes are applied to the cached columns (see {@link MappedFaweQueue#end})<br>
+ * - Changes made by something else (e.g. players) are seen once the chunk expires
+ */
+public class SurfaceCache {
+
+    private static final Map<String, SurfaceCache> WORLDS = new ConcurrentHashMap<>();
+
+    // Offsets of the bit sets in a column
+    private static final int PASS = 0;
+    private static final int AIR = 4;
+    private static final int KNOWN = 8;
+    private static final int SIZE = 12;
+
+    /**
+     * @param world
+     * @return the cache, or null if disabled
+     */
+    public static SurfaceCache get(String world) {
+        if (Settings.IMP.QUEUE.SURFACE_CACHE_CHUNKS <= 0 || world == null) {
+            return null;
+        }
+        SurfaceCache cache = WORLDS.get(world);
+        if (cache == null) {
+            cache = new SurfaceCache();
+            SurfaceCache previous = WORLDS.putIfAbsent(world, cache);
+            if (previous != null) {
+                cache = previous;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Forget the columns of a chunk (e.g. after it was changed in a way that can't be applied)
+     *
+     * @param world
+     * @param cx
+     * @param cz
+     */
+    public static void invalidate(String world, int cx, int cz) {
+        if (world == null) {
+            return;
+        }
+        SurfaceCache cache = WORLDS.get(world);
+        if (cache != null) {
+            cache.invalidate(cx, cz);
+        }
+    }
+
+    private static final class Columns {
+        private final long created = System.currentTimeMillis();
+        private final long[][] columns = new long[256][];
+    }
+
+    private final LinkedHashMap<Long, Columns> chunks = new LinkedHashMap<Long, Columns>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Columns> eldest) {
+            return size() > Settings.IMP.QUEUE.SURFACE_CACHE_CHUNKS;
+        }
+    };
+    // Incremented by every change, so values read while a chunk changed aren't stored
+    private long version;
+
+    private SurfaceCache() {
+    }
+
+    private synchronized void invalidate(int cx, int cz) {
+        version++;
+        chunks.remove(MathMan.pairInt(cx, cz));
+    }
+
+    /**
+     * Apply the changes of a committed chunk to its cached columns
+     *
+     * @param chunk
+     */
+    public synchronized void update(CharFaweChunk chunk) {
+        version++;
+        Columns entry = chunks.get(MathMan.pairInt(chunk.getX(), chunk.getZ()));
+        if (entry == null) {
+            return;
+        }
+        for (int layer = 0; layer < 16; layer++) {
+            char[] ids = chunk.getIdArray(layer);
+            if (ids == null) {
+                continue;
+            }
+            int j = 0;
+            for (int y = layer << 4, maxY = y + 16; y < maxY; y++) {
+                for (int index = 0; index < 256; index++, j++) {
+                    long[] column = entry.columns[index];
+                    int combined = ids[j];
+                    if (column != null && combined != 0) {
+                        set(column, y, combined);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The same search as {@link com.sk89q.worldedit.extent.Extent#getNearestSurfaceTerrainBlock(int, int, int, int, int, int, int, boolean)}<br>
+     * - The y values not cached are read from the queue (and then cached)<br>
+     * - The queue's own (uncommitted) changes must not be in this column's chunk<br>
+     * - minY and maxY must be within 0-255
+     */
+    public int getNearestSurfaceTerrainBlock(MappedFaweQueue queue, int x, int z, int y, int minY, int maxY, int failedMin, int failedMax, boolean ignoreAir) {
+        long key = MathMan.pairInt(x >> 4, z >> 4);
+        int index = (x & 15) + ((z & 15) << 4);
+        long[] column;
+        long currentVersion;
+        synchronized (this) {
+            Columns entry = chunks.get(key);
+            long[] cached = null;
+            if (entry != null) {
+                if (System.currentTimeMillis() - entry.created > Settings.IMP.QUEUE.SURFACE_CACHE_MS) {
+                    chunks.remove(key);
+                } else {
+                    cached = entry.columns[index];
+                }
+            }
+            column = cached != null ? cached.clone() : new long[SIZE];
+            currentVersion = version;
+        }
+        int result = getNearestSurfaceTerrainBlock(queue, x, z, column, y, minY, maxY, failedMin, failedMax, ignoreAir);
+        synchronized (this) {
+            if (version == currentVersion) {
+                Columns entry = chunks.get(key);
+                if (entry == null) {
+                    chunks.put(key, entry = new Columns());
+                }
+                long[] cached = entry.columns[index];
+                if (cached == null) {
+                    entry.columns[index] = column;
+                } else {
+                    for (int i = 0; i < 4; i++) {
+                        long added = column[KNOWN + i] & ~cached[KNOWN + i];
+                        cached[PASS + i] |= column[PASS + i] & added;
+                        cached[AIR + i] |= column[AIR + i] & added;
+                        cached[KNOWN + i] |= added;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void set(long[] column, int y, int combined) {
+        int i = y >> 6;
+        long bit = 1L << y;
+        int id = FaweCache.getId(combined);
+        if (FaweCache.canPassThrough(id, FaweCache.getData(combined))) {
+            column[PASS + i] |= bit;
+        } else {
+            column[PASS + i] &= ~bit;
+        }
+        if (id == 0) {
+            column[AIR + i] |= bit;
+        } else {
+            column[AIR + i] &= ~bit;
+        }
+        column[KNOWN + i] |= bit;
+    }
+
+    private static void load(MappedFaweQueue queue, int x, int z, long[] column, int y) {
+        if ((column[KNOWN + (y >> 6)] & (1L << y)) == 0) {
+            set(column, y, queue.getCombinedId4Data(x, y, z));
+        }
+    }
+
+    private static boolean canPassThrough(MappedFaweQueue queue, int x, int z, long[] column, int y) {
+        load(queue, x, z, column, y);
+        return (column[PASS + (y >> 6)] & (1L << y)) != 0;
+    }
+
+    private static boolean isAir(MappedFaweQueue queue, int x, int z, long[] column, int y) {
+        if (y < 0 || y > 255) {
+            return true;
+        }
+        load(queue, x, z, column, y);
+        return (column[AIR + (y >> 6)] & (1L << y)) != 0;
+    }
+
+    private static int getNearestSurfaceTerrainBlock(MappedFaweQueue queue, int x, int z, long[] column, int y, int minY, int maxY, int failedMin, int failedMax, boolean ignoreAir) {
+        y = Math.max(minY, Math.min(maxY, y));
+        int clearanceAbove = maxY - y;
+        int clearanceBelow = y - minY;
+        int clearance = Math.min(clearanceAbove, clearanceBelow);
+        boolean state = canPassThrough(queue, x, z, column, y);
+        int offset = state ? 0 : 1;
+        for (int d = 0; d <= clearance; d++) {
+            int y1 = y + d;
+            if (canPassThrough(queue, x, z, column, y1) != state) return y1 - offset;
+            int y2 = y - d;
+            if (canPassThrough(queue, x, z, column, y2) != state) return y2 + offset;
+        }
+        if (clearanceAbove != clearanceBelow) {
+            if (clearanceAbove < clearanceBelow) {
+                for (int layer = y - clearance - 1; layer >= minY; layer--) {
+                    if (canPassThrough(queue, x, z, column, layer) != state) return layer + offset;
+                }
+            } else {
+                for (int layer = y + clearance + 1; layer <= maxY; layer++) {
+                    if (canPassThrough(queue, x, z, column, layer) != state) return layer - offset;
+                }
+            }
+        }
+        int result = state ? failedMin : failedMax;
+        if (result > 0 && !ignoreAir) {
+            return isAir(queue, x, z, column, result) ? -1 : result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,229 @@
+package com.boydti.fawe.jnbt;
+
+import com.sk89q.jnbt.Tag;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A small, mutable map for the contents of a compound tag (e.g. a sign, chest, spawner or item)<br>
+ * - Entries are stored in two parallel arrays, instead of a node per entry<br>
+ * - The key array is shared by every compound with the same keys (see {@link NBTIntern#shape})<br>
+ *   and is only copied when a key is added or removed<br>
+ * - Lookups are a linear scan, so this is only used for compounds with a few entries
+ */
+public class CompactTagMap extends AbstractMap<String, Tag> {
+
+    private String[] keys;
+    private Tag[] values;
+    private int size;
+    private boolean shared;
+
+    public CompactTagMap() {
+        this.keys = new String[4];
+        this.values = new Tag[4];
+    }
+
+    /**
+     * @param keys   the shared keys (not modified)
+     * @param values the values (kept by this map)
+     * @param size   the number of entries
+     */
+    public CompactTagMap(String[] keys, Tag[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+        this.shared = true;
+    }
+
+    private int indexOf(Object key) {
+        String[] keys = this.keys;
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        if (key != null) {
+            for (int i = 0; i < size; i++) {
+                if (key.equals(keys[i])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void own(int capacity) {
+        if (shared || keys.length < capacity) {
+            int length = Math.max(capacity, shared ? keys.length : keys.length << 1);
+            String[] newKeys = new String[length];
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            keys = newKeys;
+            shared = false;
+        }
+        if (values.length < capacity) {
+            Tag[] newValues = new Tag[Math.max(capacity, values.length << 1)];
+            System.arraycopy(values, 0, newValues, 0, size);
+            values = newValues;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) != -1;
+    }
+
+    @Override
+    public Tag get(Object key) {
+        int index = indexOf(key);
+        return index == -1 ? null : values[index];
+    }
+
+    @Override
+    public Tag put(String key, Tag value) {
+        int index = indexOf(key);
+        if (index != -1) {
+            Tag previous = values[index];
+            values[index] = value;
+            return previous;
+        }
+        own(size + 1);
+        keys[size] = NBTIntern.name(key);
+        values[size] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public Tag remove(Object key) {
+        int index = indexOf(key);
+        if (index == -1) {
+            return null;
+        }
+        Tag previous = values[index];
+        removeIndex(index);
+        return previous;
+    }
+
+    private void removeIndex(int index) {
+        own(size);
+        int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(keys, index + 1, keys, index, moved);
+            System.arraycopy(values, index + 1, values, index, moved);
+        }
+        size--;
+        keys[size] = null;
+        values[size] = null;
+    }
+
+    @Override
+    public void clear() {
+        keys = new String[4];
+        values = new Tag[4];
+        size = 0;
+        shared = false;
+    }
+
+    @Override
+    public Set<Entry<String, Tag>> entrySet() {
+        return new AbstractSet<Entry<String, Tag>>() {
+            @Override
+            public Iterator<Entry<String, Tag>> iterator() {
+                return new Iterator<Entry<String, Tag>>() {
+                    private int index;
+                    private int last = -1;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < size;
+                    }
+
+                    @Override
+                    public Entry<String, Tag> next() {
+                        if (index >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        last = index++;
+                        return new IndexEntry(last);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last == -1) {
+                            throw new IllegalStateException();
+                        }
+                        removeIndex(last);
+                        index = last;
+                        last = -1;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void clear() {
+                CompactTagMap.this.clear();
+            }
+        };
+    }
+
+    private class IndexEntry implements Map.Entry<String, Tag> {
+        private final int index;
+
+        private IndexEntry(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getKey() {
+            return keys[index];
+        }
+
+        @Override
+        public Tag getValue() {
+            return values[index];
+        }
+
+        @Override
+        public Tag setValue(Tag value) {
+            Tag previous = values[index];
+            values[index] = value;
+            return previous;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry other = (Map.Entry) o;
+            Object key = getKey();
+            Object value = getValue();
+            return key.equals(other.getKey()) && (value == null ? other.getValue() == null : value.equals(other.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.boydti.fawe.jnbt;
+
+import com.sk89q.jnbt.ByteTag;
+import com.sk89q.jnbt.IntTag;
+import com.sk89q.jnbt.NBTConstants;
+import com.sk89q.jnbt.ShortTag;
+import com.sk89q.jnbt.StringTag;
+import com.sk89q.jnbt.Tag;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shared instances of the NBT names and small immutable tags which repeat in tiles and entities<br>
+ * - Names (id, x, y, z, Items, ...) and short strings are kept in bounded, direct mapped tables (a collision replaces the entry)<br>
+ * - Byte tags, and short/int tags in [{@link #MIN_NUMBER}, {@link #MAX_NUMBER}] are preallocated<br>
+ * - The tables are read and written without locking, entries are immutable so a race only costs a duplicate<br>
+ * - Mutable tags (arrays, lists, compounds) are never shared
+ */
+public final class NBTIntern {
+
+    public static final int MIN_NUMBER = -128;
+    public static final int MAX_NUMBER = 1023;
+    /**
+     * Longer strings (e.g. sign text, custom names) are rarely repeated, so aren't interned
+     */
+    public static final int MAX_STRING_LENGTH = 64;
+    /**
+     * Compounds with up to this many entries use a {@link CompactTagMap}
+     */
+    public static final int MAX_COMPACT_SIZE = 16;
+
+    private static final int NAMES = 1 << 12;
+    private static final int STRINGS = 1 << 13;
+    private static final int SHAPES = 1 << 10;
+
+    private static final class Name {
+        private final byte[] bytes;
+        private final String value;
+
+        private Name(byte[] bytes, String value) {
+            this.bytes = bytes;
+            this.value = value;
+        }
+    }
+
+    private static final class Text {
+        private final byte[] bytes;
+        private final StringTag tag;
+
+        private Text(byte[] bytes, StringTag tag) {
+            this.bytes = bytes;
+            this.tag = tag;
+        }
+    }
+
+    private static final class Shape {
+        private final int hash;
+        private final String[] keys;
+
+        private Shape(int hash, String[] keys) {
+            this.hash = hash;
+            this.keys = keys;
+        }
+    }
+
+    private static final Name[] NAME_TABLE = new Name[NAMES];
+    private static final String[] NAME_STRINGS = new String[NAMES];
+    private static final Text[] STRING_TABLE = new Text[STRINGS];
+    private static final Shape[] SHAPE_TABLE = new Shape[SHAPES];
+
+    private static final ByteTag[] BYTE_TAGS = new ByteTag[256];
+    private static final ShortTag[] SHORT_TAGS = new ShortTag[MAX_NUMBER - MIN_NUMBER + 1];
+    private static final IntTag[] INT_TAGS = new IntTag[MAX_NUMBER - MIN_NUMBER + 1];
+    private static final StringTag EMPTY_STRING = new StringTag("");
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            BYTE_TAGS[i] = new ByteTag((byte) i);
+        }
+        for (int i = MIN_NUMBER; i <= MAX_NUMBER; i++) {
+            SHORT_TAGS[i - MIN_NUMBER] = new ShortTag((short) i);
+            INT_TAGS[i - MIN_NUMBER] = new IntTag(i);
+        }
+    }
+
+    private NBTIntern() {
+    }
+
+    public static ByteTag asTag(byte value) {
+        return BYTE_TAGS[value & 0xFF];
+    }
+
+    public static ShortTag asTag(short value) {
+        if (value >= MIN_NUMBER && value <= MAX_NUMBER) {
+            return SHORT_TAGS[value - MIN_NUMBER];
+        }
+        return new ShortTag(value);
+    }
+
+    public static IntTag asTag(int value) {
+        if (value >= MIN_NUMBER && value <= MAX_NUMBER) {
+            return INT_TAGS[value - MIN_NUMBER];
+        }
+        return new IntTag(value);
+    }
+
+    /**
+     * Get a shared name
+     *
+     * @param bytes  the encoded name
+     * @param length the number of bytes used
+     * @return the name
+     */
+    public static String name(byte[] bytes, int length) {
+        if (length == 0) {
+            return "";
+        }
+        if (length > MAX_STRING_LENGTH) {
+            return new String(bytes, 0, length, NBTConstants.CHARSET);
+        }
+        int index = hash(bytes, length) & (NAMES - 1);
+        Name entry = NAME_TABLE[index];
+        if (entry != null && equals(entry.bytes, bytes, length)) {
+            return entry.value;
+        }
+        String value = name(new String(bytes, 0, length, NBTConstants.CHARSET));
+        NAME_TABLE[index] = new Name(copy(bytes, length), value);
+        return value;
+    }
+
+    /**
+     * Get a shared name
+     *
+     * @param name
+     * @return an equal name (may be the same instance)
+     */
+    public static String name(String name) {
+        if (name.length() > MAX_STRING_LENGTH) {
+            return name;
+        }
+        int hash = name.hashCode();
+        int index = (hash ^ (hash >>> 16)) & (NAMES - 1);
+        String value = NAME_STRINGS[index];
+        if (value != null && value.equals(name)) {
+            return value;
+        }
+        NAME_STRINGS[index] = name;
+        return name;
+    }
+
+    /**
+     * Get a (possibly shared) string tag
+     *
+     * @param bytes  the encoded string
+     * @param length the number of bytes used
+     * @return the tag
+     */
+    public static StringTag asTag(byte[] bytes, int length) {
+        if (length == 0) {
+            return EMPTY_STRING;
+        }
+        if (length > MAX_STRING_LENGTH) {
+            return new StringTag(new String(bytes, 0, length, NBTConstants.CHARSET));
+        }
+        int index = hash(bytes, length) & (STRINGS - 1);
+        Text entry = STRING_TABLE[index];
+        if (entry != null && equals(entry.bytes, bytes, length)) {
+            return entry.tag;
+        }
+        StringTag tag = new StringTag(new String(bytes, 0, length, NBTConstants.CHARSET));
+        STRING_TABLE[index] = new Text(copy(bytes, length), tag);
+        return tag;
+    }
+
+    /**
+     * Get a (possibly shared) string tag
+     *
+     * @param value
+     * @return the tag
+     */
+    public static StringTag asTag(String value) {
+        if (value.isEmpty()) {
+            return EMPTY_STRING;
+        }
+        if (value.length() > MAX_STRING_LENGTH) {
+            return new StringTag(value);
+        }
+        byte[] bytes = value.getBytes(NBTConstants.CHARSET);
+        return asTag(bytes, bytes.length);
+    }
+
+    /**
+     * Get the shared key array for a compound with these (ordered) keys<br>
+     * - Tiles of the same type almost always have the same keys in the same order
+     *
+     * @param keys
+     * @param size the number of keys used
+     * @return an array of exactly {@code size} keys, which must not be modified
+     */
+    public static String[] shape(String[] keys, int size) {
+        int hash = size;
+        for (int i = 0; i < size; i++) {
+            hash = hash * 31 + keys[i].hashCode();
+        }
+        int index = (hash ^ (hash >>> 16)) & (SHAPES - 1);
+        Shape entry = SHAPE_TABLE[index];
+        if (entry != null && entry.hash == hash && entry.keys.length == size) {
+            String[] shared = entry.keys;
+            boolean equal = true;
+            for (int i = 0; i < size; i++) {
+                String a = shared[i];
+                String b = keys[i];
+                if (a != b && !a.equals(b)) {
+                    equal = false;
+                    break;
+                }
+            }
+            if (equal) {
+                return shared;
+            }
+        }
+        String[] shared = new String[size];
+        System.arraycopy(keys, 0, shared, 0, size);
+        SHAPE_TABLE[index] = new Shape(hash, shared);
+        return shared;
+    }
+
+    /**
+     * Create the map for a compound that was read
+     *
+     * @param keys   the names (in the order they were read)
+     * @param values the tags (this array may be kept by the map)
+     * @param size   the number of entries
+     * @return a mutable map
+     */
+    public static Map<String, Tag> compound(String[] keys, Tag[] values, int size) {
+        if (size <= MAX_COMPACT_SIZE && !hasDuplicate(keys, size)) {
+            return new CompactTagMap(shape(keys, size), values, size);
+        }
+        HashMap<String, Tag> map = new HashMap<>(size + (size >> 1) + 1);
+        for (int i = 0; i < size; i++) {
+            map.put(keys[i], values[i]);
+        }
+        return map;
+    }
+
+    private static boolean hasDuplicate(String[] keys, int size) {
+        for (int i = 1; i < size; i++) {
+            String key = keys[i];
+            for (int j = 0; j < i; j++) {
+                if (key.equals(keys[j])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int hash(byte[] bytes, int length) {
+        int hash = length;
+        for (int i = 0; i < length; i++) {
+            hash = hash * 31 + bytes[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(byte[] a, byte[] b, int length) {
+        if (a.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] copy(byte[] bytes, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(bytes, 0, copy, 0, length);
+        return copy;
+    }
+}
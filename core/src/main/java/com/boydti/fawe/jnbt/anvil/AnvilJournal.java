@@ -0,0 +1,218 @@
+package com.boydti.fawe.jnbt.anvil;
+
+import com.boydti.fawe.Fawe;
+import com.boydti.fawe.util.MainUtil;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only record of the region files an anvil job has finished<br>
+ * - Each file is written as a begin entry (with a checksum of the file before the job touched it) and a done entry<br>
+ * - Re-running the same job (same command and arguments) on the same folder resumes it, skipping the finished files<br>
+ * - A journal left by a different job is never resumed<br>
+ * - Files which were begun but not finished are filtered again if they are unchanged, otherwise they are skipped as "in doubt"<br>
+ * - Files which failed (or had chunks which failed) are recorded, and aren't marked as done<br>
+ * - The journal is deleted once the job completes without any files in doubt or failed
+ */
+public class AnvilJournal {
+
+    public static final String FILE_NAME = "fawe-anvil.journal";
+
+    private final File file;
+    private final String job;
+    private final Set<String> done = new HashSet<>();
+    private final Map<String, Long> begun = new HashMap<>();
+    private final Set<String> inDoubt = new HashSet<>();
+    private final Set<String> failed = new HashSet<>();
+    private FileOutputStream out;
+    private boolean resumed;
+
+    private AnvilJournal(File file, String job) {
+        this.file = file;
+        this.job = job;
+    }
+
+    /**
+     * Open the journal of a region folder for a job<br>
+     * - A journal left by a different job (or the same job with different arguments) is discarded
+     *
+     * @param folder the region folder
+     * @param filter the job's filter
+     * @param job    the command and its arguments
+     * @return the journal
+     */
+    public static AnvilJournal open(File folder, MCAFilter filter, String job) throws IOException {
+        AnvilJournal journal = new AnvilJournal(new File(folder, FILE_NAME), filter.getClass().getName() + " " + job.replace('\n', ' '));
+        if (!journal.read() && journal.file.exists()) {
+            Fawe.debug("Not resuming " + journal.file + " as it is for a different job");
+        }
+        journal.out = new FileOutputStream(journal.file, journal.resumed);
+        if (!journal.resumed) {
+            journal.write("J " + journal.job);
+        }
+        return journal;
+    }
+
+    /**
+     * @return if the journal is for this job
+     */
+    private boolean read() throws IOException {
+        if (!file.exists()) {
+            return false;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine();
+            if (line == null || !line.equals("J " + job)) {
+                return false;
+            }
+            resumed = true;
+            while ((line = reader.readLine()) != null) {
+                String[] split = line.split(" ");
+                try {
+                    switch (split[0]) {
+                        case "B":
+                            begun.put(split[1], Long.parseLong(split[2], 16));
+                            break;
+                        case "D":
+                            begun.remove(split[1]);
+                            done.add(split[1]);
+                            break;
+                    }
+                } catch (ArrayIndexOutOfBoundsException | NumberFormatException ignore) {
+                    // The last line may be cut off by a crash
+                }
+            }
+        }
+        return true;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return true if a previous run of this job was found
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public int getDone() {
+        return done.size();
+    }
+
+    public synchronized int getInDoubt() {
+        return inDoubt.size();
+    }
+
+    public synchronized int getFailed() {
+        return failed.size();
+    }
+
+    /**
+     * Check if a file should be filtered, and record that it has begun
+     *
+     * @param mca the region file
+     * @return false if the file was finished by a previous run, or was changed by an unfinished one
+     */
+    public boolean begin(File mca) throws IOException {
+        String name = mca.getName();
+        Long previous;
+        synchronized (this) {
+            if (done.contains(name)) {
+                return false;
+            }
+            previous = begun.get(name);
+        }
+        long checksum = checksum(mca);
+        if (previous != null && previous != checksum) {
+            Fawe.debug("Skipping " + mca + " as an earlier run of " + job + " may have changed it");
+            synchronized (this) {
+                inDoubt.add(name);
+            }
+            return false;
+        }
+        write("B " + name + " " + Long.toHexString(checksum));
+        return true;
+    }
+
+    /**
+     * Record that a file has been filtered and written
+     *
+     * @param mca the region file
+     */
+    public void complete(File mca) throws IOException {
+        String name = mca.getName();
+        synchronized (this) {
+            done.add(name);
+        }
+        write("D " + name);
+    }
+
+    /**
+     * Record that a file (or some of its chunks) failed to be filtered<br>
+     * - It stays begun, so the next run filters it again if it is unchanged (or reports it as in doubt)
+     *
+     * @param mca the region file
+     */
+    public void fail(File mca) {
+        String name = mca.getName();
+        synchronized (this) {
+            failed.add(name);
+        }
+        try {
+            write("F " + name);
+        } catch (IOException e) {
+            MainUtil.handleError(e);
+        }
+    }
+
+    /**
+     * Close the journal
+     *
+     * @param finished if the job completed (the journal is then deleted, unless files are in doubt or failed)
+     */
+    public synchronized void close(boolean finished) {
+        try {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        } catch (IOException e) {
+            MainUtil.handleError(e);
+        }
+        if (finished && inDoubt.isEmpty() && failed.isEmpty()) {
+            file.delete();
+        }
+    }
+
+    private synchronized void write(String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        // The entry must be on disk before the file is rewritten
+        out.getFD().sync();
+    }
+
+    private static long checksum(File mca) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = new FileInputStream(mca)) {
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, len);
+            }
+        }
+        return crc.getValue();
+    }
+}
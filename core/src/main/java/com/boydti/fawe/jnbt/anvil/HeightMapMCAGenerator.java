@@ -372,64 +372,71 @@ public class HeightMapMCAGenerator extends MCAWriter implements StreamChange, Dr
     }
 
     public void smooth(Vector2D min, Vector2D max, int radius, int iterations) {
-        char snowLayer = 78 << 4;
-        char snowBlock = 80;
+        final char[] floor = this.floor.get();
+        final byte[] heights = this.heights.get();
 
-        char[] floor = this.floor.get();
-        byte[] heights = this.heights.get();
-
-        int width = getWidth();
-        int length = getLength();
+        final int width = getWidth();
 
-        int minX = min.getBlockX();
-        int minZ = min.getBlockZ();
+        final int minX = min.getBlockX();
+        final int minZ = min.getBlockZ();
 
         int maxX = max.getBlockX();
         int maxZ = max.getBlockZ();
 
-        int tableWidth = (maxX - minX + 1);
+        final int tableWidth = (maxX - minX + 1);
         int tableLength = (maxZ - minZ + 1);
         int smoothArea = tableWidth * tableLength;
 
         long[] copy = new long[smoothArea];
-        char[] layers = new char[smoothArea];
+        final char[] layers = new char[smoothArea];
+        final int[] newHeights = new int[smoothArea];
 
-        SummedAreaTable table = new SummedAreaTable(copy, layers, tableWidth, radius);
+        final SummedAreaTable table = new SummedAreaTable(copy, layers, tableWidth, radius);
         for (int j = 0; j < iterations; j++) {
-
-            { // Copy to table
-                int localIndex = 0;
-                int zIndex = (minZ * getWidth());
-                for (int z = minZ; z <= maxZ; z++, zIndex += getWidth()) {
-                    int index = zIndex + minX;
-                    for (int x = minX; x <= maxX; x++, index++, localIndex++) {
-                        char combined = floor[index];
-                        int id = combined >> 4;
-                        if (id == 78) {
-                            layers[localIndex] = (char) (((heights[index] & 0xFF) << 3) + (floor[index] & 0x7) - 7);
-                        } else {
-                            layers[localIndex] = (char) (((heights[index] & 0xFF) << 3));
-                        }
+            // Copy to table
+            table.forEachRows(tableLength, (minRow, maxRow) -> {
+                for (int localZ = minRow; localZ < maxRow; localZ++) {
+                    int localIndex = localZ * tableWidth;
+                    int index = (minZ + localZ) * width + minX;
+                    for (int localX = 0; localX < tableWidth; localX++, index++, localIndex++) {
+                        layers[localIndex] = getLayerHeight(floor, heights, index);
                     }
                 }
-            }
+            });
             // Process table
             table.processSummedAreaTable();
-            { // Copy from table
-                int localIndex = 0;
-                int zIndex = (minZ * getWidth());
-                for (int z = minZ, localZ = 0; z <= maxZ; z++, localZ++, zIndex += getWidth()) {
-                    int index = zIndex + minX;
-                    for (int x = minX, localX = 0; x <= maxX; x++, localX++, index++, localIndex++) {
-                        int y = heights[index] & 0xFF;
-                        int newHeight = table.average(localX, localZ, localIndex);
-                        setLayerHeight(index, newHeight);
+            table.forEachRows(tableLength, (minRow, maxRow) -> {
+                for (int localZ = minRow; localZ < maxRow; localZ++) {
+                    int localIndex = localZ * tableWidth;
+                    for (int localX = 0; localX < tableWidth; localX++, localIndex++) {
+                        newHeights[localIndex] = table.average(localX, localZ, localIndex);
                     }
                 }
+            });
+            // Copy from table (recorded, so not in parallel)
+            int localIndex = 0;
+            int zIndex = (minZ * width);
+            for (int z = minZ; z <= maxZ; z++, zIndex += width) {
+                int index = zIndex + minX;
+                for (int x = minX; x <= maxX; x++, index++, localIndex++) {
+                    setLayerHeight(index, newHeights[localIndex]);
+                }
             }
         }
     }
 
+    /**
+     * @return the height of a column in snow layers (8 per block)
+     */
+    private static char getLayerHeight(char[] floor, byte[] heights, int index) {
+        int id = floor[index] >> 4;
+        if (id == 78) {
+            return (char) (((heights[index] & 0xFF) << 3) + (floor[index] & 0x7) - 7);
+        } else {
+            return (char) (((heights[index] & 0xFF) << 3));
+        }
+    }
+
     private final void setLayerHeight(int index, int height) {
         int blockHeight = (height) >> 3;
         int layerHeight = (height) & 0x7;
@@ -472,63 +479,69 @@ public class HeightMapMCAGenerator extends MCAWriter implements StreamChange, Dr
         }
     }
 
+    /**
+     * Smooth the height map (the whole map, or the columns selected by the image or mask)<br>
+     * - Each iteration averages the heights from the previous iteration, using a summed area table<br>
+     * - The table and the averages are computed in parallel bands of rows, the result doesn't depend on the order<br>
+     * - The image and mask are evaluated for every column before any height changes
+     */
     private void smooth(BufferedImage img, Mask mask, boolean white, int radius, int iterations) {
-        char snowLayer = 78 << 4;
-        char snowBlock = 80;
-
-        char[] floor = this.floor.get();
-        byte[] heights = this.heights.get();
+        final char[] floor = this.floor.get();
+        final byte[] heights = this.heights.get();
 
         long[] copy = new long[heights.length];
-        char[] layers = new char[heights.length];
+        final char[] layers = new char[heights.length];
 
         this.floor.record(() -> HeightMapMCAGenerator.this.heights.record(() -> {
-            int width = getWidth();
-            int length = getLength();
-            SummedAreaTable table = new SummedAreaTable(copy, layers, width, radius);
+            final int width = getWidth();
+            final int length = getLength();
+            // Brightness of each pixel
+            byte[] brightness = null;
+            if (img != null) {
+                int[] rgb = img.getRGB(0, 0, width, length, null, 0, width);
+                brightness = new byte[rgb.length];
+                for (int i = 0; i < rgb.length; i++) {
+                    brightness[i] = (byte) rgb[i];
+                }
+            }
+            boolean[] selected = img != null || mask != null ? new boolean[heights.length] : null;
+            final SummedAreaTable table = new SummedAreaTable(copy, layers, width, radius);
             for (int j = 0; j < iterations; j++) {
-                for (int i = 0; i < heights.length; i++) {
-                    char combined = floor[i];
-                    int id = combined >> 4;
-                    if (id == 78) {
-                        layers[i] = (char) (((heights[i] & 0xFF) << 3) + (floor[i] & 0x7) - 7);
-                    } else {
-                        layers[i] = (char) (((heights[i] & 0xFF) << 3));
+                table.forEachRows(length, (minRow, maxRow) -> {
+                    for (int i = minRow * width, end = maxRow * width; i < end; i++) {
+                        layers[i] = getLayerHeight(floor, heights, i);
                     }
-                }
-                int index = 0;
+                });
                 table.processSummedAreaTable();
                 if (img != null) {
-                    for (int z = 0; z < getLength(); z++) {
-                        for (int x = 0; x < getWidth(); x++, index++) {
-                            int height = img.getRGB(x, z) & 0xFF;
-                            if (height == 255 || height > 0 && !white && PseudoRandom.random.nextInt(256) <= height) {
-                                int newHeight = table.average(x, z, index);
-                                setLayerHeightRaw(index, newHeight);
-                            }
-                        }
+                    for (int i = 0; i < brightness.length; i++) {
+                        int height = brightness[i] & 0xFF;
+                        selected[i] = height == 255 || height > 0 && !white && PseudoRandom.random.nextInt(256) <= height;
                     }
                 } else if (mask != null) {
-                    for (int z = 0; z < getLength(); z++) {
+                    int index = 0;
+                    for (int z = 0; z < length; z++) {
                         mutable.mutZ(z);
-                        for (int x = 0; x < getWidth(); x++, index++) {
+                        for (int x = 0; x < width; x++, index++) {
                             int y = heights[index] & 0xFF;
                             mutable.mutX(x);
                             mutable.mutY(y);
-                            if (mask.test(mutable)) {
+                            selected[index] = mask.test(mutable);
+                        }
+                    }
+                }
+                final boolean[] finalSelected = selected;
+                table.forEachRows(length, (minRow, maxRow) -> {
+                    int index = minRow * width;
+                    for (int z = minRow; z < maxRow; z++) {
+                        for (int x = 0; x < width; x++, index++) {
+                            if (finalSelected == null || finalSelected[index]) {
                                 int newHeight = table.average(x, z, index);
                                 setLayerHeightRaw(index, newHeight);
                             }
                         }
                     }
-                } else {
-                    for (int z = 0; z < getLength(); z++) {
-                        for (int x = 0; x < getWidth(); x++, index++) {
-                            int newHeight = table.average(x, z, index);
-                            setLayerHeightRaw(index, newHeight);
-                        }
-                    }
-                }
+                });
             }
         }));
     }
@@ -535,6 +535,44 @@ public class MCAChunk extends FaweChunk<Void> {
         streamer.readFully();
     }
 
+    /**
+     * Decode a chunk from a reader
+     *
+     * @param reader
+     * @param parent
+     * @throws IOException
+     */
+    public MCAChunk(MCAChunkReader reader, FaweQueue parent) throws IOException {
+        super(parent, reader.getX(), reader.getZ());
+        ids = new byte[16][];
+        data = new byte[16][];
+        skyLight = new byte[16][];
+        blockLight = new byte[16][];
+        for (int layer = 0; layer < 16; layer++) {
+            if (reader.doesSectionExist(layer)) {
+                ids[layer] = reader.copy(reader.getIdsOffset(layer), 4096);
+                data[layer] = reader.copy(reader.getDataOffset(layer), 2048);
+                skyLight[layer] = reader.copy(reader.getSkyLightOffset(layer), 2048);
+                blockLight[layer] = reader.copy(reader.getBlockLightOffset(layer), 2048);
+            }
+        }
+        for (CompoundTag tile : reader.getTiles()) {
+            int x = tile.getInt("x") & 15;
+            int y = tile.getInt("y");
+            int z = tile.getInt("z") & 15;
+            tiles.put(MathMan.tripleBlockCoord(x, y, z), tile);
+        }
+        for (CompoundTag entityTag : reader.getEntities()) {
+            long least = entityTag.getLong("UUIDLeast");
+            long most = entityTag.getLong("UUIDMost");
+            entities.put(new UUID(most, least), entityTag);
+        }
+        inhabitedTime = reader.getInhabitedTime();
+        lastUpdate = reader.getLastUpdate();
+        biomes = reader.copyBiomes();
+        heightMap = reader.copyHeightMap();
+    }
+
     public long filterBlocks(MutableMCABackedBaseBlock mutableBlock, MCAFilter filter) {
         MutableLong result = new MutableLong();
         mutableBlock.setChunk(this);
@@ -0,0 +1,552 @@
+package com.boydti.fawe.jnbt.anvil;
+
+import com.boydti.fawe.FaweCache;
+import com.boydti.fawe.object.io.FastByteArrayInputStream;
+import com.sk89q.jnbt.CompoundTag;
+import com.sk89q.jnbt.NBTConstants;
+import com.sk89q.jnbt.NBTInputStream;
+import com.sk89q.jnbt.Tag;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a chunk from a region file without decoding it<br>
+ * - The chunk is inflated into a reused buffer, and walked once to find where each field is<br>
+ * - Section arrays are read in place, tile entities and entities are only decoded when requested<br>
+ * - Use {@link MCAFile#readChunk(MCAChunkReader)} to decode the chunk when it needs to be modified<br>
+ * - A reader is reused by its thread, so it's only valid until the next chunk is read
+ */
+public class MCAChunkReader {
+
+    private static final byte[] LEVEL = name("Level");
+    private static final byte[] X_POS = name("xPos");
+    private static final byte[] Z_POS = name("zPos");
+    private static final byte[] INHABITED_TIME = name("InhabitedTime");
+    private static final byte[] LAST_UPDATE = name("LastUpdate");
+    private static final byte[] BIOMES = name("Biomes");
+    private static final byte[] HEIGHT_MAP = name("HeightMap");
+    private static final byte[] SECTIONS = name("Sections");
+    private static final byte[] TILE_ENTITIES = name("TileEntities");
+    private static final byte[] ENTITIES = name("Entities");
+    private static final byte[] Y = name("Y");
+    private static final byte[] BLOCKS = name("Blocks");
+    private static final byte[] DATA = name("Data");
+    private static final byte[] SKY_LIGHT = name("SkyLight");
+    private static final byte[] BLOCK_LIGHT = name("BlockLight");
+
+    private final Inflater inflater = new Inflater();
+    private byte[] input = new byte[8192];
+    private byte[] buffer = new byte[65536];
+    private int length;
+    private int pos;
+
+    private int x;
+    private int z;
+    private int xPos;
+    private int zPos;
+    private long inhabitedTime;
+    private long lastUpdate;
+    private int sectionMask;
+    private final int[] blocks = new int[16];
+    private final int[] data = new int[16];
+    private final int[] skyLight = new int[16];
+    private final int[] blockLight = new int[16];
+    private int biomes;
+    private int heightMap;
+    private int tiles;
+    private int tileCount;
+    private int entities;
+    private int entityCount;
+
+    // Fields of the section being read
+    private int sectionY;
+    private int sectionBlocks;
+    private int sectionData;
+    private int sectionSkyLight;
+    private int sectionBlockLight;
+
+    /**
+     * Read a chunk from a region file
+     *
+     * @param raf    the region file (locked while reading)
+     * @param offset the offset of the chunk in the file
+     * @param cx     the chunk x
+     * @param cz     the chunk z
+     * @throws IOException if the chunk is corrupt
+     */
+    public void read(RandomAccessFile raf, int offset, int cx, int cz) throws IOException {
+        int size;
+        synchronized (raf) {
+            raf.seek(offset);
+            size = raf.readInt() - 1;
+            // The compression type, chunks are always read as zlib
+            raf.skipBytes(1);
+            if (size < 0) {
+                throw new IOException("Invalid chunk size " + size);
+            }
+            if (input.length < size) {
+                input = new byte[size];
+            }
+            raf.readFully(input, 0, size);
+        }
+        inflate(size);
+        this.x = cx;
+        this.z = cz;
+        parse();
+    }
+
+    /**
+     * Release the native memory of the inflater<br>
+     * - The reader can't be used after this
+     */
+    public void close() {
+        inflater.end();
+    }
+
+    private void inflate(int size) throws IOException {
+        inflater.reset();
+        inflater.setInput(input, 0, size);
+        length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length << 1);
+                }
+                int read = inflater.inflate(buffer, length, buffer.length - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated chunk");
+                }
+                length += read;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void parse() throws IOException {
+        xPos = x;
+        zPos = z;
+        inhabitedTime = 0;
+        lastUpdate = 0;
+        sectionMask = 0;
+        Arrays.fill(blocks, -1);
+        Arrays.fill(data, -1);
+        Arrays.fill(skyLight, -1);
+        Arrays.fill(blockLight, -1);
+        biomes = -1;
+        heightMap = -1;
+        tiles = -1;
+        tileCount = 0;
+        entities = -1;
+        entityCount = 0;
+        pos = 0;
+        try {
+            int type = readByte();
+            if (type != NBTConstants.TYPE_COMPOUND) {
+                throw new IOException("Invalid root tag " + type);
+            }
+            skip(readUnsignedShort());
+            while ((type = readByte()) != NBTConstants.TYPE_END) {
+                int nameLength = readUnsignedShort();
+                int name = pos;
+                skip(nameLength);
+                if (type == NBTConstants.TYPE_COMPOUND && equals(name, nameLength, LEVEL)) {
+                    parseLevel();
+                } else {
+                    skipPayload(type);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Truncated chunk", e);
+        }
+    }
+
+    private void parseLevel() throws IOException {
+        int type;
+        while ((type = readByte()) != NBTConstants.TYPE_END) {
+            int nameLength = readUnsignedShort();
+            int name = pos;
+            skip(nameLength);
+            switch (type) {
+                case NBTConstants.TYPE_INT:
+                    if (equals(name, nameLength, X_POS)) {
+                        xPos = readInt();
+                        continue;
+                    } else if (equals(name, nameLength, Z_POS)) {
+                        zPos = readInt();
+                        continue;
+                    }
+                    break;
+                case NBTConstants.TYPE_LONG:
+                    if (equals(name, nameLength, INHABITED_TIME)) {
+                        inhabitedTime = readLong();
+                        continue;
+                    } else if (equals(name, nameLength, LAST_UPDATE)) {
+                        lastUpdate = readLong();
+                        continue;
+                    }
+                    break;
+                case NBTConstants.TYPE_BYTE_ARRAY:
+                    if (equals(name, nameLength, BIOMES)) {
+                        biomes = pos;
+                    }
+                    break;
+                case NBTConstants.TYPE_INT_ARRAY:
+                    if (equals(name, nameLength, HEIGHT_MAP)) {
+                        heightMap = pos;
+                    }
+                    break;
+                case NBTConstants.TYPE_LIST:
+                    if (equals(name, nameLength, SECTIONS)) {
+                        int childType = readByte();
+                        int amount = readInt();
+                        for (int i = 0; i < amount; i++) {
+                            if (childType == NBTConstants.TYPE_COMPOUND) {
+                                parseSection();
+                            } else {
+                                skipPayload(childType);
+                            }
+                        }
+                        continue;
+                    } else if (equals(name, nameLength, TILE_ENTITIES)) {
+                        tiles = pos;
+                        tileCount = getInt(pos + 1);
+                    } else if (equals(name, nameLength, ENTITIES)) {
+                        entities = pos;
+                        entityCount = getInt(pos + 1);
+                    }
+                    break;
+            }
+            skipPayload(type);
+        }
+    }
+
+    private void parseSection() throws IOException {
+        sectionY = -1;
+        sectionBlocks = -1;
+        sectionData = -1;
+        sectionSkyLight = -1;
+        sectionBlockLight = -1;
+        int type;
+        while ((type = readByte()) != NBTConstants.TYPE_END) {
+            int nameLength = readUnsignedShort();
+            int name = pos;
+            skip(nameLength);
+            if (type == NBTConstants.TYPE_BYTE && equals(name, nameLength, Y)) {
+                sectionY = readByte();
+                continue;
+            }
+            if (type == NBTConstants.TYPE_BYTE_ARRAY) {
+                int arrayLength = getInt(pos);
+                int array = pos + 4;
+                if (equals(name, nameLength, BLOCKS)) {
+                    if (arrayLength == 4096) sectionBlocks = array;
+                } else if (arrayLength == 2048) {
+                    if (equals(name, nameLength, DATA)) {
+                        sectionData = array;
+                    } else if (equals(name, nameLength, SKY_LIGHT)) {
+                        sectionSkyLight = array;
+                    } else if (equals(name, nameLength, BLOCK_LIGHT)) {
+                        sectionBlockLight = array;
+                    }
+                }
+            }
+            skipPayload(type);
+        }
+        if (sectionY >= 0 && sectionY < 16 && sectionBlocks != -1) {
+            sectionMask |= 1 << sectionY;
+            blocks[sectionY] = sectionBlocks;
+            data[sectionY] = sectionData;
+            skyLight[sectionY] = sectionSkyLight;
+            blockLight[sectionY] = sectionBlockLight;
+        }
+    }
+
+    private void skipPayload(int type) throws IOException {
+        switch (type) {
+            case NBTConstants.TYPE_BYTE:
+                pos += 1;
+                break;
+            case NBTConstants.TYPE_SHORT:
+                pos += 2;
+                break;
+            case NBTConstants.TYPE_INT:
+            case NBTConstants.TYPE_FLOAT:
+                pos += 4;
+                break;
+            case NBTConstants.TYPE_LONG:
+            case NBTConstants.TYPE_DOUBLE:
+                pos += 8;
+                break;
+            case NBTConstants.TYPE_BYTE_ARRAY:
+                skip(readInt());
+                break;
+            case NBTConstants.TYPE_STRING:
+                skip(readUnsignedShort());
+                break;
+            case NBTConstants.TYPE_LIST: {
+                int childType = readByte();
+                int amount = readInt();
+                for (int i = 0; i < amount; i++) {
+                    skipPayload(childType);
+                }
+                break;
+            }
+            case NBTConstants.TYPE_COMPOUND: {
+                int childType;
+                while ((childType = readByte()) != NBTConstants.TYPE_END) {
+                    skip(readUnsignedShort());
+                    skipPayload(childType);
+                }
+                break;
+            }
+            case NBTConstants.TYPE_INT_ARRAY:
+                skip(readInt() << 2);
+                break;
+            case 12: // Long array
+                skip(readInt() << 3);
+                break;
+            default:
+                throw new IOException("Invalid tag type: " + type);
+        }
+        if (pos > length) {
+            throw new IOException("Truncated chunk");
+        }
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    /**
+     * @return the chunk x stored in the chunk
+     */
+    public int getXPos() {
+        return xPos;
+    }
+
+    /**
+     * @return the chunk z stored in the chunk
+     */
+    public int getZPos() {
+        return zPos;
+    }
+
+    public long getInhabitedTime() {
+        return inhabitedTime;
+    }
+
+    public long getLastUpdate() {
+        return lastUpdate;
+    }
+
+    /**
+     * @return bit per section (0-15) which exists
+     */
+    public int getSectionMask() {
+        return sectionMask;
+    }
+
+    public boolean doesSectionExist(int layer) {
+        return (sectionMask & (1 << layer)) != 0;
+    }
+
+    /**
+     * The inflated chunk, for reading section arrays in place<br>
+     * - Don't keep a reference to this, it is reused
+     *
+     * @return the buffer
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @param layer
+     * @return the offset of the section's 4096 block ids in the buffer, or -1 if the section doesn't exist
+     */
+    public int getIdsOffset(int layer) {
+        return blocks[layer];
+    }
+
+    /**
+     * @param layer
+     * @return the offset of the section's 2048 byte data array in the buffer, or -1
+     */
+    public int getDataOffset(int layer) {
+        return data[layer];
+    }
+
+    /**
+     * @param layer
+     * @return the offset of the section's 2048 byte sky light array in the buffer, or -1
+     */
+    public int getSkyLightOffset(int layer) {
+        return skyLight[layer];
+    }
+
+    /**
+     * @param layer
+     * @return the offset of the section's 2048 byte block light array in the buffer, or -1
+     */
+    public int getBlockLightOffset(int layer) {
+        return blockLight[layer];
+    }
+
+    /**
+     * Get a block id (the section must exist)
+     *
+     * @param layer
+     * @param index the index in the section (y << 8 | z << 4 | x)
+     * @return the id
+     */
+    public int getId(int layer, int index) {
+        return buffer[blocks[layer] + index] & 0xFF;
+    }
+
+    /**
+     * Get a block's data (the section must exist)<br>
+     * - 0 for ids which don't have data, the same as {@link MutableMCABackedBaseBlock#getData()}
+     *
+     * @param layer
+     * @param index the index in the section (y << 8 | z << 4 | x)
+     * @return the data
+     */
+    public int getData(int layer, int index) {
+        int offset = data[layer];
+        if (offset == -1 || !FaweCache.hasData(buffer[blocks[layer] + index] & 0xFF)) {
+            return 0;
+        }
+        int value = buffer[offset + (index >> 1)];
+        return (index & 1) == 0 ? value & 15 : (value >> 4) & 15;
+    }
+
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    public int getEntityCount() {
+        return entityCount;
+    }
+
+    /**
+     * Decode the tile entities
+     *
+     * @return the tiles (empty if there are none)
+     */
+    public List<CompoundTag> getTiles() throws IOException {
+        return readCompoundList(tiles, tileCount);
+    }
+
+    /**
+     * Decode the entities
+     *
+     * @return the entities (empty if there are none)
+     */
+    public List<CompoundTag> getEntities() throws IOException {
+        return readCompoundList(entities, entityCount);
+    }
+
+    private List<CompoundTag> readCompoundList(int offset, int amount) throws IOException {
+        if (offset == -1 || amount <= 0 || buffer[offset] != NBTConstants.TYPE_COMPOUND) {
+            return new ArrayList<>();
+        }
+        List<CompoundTag> list = new ArrayList<>(amount);
+        NBTInputStream nis = new NBTInputStream(new DataInputStream(new FastByteArrayInputStream(buffer, offset + 5, length - offset - 5)));
+        for (int i = 0; i < amount; i++) {
+            Tag tag = nis.readTagPayload(NBTConstants.TYPE_COMPOUND, 1);
+            list.add((CompoundTag) tag);
+        }
+        return list;
+    }
+
+    /**
+     * @return a copy of the biomes, or null if the chunk doesn't have any
+     */
+    public byte[] copyBiomes() {
+        return biomes == -1 ? null : Arrays.copyOfRange(buffer, biomes + 4, biomes + 4 + getInt(biomes));
+    }
+
+    /**
+     * @return a copy of the height map, or null if the chunk doesn't have one
+     */
+    public int[] copyHeightMap() {
+        if (heightMap == -1) {
+            return null;
+        }
+        int[] copy = new int[getInt(heightMap)];
+        for (int i = 0, offset = heightMap + 4; i < copy.length; i++, offset += 4) {
+            copy[i] = getInt(offset);
+        }
+        return copy;
+    }
+
+    /**
+     * Copy a section array
+     *
+     * @param offset the offset of the array (from getIdsOffset etc.)
+     * @param size   the size of the array
+     * @return the copy, or a zeroed array if the offset is -1
+     */
+    public byte[] copy(int offset, int size) {
+        return offset == -1 ? new byte[size] : Arrays.copyOfRange(buffer, offset, offset + size);
+    }
+
+    private int readByte() {
+        return buffer[pos++];
+    }
+
+    private int readUnsignedShort() {
+        int value = ((buffer[pos] & 0xFF) << 8) | (buffer[pos + 1] & 0xFF);
+        pos += 2;
+        return value;
+    }
+
+    private int readInt() {
+        int value = getInt(pos);
+        pos += 4;
+        return value;
+    }
+
+    private long readLong() {
+        long value = ((long) getInt(pos) << 32) | (getInt(pos + 4) & 0xFFFFFFFFL);
+        pos += 8;
+        return value;
+    }
+
+    private int getInt(int offset) {
+        return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16) | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+
+    private void skip(int amount) throws IOException {
+        if (amount < 0 || (pos += amount) > length) {
+            throw new IOException("Truncated chunk");
+        }
+    }
+
+    private boolean equals(int offset, int nameLength, byte[] name) {
+        if (nameLength != name.length) {
+            return false;
+        }
+        for (int i = 0; i < nameLength; i++) {
+            if (buffer[offset + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] name(String name) {
+        return name.getBytes(NBTConstants.CHARSET);
+    }
+}
@@ -23,7 +23,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
@@ -52,9 +55,13 @@ public class MCAFile {
     private final File file;
     private RandomAccessFile raf;
     private byte[] locations;
+    private byte[] timestamps;
+    private MCASummary summary;
     private boolean deleted;
     private final int X, Z;
     private final Int2ObjectOpenHashMap<MCAChunk> chunks = new Int2ObjectOpenHashMap<>();
+    // Tasks submitted for this file, so it can be waited on without waiting for the whole pool
+    private final Queue<ForkJoinTask<?>> tasks = new ConcurrentLinkedQueue<>();
 
     final ThreadLocal<byte[]> byteStore1 = new ThreadLocal<byte[]>() {
         @Override
@@ -74,6 +81,16 @@ public class MCAFile {
             return new byte[1024];
         }
     };
+    // Every reader of readerStore, so their inflaters can be ended (see clear)
+    private final ConcurrentLinkedQueue<MCAChunkReader> readers = new ConcurrentLinkedQueue<>();
+    final ThreadLocal<MCAChunkReader> readerStore = new ThreadLocal<MCAChunkReader>() {
+        @Override
+        protected MCAChunkReader initialValue() {
+            MCAChunkReader reader = new MCAChunkReader();
+            readers.add(reader);
+            return reader;
+        }
+    };
 
     public MCAFile(FaweQueue parent, File file) {
         this.queue = parent;
@@ -112,6 +129,15 @@ public class MCAFile {
         IterableThreadLocal.clean(byteStore1);
         IterableThreadLocal.clean(byteStore2);
         IterableThreadLocal.clean(byteStore3);
+        IterableThreadLocal.clean(readerStore);
+        closeReaders();
+    }
+
+    private void closeReaders() {
+        MCAChunkReader reader;
+        while ((reader = readers.poll()) != null) {
+            reader.close();
+        }
     }
 
     @Override
@@ -119,9 +145,33 @@ public class MCAFile {
         IterableThreadLocal.clean(byteStore1);
         IterableThreadLocal.clean(byteStore2);
         IterableThreadLocal.clean(byteStore3);
+        IterableThreadLocal.clean(readerStore);
+        closeReaders();
         super.finalize();
     }
 
+    /**
+     * Submit a task for this file to a (shared) pool
+     *
+     * @param pool
+     * @param task
+     * @see #awaitTasks()
+     */
+    public void submit(ForkJoinPool pool, Runnable task) {
+        tasks.add(pool.submit(task));
+    }
+
+    /**
+     * Wait for the tasks submitted for this file<br>
+     * - Other files using the same pool are not waited on
+     */
+    public void awaitTasks() {
+        ForkJoinTask<?> task;
+        while ((task = tasks.poll()) != null) {
+            task.quietlyJoin();
+        }
+    }
+
     public void setDeleted(boolean deleted) {
         this.deleted = deleted;
     }
@@ -141,6 +191,7 @@ public class MCAFile {
         try {
             if (raf == null) {
                 this.locations = new byte[4096];
+                this.timestamps = new byte[4096];
                 if (file != null) {
                     this.raf = new RandomAccessFile(file, "rw");
                     if (raf.length() < 8192) {
@@ -148,6 +199,7 @@ public class MCAFile {
                     } else {
                         raf.seek(0);
                         raf.readFully(locations);
+                        raf.readFully(timestamps);
                     }
                 }
             }
@@ -198,15 +250,43 @@ public class MCAFile {
     }
 
     public MCAChunk readChunk(int cx, int cz) throws IOException {
-        int i = ((cx & 31) << 2) + ((cz & 31) << 7);
-        int offset = (((locations[i] & 0xFF) << 16) + ((locations[i + 1] & 0xFF) << 8) + ((locations[i + 2] & 0xFF))) << 12;
-        int size = (locations[i + 3] & 0xFF) << 12;
+        MCAChunkReader reader = getChunkReader(cx, cz);
+        if (reader == null) {
+            return null;
+        }
+        return readChunk(reader);
+    }
+
+    /**
+     * Read a chunk without decoding it (see {@link MCAChunkReader})<br>
+     * - The reader belongs to the calling thread, and is reused for the next chunk it reads
+     *
+     * @param cx
+     * @param cz
+     * @return the reader, or null if the chunk doesn't exist
+     * @throws IOException
+     */
+    public MCAChunkReader getChunkReader(int cx, int cz) throws IOException {
+        int offset = getOffset(cx, cz);
         if (offset == 0) {
             return null;
         }
-        NBTInputStream nis = getChunkIS(offset);
-        MCAChunk chunk = new MCAChunk(nis, queue, cx, cz, false);
-        nis.close();
+        MCAChunkReader reader = readerStore.get();
+        reader.read(raf, offset, cx, cz);
+        return reader;
+    }
+
+    /**
+     * Decode the chunk a reader has read, and cache it
+     *
+     * @param reader
+     * @return the chunk
+     * @throws IOException
+     */
+    public MCAChunk readChunk(MCAChunkReader reader) throws IOException {
+        MCAChunk chunk = new MCAChunk(reader, queue);
+        int cx = chunk.getX();
+        int cz = chunk.getZ();
         int pair = MathMan.pair((short) (cx & 31), (short) (cz & 31));
         synchronized (chunks) {
             chunks.put(pair, chunk);
@@ -282,6 +362,43 @@ public class MCAFile {
         }
     }
 
+    /**
+     * @param index the chunk index (x + z * 32)
+     * @return the raw location entry of the header (offset and size)
+     */
+    public int getLocation(int index) {
+        int i = index << 2;
+        return ((locations[i] & 0xFF) << 24) + ((locations[i + 1] & 0xFF) << 16) + ((locations[i + 2] & 0xFF) << 8) + (locations[i + 3] & 0xFF);
+    }
+
+    /**
+     * @param index the chunk index (x + z * 32)
+     * @return the timestamp of the header (seconds)
+     */
+    public int getTimestamp(int index) {
+        int i = index << 2;
+        return ((timestamps[i] & 0xFF) << 24) + ((timestamps[i + 1] & 0xFF) << 16) + ((timestamps[i + 2] & 0xFF) << 8) + (timestamps[i + 3] & 0xFF);
+    }
+
+    /**
+     * Get the chunk summary of this file (the file must be initialized)
+     *
+     * @return the summary
+     * @see MCASummary
+     */
+    public MCASummary getSummary() {
+        MCASummary tmp = summary;
+        if (tmp == null) {
+            synchronized (this) {
+                tmp = summary;
+                if (tmp == null) {
+                    summary = tmp = MCASummary.load(this);
+                }
+            }
+        }
+        return tmp;
+    }
+
     public int getOffset(int cx, int cz) {
         int i = ((cx & 31) << 2) + ((cz & 31) << 7);
         int offset = (((locations[i] & 0xFF) << 16) + ((locations[i + 1] & 0xFF) << 8) + ((locations[i + 2] & 0xFF)));
@@ -319,22 +436,6 @@ public class MCAFile {
         }
     }
 
-    private NBTInputStream getChunkIS(int offset) throws IOException {
-        try {
-            byte[] data = getChunkCompressedBytes(offset);
-            FastByteArrayInputStream bais = new FastByteArrayInputStream(data);
-            InflaterInputStream iis = new InflaterInputStream(bais, new Inflater(), 1);
-            fieldBuf2.set(iis, byteStore2.get());
-            BufferedInputStream bis = new BufferedInputStream(iis);
-            NBTInputStream nis = new NBTInputStream(bis);
-            fieldBuf3.set(nis, byteStore3.get());
-            return nis;
-        } catch (IllegalAccessException unlikely) {
-            unlikely.printStackTrace();
-            return null;
-        }
-    }
-
     public void streamChunk(int cx, int cz, RunnableVal<NBTStreamer> addReaders) throws IOException {
         streamChunk(getOffset(cx, cz), addReaders);
     }
@@ -434,11 +535,12 @@ public class MCAFile {
         raf.write((offsetMedium >> 0));
         raf.write(sizeByte);
         raf.seek(i + 4096);
-        if (offsetMedium == 0 && sizeByte == 0) {
-            raf.writeInt(0);
-        } else {
-            raf.writeInt((int) (System.currentTimeMillis() / 1000L));
-        }
+        int time = offsetMedium == 0 && sizeByte == 0 ? 0 : (int) (System.currentTimeMillis() / 1000L);
+        timestamps[i] = (byte) (time >> 24);
+        timestamps[i + 1] = (byte) (time >> 16);
+        timestamps[i + 2] = (byte) (time >> 8);
+        timestamps[i + 3] = (byte) (time);
+        raf.writeInt(time);
     }
 
     public void close(ForkJoinPool pool) {
@@ -453,6 +555,11 @@ public class MCAFile {
                 }
                 raf = null;
                 locations = null;
+                IterableThreadLocal.clean(readerStore);
+                closeReaders();
+                if (summary != null && !isDeleted()) {
+                    summary.save();
+                }
             }
         }
     }
@@ -482,6 +589,7 @@ public class MCAFile {
             if (isDeleted()) {
                 clear();
                 file.delete();
+                MCASummary.getFile(this).delete();
                 return;
             }
 
@@ -509,7 +617,7 @@ public class MCAFile {
                     modified = true;
                     chunk.setLastUpdate(now);
                     if (!chunk.isDeleted()) {
-                        pool.submit(new Runnable() {
+                        submit(pool, new Runnable() {
                             @Override
                             public void run() {
                                 try {
@@ -547,7 +655,7 @@ public class MCAFile {
                     }
                 });
                 // Wait for previous tasks
-                pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                awaitTasks();
 
 
                 int start = 8192;
@@ -658,6 +766,9 @@ public class MCAFile {
                     }
                     // Round the file length, since the vanilla server doesn't like it for some reason
                     raf.setLength(4096 * ((written + 4095) / 4096));
+                    if (summary != null) {
+                        summary.refresh();
+                    }
                     if (raf instanceof BufferedRandomAccessFile) {
                         ((BufferedRandomAccessFile) raf).flush();
                     }
@@ -675,5 +786,6 @@ public class MCAFile {
         IterableThreadLocal.clean(byteStore1);
         IterableThreadLocal.clean(byteStore2);
         IterableThreadLocal.clean(byteStore3);
+        IterableThreadLocal.clean(readerStore);
     }
 }
@@ -16,6 +16,17 @@ public class MCAFilter<T> extends IterableThreadLocal<T> {
         return;
     }
 
+    /**
+     * Check whether several .mca files can be filtered at the same time<br>
+     * - Return false if state is kept between applyFile and finishFile (e.g. a field set in applyFile)<br>
+     * - Chunks of the same file are always filtered in parallel
+     *
+     * @return
+     */
+    public boolean isParallelFiles() {
+        return true;
+    }
+
     /**
      * Check whether this .mca file should be read
      * @param path
@@ -60,6 +71,50 @@ public class MCAFilter<T> extends IterableThreadLocal<T> {
         return true;
     }
 
+    /**
+     * Check whether a chunk should be read, using the facts stored in the region's summary<br>
+     * - Only called if the chunk has an up to date summary (see {@link MCASummary})<br>
+     * - Return false to skip the chunk without reading it
+     *
+     * @param cx
+     * @param cz
+     * @param summary
+     * @return
+     */
+    public boolean appliesChunk(int cx, int cz, MCASummary.Entry summary) {
+        return true;
+    }
+
+    /**
+     * Handle a chunk using only its summary (e.g. to count blocks), like {@link #applyReader} does with the raw chunk<br>
+     * - Only called for chunks which aren't already loaded, with an up to date summary which appliesChunk accepted<br>
+     * - Return true if the chunk was handled, it then won't be read at all<br>
+     * - Return false to continue with applyReader and applyChunk
+     *
+     * @param cx
+     * @param cz
+     * @param summary
+     * @param cache
+     * @return
+     */
+    public boolean applySummary(int cx, int cz, MCASummary.Entry summary, T cache) {
+        return false;
+    }
+
+    /**
+     * Read a chunk without decoding it (see {@link MCAChunkReader})<br>
+     * - Only called for chunks which aren't already loaded<br>
+     * - Return true if the chunk was handled, it then won't be decoded or passed to applyChunk<br>
+     * - Return false to decode the chunk and continue with applyChunk (e.g. to modify it)
+     *
+     * @param reader
+     * @param cache
+     * @return
+     */
+    public boolean applyReader(MCAChunkReader reader, T cache) {
+        return false;
+    }
+
     /**
      * Do something with the MCAChunk<br>
      * - Return null if you don't want to filter blocks<br>
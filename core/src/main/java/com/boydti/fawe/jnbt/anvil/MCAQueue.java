@@ -1,9 +1,11 @@
 package com.boydti.fawe.jnbt.anvil;
 
 import com.boydti.fawe.Fawe;
+import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.example.CharFaweChunk;
 import com.boydti.fawe.example.NMSMappedFaweQueue;
 import com.boydti.fawe.example.NullFaweChunk;
+import com.boydti.fawe.example.SurfaceCache;
 import com.boydti.fawe.jnbt.anvil.filters.DelegateMCAFilter;
 import com.boydti.fawe.jnbt.anvil.history.IAnvilHistory;
 import com.boydti.fawe.jnbt.anvil.history.NullAnvilHistory;
@@ -30,8 +32,11 @@ import java.util.Comparator;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MCAQueue extends NMSMappedFaweQueue<FaweQueue, FaweChunk, FaweChunk, FaweChunk> {
 
@@ -39,6 +44,7 @@ public class MCAQueue extends NMSMappedFaweQueue<FaweQueue, FaweChunk, FaweChunk
     private NMSMappedFaweQueue parentNMS;
     private final boolean hasSky;
     private final File saveFolder;
+    private AnvilJournal journal;
     private final ThreadLocal<MutableMCABackedBaseBlock> blockStore = new ThreadLocal<MutableMCABackedBaseBlock>() {
         @Override
         protected MutableMCABackedBaseBlock initialValue() {
@@ -70,6 +76,19 @@ public class MCAQueue extends NMSMappedFaweQueue<FaweQueue, FaweChunk, FaweChunk
         this.hasSky = hasSky;
     }
 
+    /**
+     * Record the progress of filterWorld, so it can be resumed
+     *
+     * @param journal the journal, or null
+     */
+    public void setJournal(AnvilJournal journal) {
+        this.journal = journal;
+    }
+
+    public AnvilJournal getJournal() {
+        return journal;
+    }
+
     public boolean hasParent() {
         return parent != null || parentNMS != null;
     }
@@ -178,6 +197,12 @@ public class MCAQueue extends NMSMappedFaweQueue<FaweQueue, FaweChunk, FaweChunk
         int tMcaZ = (regionTo.maxZ >> 9);
 
         filterCopy(new MCAFilter() {
+            @Override
+            public boolean isParallelFiles() {
+                // The source queue is cleared after each file
+                return false;
+            }
+
             @Override
             public MCAFile applyFile(MCAFile mcaFile) {
                 try {
@@ -329,8 +354,8 @@ public class MCAQueue extends NMSMappedFaweQueue<FaweQueue, FaweChunk, FaweChunk
 
     public <G, T extends MCAFilter<G>> T filterCopy(final T filter, RegionWrapper region, IAnvilHistory task) {
         DelegateMCAFilter<G> delegate = new DelegateMCAFilter<G>(filter) {
-            MCAFile original;
-            MCAFile copy;
+            // The original file for each file being filtered
+            final Map<MCAFile, MCAFile> originals = new ConcurrentHashMap<>();
             ForkJoinPool pool;
 
             @Override
@@ -340,8 +365,7 @@ public class MCAQueue extends NMSMappedFaweQueue<FaweQueue, FaweChunk, FaweChunk
 
             @Override
             public MCAFile applyFile(MCAFile original) {
-                this.original = original;
-                this.original.clear();
+                original.clear();
                 File file = original.getFile();
                 file.setWritable(true);
                 File copyDest = new File(file.getParentFile(), file.getName() + "-copy");
@@ -352,10 +376,12 @@ public class MCAQueue extends NMSMappedFaweQueue<FaweQueue, FaweChunk, FaweChunk
                         e.printStackTrace();
                     }
                 }, true, false);
-                this.copy = new MCAFile(original.getParent(), copyDest);
+                MCAFile copy = new MCAFile(original.getParent(), copyDest);
                 MCAFile result = filter.applyFile(copy);
                 if (result == null) {
                     performCopy(original, copy, region, task, pool);
+                } else {
+                    originals.put(result, original);
                 }
                 if (result == null || !copy.getFile().equals(result.getFile())) {
                     copy.clear();
@@ -366,7 +392,7 @@ public class MCAQueue extends NMSMappedFaweQueue<FaweQueue, FaweChunk, FaweChunk
 
             @Override
             public void finishFile(MCAFile newRegion, G cache) {
-                performCopy(original, newRegion, region, task, pool);
+                performCopy(originals.remove(newRegion), newRegion, region, task, pool);
             }
         };
         if (region == RegionWrapper.GLOBAL()) {
@@ -404,6 +430,17 @@ public class MCAQueue extends NMSMappedFaweQueue<FaweQueue, FaweChunk, FaweChunk
                 return filter.get();
             }
 
+            @Override
+            public boolean applyReader(MCAChunkReader reader, G value) {
+                // Readers see the whole chunk, so only use them for chunks entirely in the region
+                int bx = reader.getX() << 4;
+                int bz = reader.getZ() << 4;
+                if (bx >= region.minX && bx + 15 <= region.maxX && bz >= region.minZ && bz + 15 <= region.maxZ && region.minY <= 0 && region.maxY >= 255) {
+                    return filter.applyReader(reader, value);
+                }
+                return false;
+            }
+
             @Override
             public MCAChunk applyChunk(MCAChunk chunk, G value) {
                 chunk = filter.applyChunk(chunk, value);
@@ -490,7 +527,7 @@ public class MCAQueue extends NMSMappedFaweQueue<FaweQueue, FaweChunk, FaweChunk
         return filter;
     }
 
-    private <G, T extends MCAFilter<G>> RunnableVal2<Path, BasicFileAttributes> filterFunction(final T filter, ForkJoinPool pool) {
+    private <G, T extends MCAFilter<G>> RunnableVal2<Path, BasicFileAttributes> filterFunction(final T filter, ForkJoinPool pool, Semaphore inFlight) {
         return new RunnableVal2<Path, BasicFileAttributes>() {
             @Override
             public void run(Path path, BasicFileAttributes attr) {
@@ -506,96 +543,163 @@ public class MCAQueue extends NMSMappedFaweQueue<FaweQueue, FaweChunk, FaweChunk
                     final int mcaX = Integer.parseInt(split[1]);
                     final int mcaZ = Integer.parseInt(split[2]);
                     if (filter.appliesFile(mcaX, mcaZ)) {
-                        File file = path.toFile();
-                        final MCAFile original = new MCAFile(MCAQueue.this, file);
-                        final MCAFile finalFile = filter.applyFile(original);
-                        if (finalFile != null && !finalFile.isDeleted()) {
-                            finalFile.init();
-                            // May not do anything, but seems to lead to smaller lag spikes
-                            final int cbx = mcaX << 5;
-                            final int cbz = mcaZ << 5;
-
-                            finalFile.forEachSortedChunk(new RunnableVal4<Integer, Integer, Integer, Integer>() {
-                                @Override
-                                public void run(final Integer rcx, final Integer rcz, Integer offset, Integer size) {
-                                    pool.submit(new Runnable() {
-                                        @Override
-                                        public void run() {
-                                            try {
-                                                int cx = cbx + rcx;
-                                                int cz = cbz + rcz;
-                                                if (filter.appliesChunk(cx, cz)) {
-                                                    MCAChunk chunk = finalFile.getChunk(cx, cz);
-                                                    try {
-                                                        final G value = filter.get();
-                                                        chunk = filter.applyChunk(chunk, value);
-                                                        if (chunk != null) {
-                                                            final MutableMCABackedBaseBlock mutableBlock = blockStore.get();
-                                                            mutableBlock.setChunk(chunk);
-                                                            int bx = cx << 4;
-                                                            int bz = cz << 4;
-                                                            for (int layer = 0; layer < 16; layer++) {
-                                                                if (chunk.doesSectionExist(layer)) {
-                                                                    mutableBlock.setArrays(layer);
-                                                                    int yStart = layer << 4;
-                                                                    int index = 0;
-                                                                    for (int y = yStart; y < yStart + 16; y++) {
-                                                                        mutableBlock.setY(y);
-                                                                        for (int z = bz; z < bz + 16; z++) {
-                                                                            mutableBlock.setZ(z);
-                                                                            for (int x = bx; x < bx + 16; x++, index++) {
-                                                                                mutableBlock.setX(x);
-                                                                                mutableBlock.setIndex(index);
-                                                                                filter.applyBlock(x, y, z, mutableBlock, value);
-                                                                            }
-                                                                        }
-                                                                    }
-                                                                }
+                        final File file = path.toFile();
+                        // Bounds the number of files being read, filtered or written at once
+                        if (Settings.IMP.ANVIL.FILE_DELAY_MS > 0) {
+                            Thread.sleep(Settings.IMP.ANVIL.FILE_DELAY_MS);
+                        }
+                        inFlight.acquireUninterruptibly();
+                        pool.submit(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    filterFile(filter, file, mcaX, mcaZ, pool);
+                                } catch (Throwable e) {
+                                    e.printStackTrace();
+                                    AnvilJournal journal = MCAQueue.this.journal;
+                                    if (journal != null) {
+                                        journal.fail(file);
+                                    }
+                                } finally {
+                                    inFlight.release();
+                                }
+                            }
+                        });
+                    }
+                } catch (Throwable ignore) {
+                    ignore.printStackTrace();
+                }
+            }
+        };
+    }
+
+    /**
+     * Filter a single file on the shared pool<br>
+     * - Only waits for the tasks of this file, so other files keep the pool busy
+     */
+    private <G, T extends MCAFilter<G>> void filterFile(final T filter, File file, int mcaX, int mcaZ, ForkJoinPool pool) throws IOException {
+        AnvilJournal journal = this.journal;
+        if (journal != null && !journal.begin(file)) {
+            return;
+        }
+        final MCAFile original = new MCAFile(MCAQueue.this, file);
+        final MCAFile finalFile = filter.applyFile(original);
+        // If any chunk fails, the file isn't recorded as done
+        final AtomicBoolean failed = new AtomicBoolean();
+        if (finalFile != null && !finalFile.isDeleted()) {
+            finalFile.init();
+            final MCASummary summary = Settings.IMP.ANVIL.CHUNK_SUMMARY ? finalFile.getSummary() : null;
+            // May not do anything, but seems to lead to smaller lag spikes
+            final int cbx = mcaX << 5;
+            final int cbz = mcaZ << 5;
+
+            finalFile.forEachSortedChunk(new RunnableVal4<Integer, Integer, Integer, Integer>() {
+                @Override
+                public void run(final Integer rcx, final Integer rcz, Integer offset, Integer size) {
+                    finalFile.submit(pool, new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                int cx = cbx + rcx;
+                                int cz = cbz + rcz;
+                                if (filter.appliesChunk(cx, cz)) {
+                                    MCASummary.Entry entry = summary != null ? summary.get(cx, cz) : null;
+                                    if (entry != null && !filter.appliesChunk(cx, cz, entry)) {
+                                        return;
+                                    }
+                                    try {
+                                        final G value = filter.get();
+                                        MCAChunk chunk = finalFile.getCachedChunk(cx, cz);
+                                        if (chunk == null) {
+                                            if (entry != null && filter.applySummary(cx, cz, entry, value)) {
+                                                return;
+                                            }
+                                            MCAChunkReader reader = finalFile.getChunkReader(cx, cz);
+                                            if (reader != null) {
+                                                if (summary != null && entry == null) {
+                                                    summary.put(reader);
+                                                }
+                                                if (filter.applyReader(reader, value)) {
+                                                    return;
+                                                }
+                                                chunk = finalFile.readChunk(reader);
+                                            }
+                                        } else if (summary != null && entry == null && !chunk.isModified()) {
+                                            summary.put(chunk);
+                                        }
+                                        chunk = filter.applyChunk(chunk, value);
+                                        if (chunk != null) {
+                                            final MutableMCABackedBaseBlock mutableBlock = blockStore.get();
+                                            mutableBlock.setChunk(chunk);
+                                            int bx = cx << 4;
+                                            int bz = cz << 4;
+                                            for (int layer = 0; layer < 16; layer++) {
+                                                if (chunk.doesSectionExist(layer)) {
+                                                    mutableBlock.setArrays(layer);
+                                                    int yStart = layer << 4;
+                                                    int index = 0;
+                                                    for (int y = yStart; y < yStart + 16; y++) {
+                                                        mutableBlock.setY(y);
+                                                        for (int z = bz; z < bz + 16; z++) {
+                                                            mutableBlock.setZ(z);
+                                                            for (int x = bx; x < bx + 16; x++, index++) {
+                                                                mutableBlock.setX(x);
+                                                                mutableBlock.setIndex(index);
+                                                                filter.applyBlock(x, y, z, mutableBlock, value);
                                                             }
-                                                            filter.finishChunk(chunk, value);
                                                         }
-                                                    } catch (Throwable e) {
-                                                        e.printStackTrace();
                                                     }
                                                 }
-                                            } catch (Throwable e) {
-                                                e.printStackTrace();
                                             }
+                                            filter.finishChunk(chunk, value);
                                         }
-                                    });
-                                }
-                            });
-                            pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-                            filter.finishFile(finalFile, filter.get());
-                        } else {
-                            if (original.isDeleted()) {
-                                try {
-                                    original.close(pool);
-                                    file.delete();
-                                } catch (Throwable ignore) {
-                                    ignore.printStackTrace();
+                                    } catch (Throwable e) {
+                                        failed.set(true);
+                                        e.printStackTrace();
+                                    }
                                 }
+                            } catch (Throwable e) {
+                                failed.set(true);
+                                e.printStackTrace();
                             }
-                            pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-                        }
-                        original.close(pool);
-                        if (original.isDeleted()) {
-                            file.delete();
                         }
-                    }
-                } catch (Throwable ignore) {
-                    ignore.printStackTrace();
+                    });
                 }
+            });
+            finalFile.awaitTasks();
+            filter.finishFile(finalFile, filter.get());
+        } else if (original.isDeleted()) {
+            try {
+                original.close(pool);
+                file.delete();
+            } catch (Throwable ignore) {
+                ignore.printStackTrace();
             }
-        };
+        }
+        original.close(pool);
+        if (original.isDeleted()) {
+            file.delete();
+        }
+        if (journal != null) {
+            if (failed.get()) {
+                journal.fail(file);
+            } else {
+                journal.complete(file);
+            }
+        }
     }
 
     private <G, T extends MCAFilter<G>> T filterWorld(final T filter, RunnableVal2<Path, RunnableVal2<Path, BasicFileAttributes>> traverser) {
         File folder = getSaveFolder();
-        final ForkJoinPool pool = new ForkJoinPool();
+        int threads = Settings.IMP.ANVIL.THREADS;
+        final ForkJoinPool pool = threads > 0 ? new ForkJoinPool(threads) : new ForkJoinPool();
         filter.withPool(pool, this);
-        RunnableVal2<Path, BasicFileAttributes> task = filterFunction(filter, pool);
+        int parallelFiles = filter.isParallelFiles() ? Math.max(1, Settings.IMP.ANVIL.PARALLEL_FILES) : 1;
+        Semaphore inFlight = new Semaphore(parallelFiles);
+        RunnableVal2<Path, BasicFileAttributes> task = filterFunction(filter, pool, inFlight);
         traverser.run(folder.toPath(), task);
+        // Wait for the last files to be written
+        inFlight.acquireUninterruptibly(parallelFiles);
         pool.shutdown();
         try {
             pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
@@ -661,6 +765,12 @@ public class MCAQueue extends NMSMappedFaweQueue<FaweQueue, FaweChunk, FaweChunk
         return parent;
     }
 
+    @Override
+    protected SurfaceCache getSurfaceCache() {
+        // The region files aren't the loaded world
+        return null;
+    }
+
     @Override
     public void setHeightMap(FaweChunk chunk, byte[] heightMap) {
         MCAChunk mca = (MCAChunk) chunk;
@@ -0,0 +1,282 @@
+package com.boydti.fawe.jnbt.anvil;
+
+import com.boydti.fawe.util.MainUtil;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A sidecar file (r.x.z.mca.summary) with a few facts about each chunk in a region file<br>
+ * - InhabitedTime, LastUpdate, which sections exist and a histogram of block ids<br>
+ * - Lets filters decide if a chunk is relevant without inflating it (see {@link MCAFilter#appliesChunk(int, int, Entry)})<br>
+ * - An entry is only used while the chunk's location and timestamp in the region header are unchanged<br>
+ * - Entries are added as chunks are read, and refreshed by {@link MCAFile#flush}
+ */
+public class MCASummary {
+
+    public static final String EXTENSION = ".summary";
+    private static final int VERSION = 2;
+
+    public static class Entry {
+        private int location;
+        private int timestamp;
+        public final long inhabitedTime;
+        public final long lastUpdate;
+        /**
+         * Bit per section (0-15) which exists
+         */
+        public final int sectionMask;
+        /**
+         * Blocks per id (in existing sections)
+         */
+        public final int[] idCounts;
+
+        private Entry(long inhabitedTime, long lastUpdate, int sectionMask, int[] idCounts) {
+            this.inhabitedTime = inhabitedTime;
+            this.lastUpdate = lastUpdate;
+            this.sectionMask = sectionMask;
+            this.idCounts = idCounts;
+        }
+
+        public Entry(MCAChunk chunk) {
+            this.inhabitedTime = chunk.getInhabitedTime();
+            this.lastUpdate = chunk.getLastUpdate();
+            int mask = 0;
+            int[] counts = new int[256];
+            for (int layer = 0; layer < chunk.ids.length; layer++) {
+                byte[] ids = chunk.ids[layer];
+                if (ids != null) {
+                    mask |= 1 << layer;
+                    for (byte id : ids) {
+                        counts[id & 0xFF]++;
+                    }
+                }
+            }
+            this.sectionMask = mask;
+            this.idCounts = counts;
+        }
+
+        public Entry(MCAChunkReader reader) {
+            this.inhabitedTime = reader.getInhabitedTime();
+            this.lastUpdate = reader.getLastUpdate();
+            int[] counts = new int[256];
+            byte[] buffer = reader.getBuffer();
+            for (int layer = 0; layer < 16; layer++) {
+                if (reader.doesSectionExist(layer)) {
+                    int offset = reader.getIdsOffset(layer);
+                    for (int i = offset; i < offset + 4096; i++) {
+                        counts[buffer[i] & 0xFF]++;
+                    }
+                }
+            }
+            this.sectionMask = reader.getSectionMask();
+            this.idCounts = counts;
+        }
+
+        /**
+         * @return the number of blocks in existing sections
+         */
+        public int getVolume() {
+            return Integer.bitCount(sectionMask) << 12;
+        }
+
+        /**
+         * @return if every existing section only contains air
+         */
+        public boolean isAir() {
+            return idCounts[0] == getVolume();
+        }
+    }
+
+    private final MCAFile mca;
+    private final File file;
+    private final Entry[] entries = new Entry[1024];
+    private boolean dirty;
+
+    private MCASummary(MCAFile mca) {
+        this.mca = mca;
+        this.file = getFile(mca);
+    }
+
+    /**
+     * Get the sidecar of a region file<br>
+     * - Named after the region coordinates, so a working copy of a region file (e.g. r.0.0.mca-copy) shares it
+     *
+     * @param mca
+     * @return the sidecar file
+     */
+    public static File getFile(MCAFile mca) {
+        File file = mca.getFile();
+        String type = file.getName().endsWith(".mcapm") ? ".mcapm" : ".mca";
+        return new File(file.getParentFile(), "r." + mca.getX() + "." + mca.getZ() + type + EXTENSION);
+    }
+
+    /**
+     * Load the summary of an (initialized) region file<br>
+     * - Entries for chunks which have changed since are dropped
+     *
+     * @param mca
+     * @return the summary (empty if there was no sidecar)
+     */
+    public static MCASummary load(MCAFile mca) {
+        MCASummary summary = new MCASummary(mca);
+        if (summary.file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(summary.file)))) {
+                if (in.readInt() == VERSION) {
+                    int amount = in.readShort();
+                    for (int i = 0; i < amount; i++) {
+                        int index = in.readShort();
+                        int location = in.readInt();
+                        int timestamp = in.readInt();
+                        long inhabitedTime = in.readLong();
+                        long lastUpdate = in.readLong();
+                        int sectionMask = in.readShort() & 0xFFFF;
+                        int[] idCounts = new int[256];
+                        int ids = in.readShort();
+                        for (int j = 0; j < ids; j++) {
+                            idCounts[in.readByte() & 0xFF] = in.readInt();
+                        }
+                        if (mca.getLocation(index) == location && mca.getTimestamp(index) == timestamp) {
+                            Entry entry = new Entry(inhabitedTime, lastUpdate, sectionMask, idCounts);
+                            entry.location = location;
+                            entry.timestamp = timestamp;
+                            summary.entries[index] = entry;
+                        } else {
+                            summary.dirty = true;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                MainUtil.handleError(e);
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * @param cx
+     * @param cz
+     * @return the entry, or null if the chunk hasn't been summarized
+     */
+    public synchronized Entry get(int cx, int cz) {
+        return entries[index(cx, cz)];
+    }
+
+    /**
+     * Summarize a chunk as it is stored in the region file
+     *
+     * @param chunk
+     */
+    public Entry put(MCAChunk chunk) {
+        return put(chunk.getX(), chunk.getZ(), new Entry(chunk));
+    }
+
+    /**
+     * Summarize a chunk which has been read without decoding it
+     *
+     * @param reader
+     */
+    public Entry put(MCAChunkReader reader) {
+        return put(reader.getX(), reader.getZ(), new Entry(reader));
+    }
+
+    private synchronized Entry put(int cx, int cz, Entry entry) {
+        int index = index(cx, cz);
+        entry.location = mca.getLocation(index);
+        entry.timestamp = mca.getTimestamp(index);
+        entries[index] = entry;
+        dirty = true;
+        return entry;
+    }
+
+    /**
+     * Update the entries after the region file was written<br>
+     * - Modified chunks are summarized again, deleted chunks are removed, moved chunks are re-keyed
+     */
+    public synchronized void refresh() {
+        for (MCAChunk chunk : mca.getCachedChunks()) {
+            int index = index(chunk.getX(), chunk.getZ());
+            if (chunk.isDeleted()) {
+                entries[index] = null;
+            } else if (chunk.isModified()) {
+                entries[index] = new Entry(chunk);
+            }
+        }
+        for (int index = 0; index < entries.length; index++) {
+            Entry entry = entries[index];
+            if (entry != null) {
+                entry.location = mca.getLocation(index);
+                entry.timestamp = mca.getTimestamp(index);
+                if (entry.location == 0) {
+                    entries[index] = null;
+                }
+            }
+        }
+        dirty = true;
+    }
+
+    public synchronized boolean save() {
+        if (!dirty) {
+            return true;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            int amount = 0;
+            for (Entry entry : entries) {
+                if (entry != null) amount++;
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(VERSION);
+                out.writeShort(amount);
+                for (int index = 0; index < entries.length; index++) {
+                    Entry entry = entries[index];
+                    if (entry == null) {
+                        continue;
+                    }
+                    out.writeShort(index);
+                    out.writeInt(entry.location);
+                    out.writeInt(entry.timestamp);
+                    out.writeLong(entry.inhabitedTime);
+                    out.writeLong(entry.lastUpdate);
+                    out.writeShort(entry.sectionMask);
+                    int ids = 0;
+                    for (int count : entry.idCounts) {
+                        if (count != 0) ids++;
+                    }
+                    out.writeShort(ids);
+                    for (int id = 0; id < 256; id++) {
+                        int count = entry.idCounts[id];
+                        if (count != 0) {
+                            out.writeByte(id);
+                            out.writeInt(count);
+                        }
+                    }
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+            return true;
+        } catch (IOException e) {
+            MainUtil.handleError(e);
+            return false;
+        }
+    }
+
+    /**
+     * Delete the sidecar (e.g. when the region file is deleted)
+     */
+    public void delete() {
+        file.delete();
+    }
+
+    private static int index(int cx, int cz) {
+        return (cx & 31) + ((cz & 31) << 5);
+    }
+}
@@ -1,12 +1,17 @@
 package com.boydti.fawe.jnbt.anvil;
 
+import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.object.collection.IterableThreadLocal;
-import com.boydti.fawe.object.io.BufferedRandomAccessFile;
 import com.boydti.fawe.util.MainUtil;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.Deflater;
 
 public abstract class MCAWriter {
@@ -69,15 +74,41 @@ public abstract class MCAWriter {
 
     public abstract MCAChunk write(MCAChunk input, int startX, int endX, int startZ, int endZ);
 
+    private static final class RegionOutput {
+        private final File file;
+        private final byte[][] chunks = new byte[1024][];
+        // The submitting thread holds one count until every chunk has been submitted
+        private final AtomicInteger remaining = new AtomicInteger(1);
+        private final AtomicLong bytes = new AtomicLong();
+        private long reserved;
+
+        private RegionOutput(File file) {
+            this.file = file;
+        }
+    }
+
+    private final Object exportLock = new Object();
+    private int regionsInFlight;
+    private long bytesReserved;
+    private long bytesWritten;
+    private int regionsWritten;
+
+    /**
+     * Generate and write the region files<br>
+     * - Chunks of several region files are built and compressed concurrently<br>
+     * - A region file is written (by the thread finishing its last chunk) as soon as all its chunks are compressed<br>
+     * - The compressed chunks held in memory are limited by {@link Settings.ANVIL#EXPORT_MEMORY_MB}
+     *
+     * @throws IOException
+     */
     public void generate() throws IOException {
         if (!folder.exists()) {
             folder.mkdirs();
         }
-        final ForkJoinPool pool = new ForkJoinPool();
-        int bcx = 0;
-        int bcz = 0;
-        int tcx = (width - 1) >> 4;
-        int tcz = (length - 1) >> 4;
+        int threads = Settings.IMP.ANVIL.THREADS;
+        final ForkJoinPool pool = threads > 0 ? new ForkJoinPool(threads) : new ForkJoinPool();
+        final int tcx = (width - 1) >> 4;
+        final int tcz = (length - 1) >> 4;
         final ThreadLocal<MCAChunk> chunkStore = new ThreadLocal<MCAChunk>() {
             @Override
             protected MCAChunk initialValue() {
@@ -105,117 +136,158 @@ public abstract class MCAWriter {
                 return deflater;
             }
         };
-        byte[] fileBuf = new byte[1 << 16];
+        long ceiling = (long) Math.max(1, Settings.IMP.ANVIL.EXPORT_MEMORY_MB) << 20;
+        synchronized (exportLock) {
+            regionsInFlight = 0;
+            bytesReserved = 0;
+            bytesWritten = 0;
+            regionsWritten = 0;
+        }
         int mcaXMin = 0;
         int mcaZMin = 0;
         int mcaXMax = mcaXMin + ((width - 1) >> 9);
         int mcaZMax = mcaZMin + ((length - 1) >> 9);
 
-        for (int mcaZ = mcaXMin; mcaZ <= mcaZMax; mcaZ++) {
-            for (int mcaX = mcaXMin; mcaX <= mcaXMax; mcaX++) {
-                final int fmcaX = mcaX;
-                final int fmcaZ = mcaZ;
-                File file = new File(folder, "r." + (mcaX + (getOffsetX() >> 9)) + "." + (mcaZ + (getOffsetZ() >> 9)) + ".mca");
-                if (!file.exists()) {
-                    file.createNewFile();
-                }
-                final BufferedRandomAccessFile raf = new BufferedRandomAccessFile(file, "rw", fileBuf);
-                final byte[] header = new byte[4096];
-                final byte[][] compressed = new byte[1024][];
-                int bx = mcaX << 9;
-                int bz = mcaZ << 9;
-                int scx = bx >> 4;
-                int ecx = Math.min(scx + 31, tcx);
-                int scz = bz >> 4;
-                int ecz = Math.min(scz + 31, tcz);
-                for (int cz = scz; cz <= ecz; cz++) {
-                    final int csz = cz << 4;
-                    final int cez = Math.min(csz + 15, length - 1);
-                    for (int cx = scx; cx <= ecx; cx++) {
-                        final int csx = cx << 4;
-                        final int cex = Math.min(csx + 15, width - 1);
-                        final int fcx = cx;
-                        final int fcz = cz;
-                        if (shouldWrite(cx, cz)) {
-                            pool.submit(new Runnable() {
-                                @Override
-                                public void run() {
-                                    try {
-                                        MCAChunk chunk = chunkStore.get();
-                                        chunk.setLoc(null, fcx, fcz);
-                                        chunk = write(chunk, csx, cex, csz, cez);
-                                        if (chunk != null) {
-                                            // Generation offset
-                                            chunk.setLoc(null, fcx + (getOffsetX() >> 4), fcz + (getOffsetZ() >> 4));
-                                            // Compress
-                                            byte[] bytes = chunk.toBytes(byteStore1.get());
-                                            byte[] compressedBytes = MainUtil.compress(bytes, byteStore2.get(), deflateStore.get());
-                                            int blocks = (compressed.length + 4095) >> 12;
-                                            compressed[((fcx & 31)) + ((fcz & 31) << 5)] = compressedBytes.clone();
+        try {
+            for (int mcaZ = mcaZMin; mcaZ <= mcaZMax; mcaZ++) {
+                for (int mcaX = mcaXMin; mcaX <= mcaXMax; mcaX++) {
+                    File file = new File(folder, "r." + (mcaX + (getOffsetX() >> 9)) + "." + (mcaZ + (getOffsetZ() >> 9)) + ".mca");
+                    final RegionOutput region = new RegionOutput(file);
+                    reserve(region, ceiling);
+                    int bx = mcaX << 9;
+                    int bz = mcaZ << 9;
+                    int scx = bx >> 4;
+                    int ecx = Math.min(scx + 31, tcx);
+                    int scz = bz >> 4;
+                    int ecz = Math.min(scz + 31, tcz);
+                    for (int cz = scz; cz <= ecz; cz++) {
+                        final int csz = cz << 4;
+                        final int cez = Math.min(csz + 15, length - 1);
+                        for (int cx = scx; cx <= ecx; cx++) {
+                            final int csx = cx << 4;
+                            final int cex = Math.min(csx + 15, width - 1);
+                            final int fcx = cx;
+                            final int fcz = cz;
+                            if (shouldWrite(cx, cz)) {
+                                region.remaining.incrementAndGet();
+                                pool.submit(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        try {
+                                            MCAChunk chunk = chunkStore.get();
+                                            chunk.setLoc(null, fcx, fcz);
+                                            chunk = write(chunk, csx, cex, csz, cez);
+                                            if (chunk != null) {
+                                                // Generation offset
+                                                chunk.setLoc(null, fcx + (getOffsetX() >> 4), fcz + (getOffsetZ() >> 4));
+                                                // Compress
+                                                byte[] bytes = chunk.toBytes(byteStore1.get());
+                                                byte[] compressedBytes = MainUtil.compress(bytes, byteStore2.get(), deflateStore.get());
+                                                // Length and compression type, as stored in the region file
+                                                byte[] data = new byte[compressedBytes.length + 5];
+                                                int chunkLength = compressedBytes.length + 1;
+                                                data[0] = (byte) (chunkLength >> 24);
+                                                data[1] = (byte) (chunkLength >> 16);
+                                                data[2] = (byte) (chunkLength >> 8);
+                                                data[3] = (byte) (chunkLength);
+                                                data[4] = 2;
+                                                System.arraycopy(compressedBytes, 0, data, 5, compressedBytes.length);
+                                                region.chunks[((fcx & 31)) + ((fcz & 31) << 5)] = data;
+                                                region.bytes.addAndGet(data.length);
+                                            }
+                                        } catch (Throwable e) {
+                                            e.printStackTrace();
+                                        } finally {
+                                            if (region.remaining.decrementAndGet() == 0) {
+                                                writeRegion(region);
+                                            }
                                         }
-                                    } catch (Throwable e) {
-                                        e.printStackTrace();
                                     }
-                                }
-                            });
+                                });
+                            }
                         }
                     }
-                }
-                pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-                pool.submit(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            int totalLength = 8192;
-                            for (int i = 0; i < compressed.length; i++) {
-                                byte[] compressedBytes = compressed[i];
-                                if (compressedBytes != null) {
-                                    int blocks = ((4095 + compressedBytes.length + 5) / 4096) * 4096;
-                                    totalLength += blocks;
-                                }
-                            }
-                            raf.setLength(totalLength);
-                            int offset = 8192;
-                            for (int i = 0; i < compressed.length; i++) {
-                                byte[] compressedBytes = compressed[i];
-                                if (compressedBytes != null) {
-                                    // Set header
-                                    int index = i << 2;
-                                    int offsetMedium = offset >> 12;
-                                    int blocks = ((4095 + compressedBytes.length + 5) / 4096);
-                                    header[index] = (byte) (offsetMedium >> 16);
-                                    header[index + 1] = (byte) ((offsetMedium >> 8));
-                                    header[index + 2] = (byte) ((offsetMedium >> 0));
-                                    header[index + 3] = (byte) (blocks);
-                                    // Write bytes
-                                    int cx = (fmcaX << 5) + (i & 31);
-                                    int cz = (fmcaZ << 5) + (i >> 5);
-                                    raf.seek(offset);
-                                    raf.writeInt(compressedBytes.length + 1);
-                                    raf.write(2);
-                                    raf.write(compressedBytes);
-                                    offset += blocks * 4096;
-                                }
-                            }
-                            raf.seek(0);
-                            raf.write(header);
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        } finally {
-                            try {
-                                raf.close();
-                            } catch (IOException e) {
-                                e.printStackTrace();
+                    if (region.remaining.decrementAndGet() == 0) {
+                        pool.submit(new Runnable() {
+                            @Override
+                            public void run() {
+                                writeRegion(region);
                             }
-                        }
+                        });
                     }
-                });
+                }
+            }
+        } finally {
+            pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            pool.shutdown();
+            IterableThreadLocal.clean(byteStore1);
+            IterableThreadLocal.clean(byteStore2);
+            IterableThreadLocal.clean(deflateStore);
+        }
+    }
+
+    /**
+     * Wait until there is room (in the memory ceiling) for another region file<br>
+     * - A region is expected to use the average of the regions written so far
+     */
+    private void reserve(RegionOutput region, long ceiling) throws IOException {
+        synchronized (exportLock) {
+            long estimate = regionsWritten == 0 ? (8 << 20) : Math.max(1 << 16, bytesWritten / regionsWritten);
+            while (regionsInFlight > 0 && bytesReserved + estimate > ceiling) {
+                try {
+                    exportLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            regionsInFlight++;
+            bytesReserved += estimate;
+            region.reserved = estimate;
+        }
+    }
+
+    private void release(RegionOutput region) {
+        synchronized (exportLock) {
+            regionsInFlight--;
+            bytesReserved -= region.reserved;
+            bytesWritten += region.bytes.get();
+            regionsWritten++;
+            exportLock.notifyAll();
+        }
+    }
+
+    /**
+     * Write a complete region file with positional writes (each region file has its own channel)
+     */
+    private void writeRegion(RegionOutput region) {
+        try (RandomAccessFile raf = new RandomAccessFile(region.file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(8192);
+            byte[][] chunks = region.chunks;
+            int offset = 8192;
+            for (int i = 0; i < chunks.length; i++) {
+                byte[] data = chunks[i];
+                if (data != null) {
+                    int sectors = (data.length + 4095) >> 12;
+                    header.putInt(i << 2, ((offset >> 12) << 8) + (sectors & 0xFF));
+                    write(channel, ByteBuffer.wrap(data), offset);
+                    chunks[i] = null;
+                    offset += sectors << 12;
+                }
             }
+            write(channel, header, 0);
+            raf.setLength(offset);
+        } catch (Throwable e) {
+            e.printStackTrace();
+        } finally {
+            release(region);
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
         }
-        pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-        pool.shutdown();
-        IterableThreadLocal.clean(byteStore1);
-        IterableThreadLocal.clean(byteStore2);
-        IterableThreadLocal.clean(deflateStore);
     }
 }
@@ -2,7 +2,9 @@ package com.boydti.fawe.jnbt.anvil.filters;
 
 import com.boydti.fawe.FaweCache;
 import com.boydti.fawe.jnbt.anvil.MCAChunk;
+import com.boydti.fawe.jnbt.anvil.MCAChunkReader;
 import com.boydti.fawe.jnbt.anvil.MCAFilterCounter;
+import com.boydti.fawe.jnbt.anvil.MCASummary;
 import com.boydti.fawe.object.number.MutableLong;
 import com.sk89q.worldedit.blocks.BaseBlock;
 
@@ -24,6 +26,32 @@ public class CountFilter extends MCAFilterCounter {
         return this;
     }
 
+    @Override
+    public boolean appliesChunk(int cx, int cz, MCASummary.Entry summary) {
+        for (int id = 0; id < summary.idCounts.length; id++) {
+            if (allowedId[id] && summary.idCounts[id] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean applyReader(MCAChunkReader reader, MutableLong count) {
+        for (int layer = 0; layer < 16; layer++) {
+            if (!reader.doesSectionExist(layer)) {
+                continue;
+            }
+            for (int i = 0; i < 4096; i++) {
+                int id = reader.getId(layer, i);
+                if (allowedId[id] && allowed[(id << 4) + reader.getData(layer, i)]) {
+                    count.increment();
+                }
+            }
+        }
+        return true;
+    }
+
     @Override
     public MCAChunk applyChunk(MCAChunk chunk, MutableLong count) {
         for (int layer = 0; layer < chunk.ids.length; layer++) {
@@ -2,7 +2,9 @@ package com.boydti.fawe.jnbt.anvil.filters;
 
 import com.boydti.fawe.FaweCache;
 import com.boydti.fawe.jnbt.anvil.MCAChunk;
+import com.boydti.fawe.jnbt.anvil.MCAChunkReader;
 import com.boydti.fawe.jnbt.anvil.MCAFilterCounter;
+import com.boydti.fawe.jnbt.anvil.MCASummary;
 import com.boydti.fawe.object.number.MutableLong;
 import com.sk89q.worldedit.blocks.BaseBlock;
 
@@ -22,6 +24,35 @@ public class CountIdFilter extends MCAFilterCounter {
         return this;
     }
 
+    @Override
+    public boolean applySummary(int cx, int cz, MCASummary.Entry summary, MutableLong count) {
+        // The summary already has the count of each id
+        long total = 0;
+        for (int id = 0; id < summary.idCounts.length; id++) {
+            if (allowedId[id]) {
+                total += summary.idCounts[id];
+            }
+        }
+        count.add(total);
+        return true;
+    }
+
+    @Override
+    public boolean applyReader(MCAChunkReader reader, MutableLong count) {
+        byte[] buffer = reader.getBuffer();
+        for (int layer = 0; layer < 16; layer++) {
+            if (reader.doesSectionExist(layer)) {
+                int offset = reader.getIdsOffset(layer);
+                for (int i = offset; i < offset + 4096; i++) {
+                    if (allowedId[buffer[i] & 0xFF]) {
+                        count.increment();
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
     @Override
     public MCAChunk applyChunk(MCAChunk chunk, MutableLong count) {
         for (int layer = 0; layer < chunk.ids.length; layer++) {
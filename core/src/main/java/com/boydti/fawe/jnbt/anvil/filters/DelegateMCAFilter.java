@@ -1,9 +1,11 @@
 package com.boydti.fawe.jnbt.anvil.filters;
 
 import com.boydti.fawe.jnbt.anvil.MCAChunk;
+import com.boydti.fawe.jnbt.anvil.MCAChunkReader;
 import com.boydti.fawe.jnbt.anvil.MCAFile;
 import com.boydti.fawe.jnbt.anvil.MCAFilter;
 import com.boydti.fawe.jnbt.anvil.MCAQueue;
+import com.boydti.fawe.jnbt.anvil.MCASummary;
 import com.sk89q.worldedit.blocks.BaseBlock;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -19,6 +21,11 @@ public class DelegateMCAFilter<T> extends MCAFilter<T> {
         filter.withPool(pool, queue);
     }
 
+    @Override
+    public boolean isParallelFiles() {
+        return filter.isParallelFiles();
+    }
+
     @Override
     public boolean appliesFile(Path path, BasicFileAttributes attr) {
         return filter.appliesFile(path, attr);
@@ -39,6 +46,21 @@ public class DelegateMCAFilter<T> extends MCAFilter<T> {
         return filter.appliesChunk(cx, cz);
     }
 
+    @Override
+    public boolean appliesChunk(int cx, int cz, MCASummary.Entry summary) {
+        return filter.appliesChunk(cx, cz, summary);
+    }
+
+    @Override
+    public boolean applySummary(int cx, int cz, MCASummary.Entry summary, T cache) {
+        return filter.applySummary(cx, cz, summary, cache);
+    }
+
+    @Override
+    public boolean applyReader(MCAChunkReader reader, T cache) {
+        return filter.applyReader(reader, cache);
+    }
+
     @Override
     public MCAChunk applyChunk(MCAChunk chunk, T cache) {
         return filter.applyChunk(chunk, cache);
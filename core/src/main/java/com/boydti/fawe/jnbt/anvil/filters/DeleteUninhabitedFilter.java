@@ -1,10 +1,13 @@
 package com.boydti.fawe.jnbt.anvil.filters;
 
 import com.boydti.fawe.Fawe;
+import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.jnbt.NBTStreamer;
 import com.boydti.fawe.jnbt.anvil.MCAChunk;
 import com.boydti.fawe.jnbt.anvil.MCAFile;
 import com.boydti.fawe.jnbt.anvil.MCAFilterCounter;
+import com.boydti.fawe.jnbt.anvil.MCAQueue;
+import com.boydti.fawe.jnbt.anvil.MCASummary;
 import com.boydti.fawe.object.RunnableVal;
 import com.boydti.fawe.object.RunnableVal2;
 import com.boydti.fawe.object.RunnableVal4;
@@ -26,6 +29,7 @@ public class DeleteUninhabitedFilter extends MCAFilterCounter {
     private final long fileDurationMillis;
     private final long cutoffChunkAgeEpoch;
     private boolean debug = false;
+    private ForkJoinPool pool;
 
     public DeleteUninhabitedFilter(long fileDurationMillis, long inhabitedTicks, long chunkInactivityMillis) {
         this.fileDurationMillis = fileDurationMillis;
@@ -76,16 +80,27 @@ public class DeleteUninhabitedFilter extends MCAFilterCounter {
         return true;
     }
 
+    @Override
+    public void withPool(ForkJoinPool pool, MCAQueue queue) {
+        this.pool = pool;
+    }
+
     @Override
     public MCAFile applyFile(MCAFile mca) {
+        ForkJoinPool pool = this.pool;
+        boolean shared = pool != null;
+        if (!shared) {
+            pool = new ForkJoinPool();
+        }
         try {
-            ForkJoinPool pool = new ForkJoinPool();
             mca.init();
             filter(mca, pool);
-            pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            mca.awaitTasks();
             mca.close(pool);
-            pool.shutdown();
-            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            if (!shared) {
+                pool.shutdown();
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
         } catch (IOException e) {
             e.printStackTrace();
         } catch (InterruptedException e) {
@@ -108,6 +123,7 @@ public class DeleteUninhabitedFilter extends MCAFilterCounter {
     }
 
     public void filter(MCAFile mca, ForkJoinPool pool) throws IOException {
+        MCASummary summary = Settings.IMP.ANVIL.CHUNK_SUMMARY ? mca.getSummary() : null;
         mca.forEachSortedChunk(new RunnableVal4<Integer, Integer, Integer, Integer>() {
             @Override
             public void run(Integer x, Integer z, Integer offset, Integer size) {
@@ -116,6 +132,12 @@ public class DeleteUninhabitedFilter extends MCAFilterCounter {
                 int cx = bx + x;
                 int cz = bz + z;
                 if (shouldDeleteChunk(mca, cx, cz)) {
+                    MCASummary.Entry entry = summary != null ? summary.get(cx, cz) : null;
+                    if (entry != null) {
+                        // The inhabited time is known without reading the chunk
+                        deleteIfUninhabited(mca, x, z, entry.inhabitedTime);
+                        return;
+                    }
                     Runnable task = new Runnable() {
                         @Override
                         public void run() {
@@ -132,7 +154,7 @@ public class DeleteUninhabitedFilter extends MCAFilterCounter {
                             }
                         }
                     };
-                    pool.submit(task);
+                    mca.submit(pool, task);
                 }
             }
         });
@@ -142,20 +164,24 @@ public class DeleteUninhabitedFilter extends MCAFilterCounter {
         streamer.addReader(".Level.InhabitedTime", new RunnableVal2<Integer, Long>() {
             @Override
             public void run(Integer index, Long value) {
-                if (value <= inhabitedTicks) {
-                    MCAChunk chunk = new MCAChunk(null, x, z);
-                    if (debug) {
-                        int cx = (mca.getX() << 5) + (x & 31);
-                        int cz = (mca.getZ() << 5) + (z & 31);
-                        Fawe.debug("Deleting chunk " + cx + "," + cz + " as it was only inhabited for " + value + " and passed all other checks");
-                    }
-                    chunk.setDeleted(true);
-                    synchronized (mca) {
-                        mca.setChunk(chunk);
-                    }
-                    get().add(16 * 16 * 256);
-                }
+                deleteIfUninhabited(mca, x, z, value);
             }
         });
     }
+
+    private void deleteIfUninhabited(MCAFile mca, int x, int z, long inhabitedTime) {
+        if (inhabitedTime <= inhabitedTicks) {
+            MCAChunk chunk = new MCAChunk(null, x, z);
+            if (debug) {
+                int cx = (mca.getX() << 5) + (x & 31);
+                int cz = (mca.getZ() << 5) + (z & 31);
+                Fawe.debug("Deleting chunk " + cx + "," + cz + " as it was only inhabited for " + inhabitedTime + " and passed all other checks");
+            }
+            chunk.setDeleted(true);
+            synchronized (mca) {
+                mca.setChunk(chunk);
+            }
+            get().add(16 * 16 * 256);
+        }
+    }
 }
@@ -182,7 +182,7 @@ public class PlotTrimFilter extends DeleteUninhabitedFilter {
                         }
                     }
                 };
-                pool.submit(task);
+                mca.submit(pool, task);
             }
         });
     }
@@ -39,6 +39,12 @@ public class RemapFilter extends MCAFilterCounter {
         this.from = from;
     }
 
+    @Override
+    public boolean isParallelFiles() {
+        // skipRemap is set per file
+        return false;
+    }
+
     @Override
     public MCAFile applyFile(MCAFile mca) {
         File file = mca.getFile();
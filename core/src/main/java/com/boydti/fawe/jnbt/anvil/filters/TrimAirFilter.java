@@ -1,12 +1,19 @@
 package com.boydti.fawe.jnbt.anvil.filters;
 
+import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.jnbt.anvil.MCAChunk;
 import com.boydti.fawe.jnbt.anvil.MCAFile;
 import com.boydti.fawe.jnbt.anvil.MCAFilterCounter;
+import com.boydti.fawe.jnbt.anvil.MCASummary;
 import com.boydti.fawe.object.RunnableVal;
 import com.boydti.fawe.object.number.MutableLong;
 
 public class TrimAirFilter extends MCAFilterCounter {
+    @Override
+    public boolean appliesChunk(int cx, int cz, MCASummary.Entry summary) {
+        return summary.isAir();
+    }
+
     @Override
     public MCAChunk applyChunk(MCAChunk chunk, MutableLong cache) {
         for (int layer = 0; layer < chunk.ids.length; layer++) {
@@ -39,6 +46,21 @@ public class TrimAirFilter extends MCAFilterCounter {
                 }
             }
         });
+        if (deleteFile[0] && Settings.IMP.ANVIL.CHUNK_SUMMARY) {
+            // Chunks skipped using the summary aren't cached
+            MCASummary summary = file.getSummary();
+            int bx = file.getX() << 5;
+            int bz = file.getZ() << 5;
+            for (int z = 0; z < 32 && deleteFile[0]; z++) {
+                for (int x = 0; x < 32; x++) {
+                    MCASummary.Entry entry = summary.get(bx + x, bz + z);
+                    if (entry != null && !entry.isAir()) {
+                        deleteFile[0] = false;
+                        break;
+                    }
+                }
+            }
+        }
         if (deleteFile[0]) {
             file.setDeleted(true);
         }
@@ -0,0 +1,135 @@
+package com.boydti.fawe.object;
+
+import com.boydti.fawe.FaweCache;
+import com.boydti.fawe.util.MathMan;
+import com.sk89q.worldedit.blocks.BlockType;
+import com.sk89q.worldedit.world.registry.BundledBlockData;
+
+/**
+ * Block properties indexed by combined id (see {@link FaweCache#getCombined(int, int)}), get it with {@link FaweCache#getProperties()}<br>
+ * - One array per property, so a lookup only touches the property it needs<br>
+ * - Immutable: when a block is added (e.g. extrablocks.json), FaweCache builds a new table instead
+ */
+public final class BlockProperties {
+
+    public static final int SIZE = Character.MAX_VALUE + 1;
+
+    private final boolean[] solid = new boolean[SIZE];
+    private final boolean[] liquid = new boolean[SIZE];
+    private final boolean[] translucent = new boolean[SIZE];
+    private final boolean[] nbt = new boolean[SIZE];
+    private final boolean[] gravity = new boolean[SIZE];
+    private final boolean[] tickable = new boolean[SIZE];
+    private final byte[] opacity = new byte[SIZE];
+    private final byte[] brightness = new byte[SIZE];
+    private final byte[] lightPair = new byte[SIZE];
+
+    /**
+     * @param materials [ id ] => material, or null if the id is unknown
+     */
+    public BlockProperties(BundledBlockData.FaweBlockMaterial[] materials) {
+        for (int combined = 0; combined < SIZE; combined++) {
+            int id = FaweCache.getId(combined);
+            int data = FaweCache.getData(combined);
+            BundledBlockData.FaweBlockMaterial material = id < materials.length ? materials[id] : null;
+            if (material != null) {
+                solid[combined] = material.isMovementBlocker();
+                translucent[combined] = !material.isOpaque();
+                liquid[combined] = material.isLiquid() || FaweCache.isLiquid(id);
+                tickable[combined] = material.isTicksRandomly();
+            } else {
+                solid[combined] = !BlockType.canPassThrough(id, data);
+                translucent[combined] = BlockType.isTranslucent(id);
+                liquid[combined] = FaweCache.isLiquid(id);
+            }
+            nbt[combined] = FaweCache.hasNBT(id);
+            gravity[combined] = isFalling(id);
+            int opacity = material == null ? 15 : Math.min(15, material.getLightOpacity());
+            int brightness = material == null ? 15 : Math.min(15, material.getLightValue());
+            this.opacity[combined] = (byte) opacity;
+            this.brightness[combined] = (byte) brightness;
+            this.lightPair[combined] = MathMan.pair16(opacity, brightness);
+        }
+    }
+
+    private static boolean isFalling(int id) {
+        switch (id) {
+            case 12:
+            case 13:
+            case 122:
+            case 145:
+            case 252:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param combined
+     * @return if the block stops movement (the opposite of {@link #canPassThrough(int)})
+     */
+    public boolean isSolid(int combined) {
+        return solid[combined];
+    }
+
+    public boolean canPassThrough(int combined) {
+        return !solid[combined];
+    }
+
+    public boolean isLiquid(int combined) {
+        return liquid[combined];
+    }
+
+    public boolean isTranslucent(int combined) {
+        return translucent[combined];
+    }
+
+    /**
+     * @param combined
+     * @return if the block may have a tile entity
+     */
+    public boolean hasNBT(int combined) {
+        return nbt[combined];
+    }
+
+    /**
+     * @param combined
+     * @return if the block falls when nothing is below it (e.g. sand)
+     */
+    public boolean hasGravity(int combined) {
+        return gravity[combined];
+    }
+
+    /**
+     * @param combined
+     * @return if the block is ticked randomly (e.g. crops)
+     */
+    public boolean isTickable(int combined) {
+        return tickable[combined];
+    }
+
+    /**
+     * @param combined
+     * @return the light opacity (0-15), unknown blocks are 15
+     */
+    public int getOpacity(int combined) {
+        return opacity[combined];
+    }
+
+    /**
+     * @param combined
+     * @return the emitted light (0-15), unknown blocks are 15
+     */
+    public int getBrightness(int combined) {
+        return brightness[combined];
+    }
+
+    /**
+     * @param combined
+     * @return {@link MathMan#pair16}(opacity, brightness), as used by the relighter
+     */
+    public int getLightPair(int combined) {
+        return lightPair[combined];
+    }
+}
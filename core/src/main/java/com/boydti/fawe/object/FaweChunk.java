@@ -328,6 +328,15 @@ public abstract class FaweChunk<T> implements Callable<FaweChunk> {
         }
     }
 
+    /**
+     * Get an estimate of the heap used by this chunk's pending changes
+     *
+     * @return bytes
+     */
+    public long getMemoryUsage() {
+        return 64;
+    }
+
     /**
      * Spend time now so that the chunk can be more efficiently dispatched later<br>
      * - Modifications after this call will be ignored
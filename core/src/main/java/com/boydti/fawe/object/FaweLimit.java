@@ -20,6 +20,7 @@ public class FaweLimit {
     public int MAX_EXPRESSION_MS = 0;
     public int INVENTORY_MODE = Integer.MAX_VALUE;
     public int SPEED_REDUCTION = Integer.MAX_VALUE;
+    public int QUEUE_SHARE = 1;
     public boolean FAST_PLACEMENT = false;
     public boolean CONFIRM_LARGE = true;
     public Set<String> STRIP_NBT = null;
@@ -123,6 +124,7 @@ public class FaweLimit {
         MAX_HISTORY = limit.MAX_HISTORY;
         INVENTORY_MODE = limit.INVENTORY_MODE;
         SPEED_REDUCTION = limit.SPEED_REDUCTION;
+        QUEUE_SHARE = limit.QUEUE_SHARE;
         FAST_PLACEMENT = limit.FAST_PLACEMENT;
         CONFIRM_LARGE = limit.CONFIRM_LARGE;
         STRIP_NBT = limit.STRIP_NBT;
@@ -132,6 +134,7 @@ public class FaweLimit {
         FaweLimit limit = new FaweLimit();
         limit.INVENTORY_MODE = INVENTORY_MODE;
         limit.SPEED_REDUCTION = SPEED_REDUCTION;
+        limit.QUEUE_SHARE = QUEUE_SHARE;
         limit.MAX_ACTIONS = MAX_ACTIONS;
         limit.MAX_CHANGES = MAX_CHANGES;
         limit.MAX_BLOCKSTATES = MAX_BLOCKSTATES;
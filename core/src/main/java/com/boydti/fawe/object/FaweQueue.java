@@ -6,6 +6,7 @@ import com.boydti.fawe.config.BBC;
 import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.example.NullRelighter;
 import com.boydti.fawe.example.Relighter;
+import com.boydti.fawe.object.changeset.FaweStreamChangeSet;
 import com.boydti.fawe.object.exception.FaweException;
 import com.boydti.fawe.util.MainUtil;
 import com.boydti.fawe.util.MathMan;
@@ -18,12 +19,11 @@ import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.Vector2D;
 import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.blocks.BaseBlock;
-import com.sk89q.worldedit.blocks.BlockMaterial;
 import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.history.changeset.ChangeSet;
 import com.sk89q.worldedit.regions.CuboidRegion;
 import com.sk89q.worldedit.world.World;
 import com.sk89q.worldedit.world.biome.BaseBiome;
-import com.sk89q.worldedit.world.registry.BundledBlockData;
 import java.io.File;
 import java.util.Collection;
 import java.util.Collections;
@@ -380,10 +380,25 @@ public interface FaweQueue extends HasFaweQueue, Extent {
         // Clear block placement
         clear();
         Fawe.get().getWorldEdit().clearSessions();
-        // GC
-        System.gc();
-        System.gc();
-        // Unload chunks
+    }
+
+    /**
+     * Get an estimate of the heap used by this queue's pending chunks and in-memory history
+     *
+     * @return bytes
+     */
+    default long getMemoryUsage() {
+        long total = 0;
+        for (FaweChunk chunk : getFaweChunks()) {
+            total += chunk.getMemoryUsage();
+        }
+        for (EditSession session : getEditSessions()) {
+            ChangeSet changeSet = session.getChangeSet();
+            if (changeSet instanceof FaweStreamChangeSet) {
+                total += ((FaweStreamChangeSet) changeSet).getSizeInMemory();
+            }
+        }
+        return total;
     }
 
     void sendChunk(FaweChunk chunk);
@@ -468,15 +483,15 @@ public interface FaweQueue extends HasFaweQueue, Extent {
         if (combined == 0) {
             return 0;
         }
-        BlockMaterial block = BundledBlockData.getInstance().getMaterialById(FaweCache.getId(combined));
-        if (block == null) {
-            return 255;
-        }
-        return block.getLightValue();
+        return FaweCache.getProperties().getBrightness(combined);
     }
 
     default int getOpacityBrightnessPair(int x, int y, int z) {
-        return MathMan.pair16(Math.min(15, getOpacity(x, y, z)), getBrightness(x, y, z));
+        int combined = getCombinedId4Data(x, y, z);
+        if (combined == 0) {
+            return 0;
+        }
+        return FaweCache.getProperties().getLightPair(combined);
     }
 
     default int getOpacity(int x, int y, int z) {
@@ -484,11 +499,7 @@ public interface FaweQueue extends HasFaweQueue, Extent {
         if (combined == 0) {
             return 0;
         }
-        BlockMaterial block = BundledBlockData.getInstance().getMaterialById(FaweCache.getId(combined));
-        if (block == null) {
-            return 255;
-        }
-        return block.getLightOpacity();
+        return FaweCache.getProperties().getOpacity(combined);
     }
 
     int size();
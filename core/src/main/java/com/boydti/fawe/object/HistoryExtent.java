@@ -1,6 +1,9 @@
 package com.boydti.fawe.object;
 
 import com.boydti.fawe.FaweCache;
+import com.boydti.fawe.example.ChunkSnapshotCache;
+import com.boydti.fawe.example.MappedFaweQueue;
+import com.boydti.fawe.jnbt.anvil.MCAQueue;
 import com.boydti.fawe.object.changeset.FaweChangeSet;
 import com.boydti.fawe.object.exception.FaweException;
 import com.sk89q.jnbt.CompoundTag;
@@ -29,6 +32,8 @@ public class HistoryExtent extends AbstractDelegateExtent {
     private FaweChangeSet changeSet;
     private final FaweQueue queue;
     private final EditSession session;
+    // Reads the previous blocks a section at a time (null if the queue doesn't support it)
+    private final ChunkSnapshotCache snapshot;
 
     /**
      * Create a new instance.
@@ -42,19 +47,41 @@ public class HistoryExtent extends AbstractDelegateExtent {
         this.queue = queue;
         this.changeSet = changeSet;
         this.session = session;
+        this.snapshot = queue instanceof MappedFaweQueue && !(queue instanceof MCAQueue) ? new ChunkSnapshotCache((MappedFaweQueue) queue) : null;
     }
 
     public FaweChangeSet getChangeSet() {
         return changeSet;
     }
 
+    /**
+     * Drop the cached previous blocks and stop listening to the queue (called when the edit session is flushed)
+     */
+    public void releaseSnapshot() {
+        if (snapshot != null) {
+            snapshot.close();
+        }
+    }
+
     public void setChangeSet(FaweChangeSet fcs) {
         this.changeSet = fcs;
     }
 
     @Override
     public boolean setBlock(int x, int y, int z, BaseBlock block) throws WorldEditException {
-        int combined = queue.getCombinedId4DataDebug(x, y, z, 0, session);
+        if (!record(x, y, z, block)) {
+            return false;
+        }
+        return getExtent().setBlock(x, y, z, block);
+    }
+
+    /**
+     * Add a block change to the history (see {@link com.boydti.fawe.object.extent.BlockSink})
+     *
+     * @return false if the block is unchanged (or the change couldn't be recorded)
+     */
+    public final boolean record(int x, int y, int z, BaseBlock block) {
+        int combined = snapshot != null ? snapshot.getCombinedId4DataDebug(x, y, z, 0, session) : queue.getCombinedId4DataDebug(x, y, z, 0, session);
         int id = (combined >> 4);
         if (id == block.getId()) {
             if (!FaweCache.hasData(id)) {
@@ -69,7 +96,7 @@ public class HistoryExtent extends AbstractDelegateExtent {
             }
         }
         try {
-            if (!FaweCache.hasNBT(id)) {
+            if (!FaweCache.getProperties().hasNBT(combined)) {
                 if (block.canStoreNBTData()) {
                     this.changeSet.add(x, y, z, combined, block);
                 } else {
@@ -87,7 +114,7 @@ public class HistoryExtent extends AbstractDelegateExtent {
         } catch (FaweException ignore) {
             return false;
         }
-        return getExtent().setBlock(x, y, z, block);
+        return true;
     }
 
     @Override
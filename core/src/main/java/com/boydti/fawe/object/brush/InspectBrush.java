@@ -90,7 +90,7 @@ public class InspectBrush extends BrushTool implements DoubleActionTraceTool {
                         UUID uuid = value.getUUID();
                         String name = Fawe.imp().getName(uuid);
                         int index = value.getIndex();
-                        long age = System.currentTimeMillis() - value.getBDFile().lastModified();
+                        long age = System.currentTimeMillis() - value.lastModified();
                         String ageFormatted = MainUtil.secToTime(age / 1000);
                         BBC.TOOL_INSPECT_INFO.send(fp, name, FaweCache.getMaterialName(from), FaweCache.getMaterialName(to), ageFormatted);
                         count.incrementAndGet();
@@ -15,11 +15,14 @@ import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.world.World;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import java.io.ByteArrayInputStream;
 import java.io.DataOutput;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Map;
 import java.util.UUID;
@@ -63,6 +66,13 @@ public class DiskStorageHistory extends FaweStreamChangeSet {
     private NBTOutputStream osENTCT;
 
     private int index;
+    private HistorySegments.Entry segment;
+
+    // Block bounds, recorded in the history manifest
+    private int minX = Integer.MAX_VALUE;
+    private int minZ = Integer.MAX_VALUE;
+    private int maxX = Integer.MIN_VALUE;
+    private int maxZ = Integer.MIN_VALUE;
 
     public DiskStorageHistory(World world, UUID uuid) {
         super(world);
@@ -76,7 +86,8 @@ public class DiskStorageHistory extends FaweStreamChangeSet {
 
     private void init(UUID uuid, String worldName) {
         File folder = MainUtil.getFile(Fawe.imp().getDirectory(), Settings.IMP.PATHS.HISTORY + File.separator + worldName + File.separator + uuid);
-        int max = MainUtil.getMaxFileId(folder);
+        // Packed edits no longer have files in the folder
+        int max = Math.max(MainUtil.getMaxFileId(folder), HistorySegments.get(worldName).getMaxIndex(uuid) + 1);
         init(uuid, max);
     }
 
@@ -135,6 +146,60 @@ public class DiskStorageHistory extends FaweStreamChangeSet {
         nbttFile.delete();
         entfFile.delete();
         enttFile.delete();
+        if (getSegment() != null) {
+            HistorySegments.get(getWorldName()).remove(uuid, index);
+            segment = null;
+        }
+        HistoryManifest.remove(bdFile.getParentFile(), index);
+    }
+
+    /**
+     * @return the packed edit (see {@link HistorySegments}), or null if the edit is in its own files
+     */
+    private HistorySegments.Entry getSegment() {
+        if (segment == null && !bdFile.exists()) {
+            segment = HistorySegments.get(getWorldName()).get(uuid, index);
+        }
+        return segment;
+    }
+
+    /**
+     * Open one of the files of this edit (which may have been packed)
+     *
+     * @return the stream, or null if the edit doesn't have the file
+     */
+    private InputStream openFile(File file, int part) throws IOException {
+        if (file.exists()) {
+            try {
+                return new FileInputStream(file);
+            } catch (FileNotFoundException ignore) {
+                // Just packed
+            }
+        }
+        HistorySegments.Entry entry = getSegment();
+        if (entry == null) {
+            return null;
+        }
+        byte[] data = HistorySegments.get(getWorldName()).read(entry, part);
+        return data == null ? null : new ByteArrayInputStream(data);
+    }
+
+    /**
+     * @return if the edit is still on disk (either in its own files, or packed)
+     */
+    public boolean exists() {
+        return bdFile.exists() || getSegment() != null;
+    }
+
+    /**
+     * @return when the edit was last written to
+     */
+    public long lastModified() {
+        if (bdFile.exists()) {
+            return bdFile.lastModified();
+        }
+        HistorySegments.Entry entry = getSegment();
+        return entry == null ? 0 : entry.modified;
     }
 
     public void undo(FawePlayer fp, Region[] regions) {
@@ -168,6 +233,15 @@ public class DiskStorageHistory extends FaweStreamChangeSet {
         return index;
     }
 
+    @Override
+    public void add(int x, int y, int z, int combinedFrom, int combinedTo) {
+        if (x < minX) minX = x;
+        if (x > maxX) maxX = x;
+        if (z < minZ) minZ = z;
+        if (z > maxZ) maxZ = z;
+        super.add(x, y, z, combinedFrom, combinedTo);
+    }
+
     @Override
     public boolean flush() {
         super.flush();
@@ -220,13 +294,27 @@ public class DiskStorageHistory extends FaweStreamChangeSet {
             } catch (Exception e) {
                 MainUtil.handleError(e);
             }
+            if (flushed) {
+                HistoryManifest.Entry entry = new HistoryManifest.Entry(index);
+                entry.size = getSizeOnDisk();
+                entry.modified = System.currentTimeMillis();
+                entry.minX = minX;
+                entry.minZ = minZ;
+                entry.maxX = maxX;
+                entry.maxZ = maxZ;
+                HistoryManifest.update(bdFile.getParentFile(), entry);
+            }
             return flushed;
         }
     }
 
     @Override
     public int getCompressedSize() {
-        return bdFile.exists() ? (int) bdFile.length() : 0;
+        if (bdFile.exists()) {
+            return (int) bdFile.length();
+        }
+        HistorySegments.Entry entry = getSegment();
+        return entry == null || !entry.has(HistorySegments.BD) ? 0 : entry.lengths[HistorySegments.BD];
     }
 
     @Override
@@ -236,6 +324,9 @@ public class DiskStorageHistory extends FaweStreamChangeSet {
 
     @Override
     public long getSizeOnDisk() {
+        if (!bdFile.exists() && getSegment() != null) {
+            return segment.getSize();
+        }
         int total = 0;
         if (bdFile.exists()) {
             total += bdFile.length();
@@ -331,63 +422,72 @@ public class DiskStorageHistory extends FaweStreamChangeSet {
 
     @Override
     public FaweInputStream getBlockIS() throws IOException {
-        if (!bdFile.exists()) {
+        InputStream file = openFile(bdFile, HistorySegments.BD);
+        if (file == null) {
             return null;
         }
-        FaweInputStream is = MainUtil.getCompressedIS(new FileInputStream(bdFile));
+        FaweInputStream is = MainUtil.getCompressedIS(file);
         readHeader(is);
         return is;
     }
 
     @Override
     public FaweInputStream getBiomeIS() throws IOException {
-        if (!bioFile.exists()) {
+        InputStream file = openFile(bioFile, HistorySegments.BIO);
+        if (file == null) {
             return null;
         }
-        FaweInputStream is = MainUtil.getCompressedIS(new FileInputStream(bioFile));
+        FaweInputStream is = MainUtil.getCompressedIS(file);
         return is;
     }
 
     @Override
     public NBTInputStream getEntityCreateIS() throws IOException {
-        if (!enttFile.exists()) {
+        InputStream file = openFile(enttFile, HistorySegments.ENTT);
+        if (file == null) {
             return null;
         }
-        return new NBTInputStream(MainUtil.getCompressedIS(new FileInputStream(enttFile)));
+        return new NBTInputStream(MainUtil.getCompressedIS(file));
     }
 
     @Override
     public NBTInputStream getEntityRemoveIS() throws IOException {
-        if (!entfFile.exists()) {
+        InputStream file = openFile(entfFile, HistorySegments.ENTF);
+        if (file == null) {
             return null;
         }
-        return new NBTInputStream(MainUtil.getCompressedIS(new FileInputStream(entfFile)));
+        return new NBTInputStream(MainUtil.getCompressedIS(file));
     }
 
     @Override
     public NBTInputStream getTileCreateIS() throws IOException {
-        if (!nbttFile.exists()) {
+        InputStream file = openFile(nbttFile, HistorySegments.NBTT);
+        if (file == null) {
             return null;
         }
-        return new NBTInputStream(MainUtil.getCompressedIS(new FileInputStream(nbttFile)));
+        return new NBTInputStream(MainUtil.getCompressedIS(file));
     }
 
     @Override
     public NBTInputStream getTileRemoveIS() throws IOException {
-        if (!nbtfFile.exists()) {
+        InputStream file = openFile(nbtfFile, HistorySegments.NBTF);
+        if (file == null) {
             return null;
         }
-        return new NBTInputStream(MainUtil.getCompressedIS(new FileInputStream(nbtfFile)));
+        return new NBTInputStream(MainUtil.getCompressedIS(file));
     }
 
     public DiskStorageSummary summarize(RegionWrapper requiredRegion, boolean shallow) {
-        if (bdFile.exists()) {
+        if (exists()) {
             int ox = getOriginX();
             int oz = getOriginZ();
             if ((ox != 0 || oz != 0) && !requiredRegion.isIn(ox, oz)) {
                 return new DiskStorageSummary(ox, oz);
             }
-            try (FileInputStream fis = new FileInputStream(bdFile)) {
+            try (InputStream fis = openFile(bdFile, HistorySegments.BD)) {
+                if (fis == null) {
+                    return null;
+                }
                 FaweInputStream gis = MainUtil.getCompressedIS(fis);
                 // skip mode
                 gis.skipFully(1);
@@ -427,8 +527,11 @@ public class DiskStorageHistory extends FaweStreamChangeSet {
     public IntegerPair readHeader() {
         int ox = getOriginX();
         int oz = getOriginZ();
-        if (ox == 0 && oz == 0 && bdFile.exists()) {
-            try (FileInputStream fis = new FileInputStream(bdFile)) {
+        if (ox == 0 && oz == 0 && exists()) {
+            try (InputStream fis = openFile(bdFile, HistorySegments.BD)) {
+                if (fis == null) {
+                    return new IntegerPair(ox, oz);
+                }
                 final FaweInputStream gis = MainUtil.getCompressedIS(fis);
                 // skip mode
                 gis.skipFully(1);
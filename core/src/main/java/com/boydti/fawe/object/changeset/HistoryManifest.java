@@ -0,0 +1,276 @@
+package com.boydti.fawe.object.changeset;
+
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.util.MainUtil;
+import com.boydti.fawe.util.StringMan;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small index of the edits in a player's history folder<br>
+ * - Kept up to date by {@link DiskStorageHistory} when an edit is closed or deleted, by appending a record<br>
+ * - Records are a fixed size, so a record cut off by a crash is dropped before the next append<br>
+ * - Rewritten without the replaced records once they outnumber the edits<br>
+ * - Lets a session load its history with a single read instead of listing the folder<br>
+ * - The bounds of each edit let a rollback skip edits without reading them
+ */
+public class HistoryManifest {
+
+    public static final String FILE_NAME = "manifest";
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4;
+    // type, index, size, modified, minX, minZ, maxX, maxZ
+    private static final int RECORD_SIZE = 1 + 4 + 8 + 8 + 16;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    public static class Entry {
+        public final int index;
+        public long size;
+        public long modified;
+        public int minX = Integer.MAX_VALUE;
+        public int minZ = Integer.MAX_VALUE;
+        public int maxX = Integer.MIN_VALUE;
+        public int maxZ = Integer.MIN_VALUE;
+
+        public Entry(int index) {
+            this.index = index;
+        }
+
+        public boolean hasBounds() {
+            return minX <= maxX && minZ <= maxZ;
+        }
+    }
+
+    private final File folder;
+    private final Int2ObjectOpenHashMap<Entry> entries = new Int2ObjectOpenHashMap<>();
+
+    private HistoryManifest(File folder) {
+        this.folder = folder;
+    }
+
+    public File getFolder() {
+        return folder;
+    }
+
+    public Entry get(int index) {
+        return entries.get(index);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the edit indexes in ascending order
+     */
+    public int[] getIndexes() {
+        int[] indexes = entries.keySet().toIntArray();
+        Arrays.sort(indexes);
+        return indexes;
+    }
+
+    public long getTotalSize() {
+        long total = 0;
+        for (Entry entry : entries.values()) {
+            total += entry.size;
+        }
+        return total;
+    }
+
+    /**
+     * Load the manifest for a history folder
+     *
+     * @param folder
+     * @return the manifest, or null if the folder doesn't have one (or it is unreadable)
+     */
+    public static synchronized HistoryManifest load(File folder) {
+        File file = new File(folder, FILE_NAME);
+        if (file.length() < HEADER_SIZE) {
+            return null;
+        }
+        HistoryManifest manifest = new HistoryManifest(folder);
+        int records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            long expires = Settings.IMP.HISTORY.DELETE_AFTER_DAYS > 0 ? System.currentTimeMillis() - TimeUnit.DAYS.toMillis(Settings.IMP.HISTORY.DELETE_AFTER_DAYS) : Long.MIN_VALUE;
+            byte[] record = new byte[RECORD_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            while (true) {
+                in.readFully(record);
+                records++;
+                buffer.clear();
+                byte type = buffer.get();
+                Entry entry = new Entry(buffer.getInt());
+                if (type == REMOVE) {
+                    manifest.entries.remove(entry.index);
+                    continue;
+                }
+                entry.size = buffer.getLong();
+                entry.modified = buffer.getLong();
+                entry.minX = buffer.getInt();
+                entry.minZ = buffer.getInt();
+                entry.maxX = buffer.getInt();
+                entry.maxZ = buffer.getInt();
+                // Old edits are removed by the DELETE_AFTER_DAYS sweep
+                if (entry.modified >= expires) {
+                    manifest.entries.put(entry.index, entry);
+                } else {
+                    manifest.entries.remove(entry.index);
+                }
+            }
+        } catch (EOFException ignore) {
+            // The end of the manifest (or a record cut off by a crash)
+        } catch (IOException e) {
+            MainUtil.handleError(e);
+            return null;
+        }
+        if (records > (manifest.entries.size() << 1) + 64) {
+            manifest.save();
+        }
+        return manifest;
+    }
+
+    /**
+     * Build a manifest by listing the folder (used when a folder has no manifest yet)
+     *
+     * @param folder
+     * @return the manifest, which has been saved if there were any edits
+     */
+    public static synchronized HistoryManifest scan(File folder) {
+        HistoryManifest manifest = new HistoryManifest(folder);
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                Integer index = null;
+                if (file.isDirectory()) {
+                    index = StringMan.toInteger(name, 0, name.length());
+                } else {
+                    int i = name.lastIndexOf('.');
+                    if (i != -1) index = StringMan.toInteger(name, 0, i);
+                }
+                if (index == null) {
+                    continue;
+                }
+                Entry entry = manifest.entries.get((int) index);
+                if (entry == null) {
+                    manifest.entries.put((int) index, entry = new Entry(index));
+                }
+                entry.size += file.isDirectory() ? MainUtil.getTotalSize(file.toPath()) : file.length();
+                entry.modified = Math.max(entry.modified, file.lastModified());
+            }
+        }
+        if (!manifest.entries.isEmpty()) {
+            manifest.save();
+        }
+        return manifest;
+    }
+
+    /**
+     * Write the manifest with one record per edit
+     *
+     * @return if it was saved
+     */
+    public boolean save() {
+        File file = new File(folder, FILE_NAME);
+        File tmp = new File(folder, FILE_NAME + ".tmp");
+        try {
+            folder.mkdirs();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(VERSION);
+                for (int index : getIndexes()) {
+                    out.write(toRecord(PUT, entries.get(index)));
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            MainUtil.handleError(e);
+            return false;
+        }
+    }
+
+    private static byte[] toRecord(byte type, Entry entry) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        buffer.put(type);
+        buffer.putInt(entry.index);
+        buffer.putLong(entry.size);
+        buffer.putLong(entry.modified);
+        buffer.putInt(entry.minX);
+        buffer.putInt(entry.minZ);
+        buffer.putInt(entry.maxX);
+        buffer.putInt(entry.maxZ);
+        return buffer.array();
+    }
+
+    /**
+     * Append a record to a folder's manifest
+     *
+     * @return false if the folder has no manifest
+     */
+    private static boolean append(File folder, byte[] record) {
+        File file = new File(folder, FILE_NAME);
+        if (file.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.readInt() != VERSION) {
+                return false;
+            }
+            long length = raf.length();
+            // Drop a record cut off by a crash, so this one isn't read misaligned
+            long valid = length - (length - HEADER_SIZE) % RECORD_SIZE;
+            if (valid != length) {
+                raf.setLength(valid);
+            }
+            raf.seek(valid);
+            raf.write(record);
+            return true;
+        } catch (IOException e) {
+            MainUtil.handleError(e);
+            return false;
+        }
+    }
+
+    /**
+     * Add or replace an entry in a folder's manifest<br>
+     * - Creates the manifest (by listing the folder) if it doesn't have one
+     *
+     * @param folder
+     * @param entry
+     */
+    public static synchronized void update(File folder, Entry entry) {
+        if (!append(folder, toRecord(PUT, entry))) {
+            HistoryManifest manifest = scan(folder);
+            manifest.entries.put(entry.index, entry);
+            manifest.save();
+        }
+    }
+
+    /**
+     * Remove an entry from a folder's manifest
+     *
+     * @param folder
+     * @param index
+     */
+    public static synchronized void remove(File folder, int index) {
+        append(folder, toRecord(REMOVE, new Entry(index)));
+    }
+}
@@ -0,0 +1,248 @@
+package com.boydti.fawe.object.changeset;
+
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.example.MappedFaweQueue;
+import com.boydti.fawe.object.FaweChunk;
+import com.boydti.fawe.object.HasFaweQueue;
+import com.boydti.fawe.object.change.MutableBlockChange;
+import com.boydti.fawe.util.ExtentTraverser;
+import com.boydti.fawe.util.MathMan;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.history.UndoContext;
+import com.sk89q.worldedit.history.change.Change;
+import com.sk89q.worldedit.history.changeset.ChangeSet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Undoes or redoes a {@link FaweStreamChangeSet} into a {@link MappedFaweQueue}, in two stages<br>
+ * - The block changes are decompressed and grouped by chunk on another thread<br>
+ * - The calling thread writes each group into the queued chunk<br>
+ * - The decoder stays at most `history.replay-read-ahead` batches ahead, so memory use doesn't grow with the edit<br>
+ * - Blocks are changed in the same order as {@link FaweStreamChangeSet#getIterator(boolean)}, so the result is the same<br>
+ * - If the decoder fails, {@link #run()} throws its error after the blocks decoded so far were written
+ */
+public class HistoryReplay {
+
+    private static final int BATCH_SIZE = 65536;
+
+    // Not TaskManager.IMP.async: that pool can be bounded, and undo/redo usually runs on it, so a replay could wait on its own decoder
+    private static final ThreadPoolExecutor DECODERS = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+        Thread thread = new Thread(r, "FAWE History Replay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final FaweStreamChangeSet changeSet;
+    private final MappedFaweQueue queue;
+    private final UndoContext context;
+    private final boolean redo;
+
+    private volatile boolean aborted;
+    private volatile boolean decoded;
+    private volatile Throwable failure;
+
+    /**
+     * The changes of a batch in one chunk, in order
+     */
+    private static final class ChunkChanges {
+        private final int cx, cz;
+        // (y << 8 | z << 4 | x) << 16 | id << 4 | data
+        private int[] changes = new int[64];
+        private int size;
+
+        private ChunkChanges(int cx, int cz) {
+            this.cx = cx;
+            this.cz = cz;
+        }
+
+        private void add(int change) {
+            if (size == changes.length) {
+                int[] tmp = new int[size << 1];
+                System.arraycopy(changes, 0, tmp, 0, size);
+                changes = tmp;
+            }
+            changes[size++] = change;
+        }
+    }
+
+    private static final class Batch {
+        private final List<ChunkChanges> chunks = new ArrayList<>();
+        private final Long2ObjectOpenHashMap<ChunkChanges> byChunk = new Long2ObjectOpenHashMap<>();
+        private int size;
+
+        private ChunkChanges last;
+
+        private void add(int x, int y, int z, int id, int data) {
+            int cx = x >> 4;
+            int cz = z >> 4;
+            ChunkChanges chunk = last;
+            if (chunk == null || chunk.cx != cx || chunk.cz != cz) {
+                long pair = MathMan.pairInt(cx, cz);
+                chunk = byChunk.get(pair);
+                if (chunk == null) {
+                    chunk = new ChunkChanges(cx, cz);
+                    byChunk.put(pair, chunk);
+                    chunks.add(chunk);
+                }
+                last = chunk;
+            }
+            chunk.add((((y << 8) | ((z & 15) << 4) | (x & 15)) << 16) | ((id & 0xFFF) << 4) | (data & 15));
+            size++;
+        }
+    }
+
+    private HistoryReplay(FaweStreamChangeSet changeSet, MappedFaweQueue queue, UndoContext context, boolean redo) {
+        this.changeSet = changeSet;
+        this.queue = queue;
+        this.context = context;
+        this.redo = redo;
+    }
+
+    /**
+     * @param changeSet
+     * @param context
+     * @param redo
+     * @return the replay, or null if the change set or the extent being changed isn't supported
+     */
+    public static HistoryReplay of(ChangeSet changeSet, UndoContext context, boolean redo) {
+        if (Settings.IMP.HISTORY.REPLAY_READ_AHEAD <= 0) {
+            return null;
+        }
+        while (changeSet instanceof AbstractDelegateChangeSet) {
+            changeSet = ((AbstractDelegateChangeSet) changeSet).parent;
+        }
+        if (!(changeSet instanceof FaweStreamChangeSet) || context.getExtent() == null) {
+            return null;
+        }
+        ExtentTraverser found = new ExtentTraverser(context.getExtent()).find(HasFaweQueue.class);
+        if (found == null || !(((HasFaweQueue) found.get()).getQueue() instanceof MappedFaweQueue)) {
+            return null;
+        }
+        MappedFaweQueue queue = (MappedFaweQueue) ((HasFaweQueue) found.get()).getQueue();
+        return new HistoryReplay((FaweStreamChangeSet) changeSet, queue, context, redo);
+    }
+
+    public void run() throws WorldEditException {
+        changeSet.close();
+        try {
+            apply(changeSet.getTileIterator(changeSet.getTileCreateIS(), true, redo));
+            apply(changeSet.getTileIterator(changeSet.getTileRemoveIS(), false, redo));
+            apply(changeSet.getEntityIterator(changeSet.getEntityCreateIS(), true, redo));
+            apply(changeSet.getEntityIterator(changeSet.getEntityRemoveIS(), false, redo));
+            replayBlocks();
+            apply(changeSet.getBiomeIterator(redo));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void apply(Iterator<? extends Change> iterator) throws WorldEditException {
+        if (iterator == null) {
+            return;
+        }
+        if (redo) {
+            while (iterator.hasNext()) {
+                iterator.next().redo(context);
+            }
+        } else {
+            while (iterator.hasNext()) {
+                iterator.next().undo(context);
+            }
+        }
+    }
+
+    private void replayBlocks() {
+        final BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(Settings.IMP.HISTORY.REPLAY_READ_AHEAD);
+        DECODERS.execute(new Runnable() {
+            @Override
+            public void run() {
+                decode(batches);
+            }
+        });
+        try {
+            while (true) {
+                Batch batch = batches.poll(50, TimeUnit.MILLISECONDS);
+                if (batch == null) {
+                    if (!decoded) {
+                        continue;
+                    }
+                    // The last batch may have been added just before the decoder finished
+                    if ((batch = batches.poll()) == null) {
+                        break;
+                    }
+                }
+                for (ChunkChanges changes : batch.chunks) {
+                    FaweChunk chunk = queue.getFaweQueueMap().getFaweChunk(changes.cx, changes.cz);
+                    int[] array = changes.changes;
+                    for (int i = 0; i < changes.size; i++) {
+                        int change = array[i];
+                        int index = change >>> 16;
+                        chunk.setBlock(index & 15, index >> 8, (index >> 4) & 15, (change >> 4) & 0xFFF, change & 15);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Let the decoder stop if the writer didn't finish
+            aborted = true;
+        }
+        Throwable e = failure;
+        if (e != null) {
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void decode(BlockingQueue<Batch> batches) {
+        Batch batch = new Batch();
+        try {
+            Iterator<MutableBlockChange> iterator = changeSet.getBlockIterator(redo);
+            while (iterator.hasNext()) {
+                MutableBlockChange change = iterator.next();
+                int y = change.y;
+                if (y < 0 || y >= FaweChunk.HEIGHT) {
+                    continue;
+                }
+                batch.add(change.x, y, change.z, change.id, change.data);
+                if (batch.size >= BATCH_SIZE) {
+                    if (!put(batches, batch)) {
+                        return;
+                    }
+                    batch = new Batch();
+                }
+            }
+            if (batch.size > 0) {
+                put(batches, batch);
+            }
+        } catch (Throwable e) {
+            // Thrown by the writer (see replayBlocks)
+            failure = e;
+        } finally {
+            decoded = true;
+        }
+    }
+
+    private boolean put(BlockingQueue<Batch> batches, Batch batch) throws InterruptedException {
+        while (!batches.offer(batch, 50, TimeUnit.MILLISECONDS)) {
+            if (aborted) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
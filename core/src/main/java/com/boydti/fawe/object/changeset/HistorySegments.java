@@ -0,0 +1,527 @@
+package com.boydti.fawe.object.changeset;
+
+import com.boydti.fawe.Fawe;
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.FaweInputStream;
+import com.boydti.fawe.object.FaweOutputStream;
+import com.boydti.fawe.util.MainUtil;
+import com.boydti.fawe.util.StringMan;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * The older edits of a world, packed into one file per day (instead of up to six files per edit)<br>
+ * - `segments/<day>.seg` holds the files of each edit, one after the other<br>
+ * - `segments/<day>.idx` lists where each edit is, and which have been deleted since<br>
+ * - Each index record has a checksum, reading stops at the first bad record (e.g. cut off by a crash), and the index is
+ * truncated back to the last good record before anything is appended<br>
+ * - Both files are only appended to, and a day is deleted in one go once it is older than `delete-after-days`<br>
+ * - Edits are packed once they are older than `compact-after-hours`, see {@link #compact()}
+ */
+public class HistorySegments {
+
+    public static final String FOLDER = "segments";
+
+    // The files of an edit, in the order they are packed
+    public static final int BD = 0;
+    public static final int BIO = 1;
+    public static final int NBTF = 2;
+    public static final int NBTT = 3;
+    public static final int ENTF = 4;
+    public static final int ENTT = 5;
+    public static final String[] EXTENSIONS = {"bd", "bio", "nbtf", "nbtt", "entf", "entt"};
+
+    // uuid, index, modified, offset, lengths, then a CRC32 of those
+    private static final int RECORD_DATA = 16 + 4 + 8 + 8 + (EXTENSIONS.length << 2);
+    private static final int RECORD_SIZE = RECORD_DATA + 4;
+
+    private static final Map<String, HistorySegments> WORLDS = new ConcurrentHashMap<>();
+
+    /**
+     * @param world
+     * @return the packed edits of a world
+     */
+    public static HistorySegments get(String world) {
+        HistorySegments segments = WORLDS.get(world);
+        if (segments == null) {
+            segments = new HistorySegments(world);
+            HistorySegments previous = WORLDS.putIfAbsent(world, segments);
+            if (previous != null) {
+                segments = previous;
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Pack the older edits of every world
+     */
+    public static void compactAll() {
+        if (Settings.IMP.HISTORY.COMPACT_AFTER_HOURS <= 0 || !Settings.IMP.HISTORY.USE_DISK) {
+            return;
+        }
+        File history = MainUtil.getFile(Fawe.imp().getDirectory(), Settings.IMP.PATHS.HISTORY);
+        File[] worlds = history.listFiles();
+        if (worlds == null) {
+            return;
+        }
+        for (File world : worlds) {
+            if (world.isDirectory()) {
+                try {
+                    get(world.getName()).compact();
+                } catch (Throwable e) {
+                    MainUtil.handleError(e);
+                }
+            }
+        }
+    }
+
+    public static class Entry {
+        public final long day;
+        public final long offset;
+        // The length of each file (-1 if the edit doesn't have it)
+        public final int[] lengths;
+        public final long modified;
+
+        private Entry(long day, long offset, int[] lengths, long modified) {
+            this.day = day;
+            this.offset = offset;
+            this.lengths = lengths;
+            this.modified = modified;
+        }
+
+        public boolean has(int part) {
+            return lengths[part] >= 0;
+        }
+
+        public long getSize() {
+            long size = 0;
+            for (int length : lengths) {
+                if (length > 0) {
+                    size += length;
+                }
+            }
+            return size;
+        }
+    }
+
+    private final File folder;
+    // Loaded when first used
+    private Map<UUID, Int2ObjectOpenHashMap<Entry>> entries;
+    // The length of the valid records of each day's index
+    private Map<Long, Long> indexLengths;
+
+    private HistorySegments(String world) {
+        this.folder = MainUtil.getFile(Fawe.imp().getDirectory(), Settings.IMP.PATHS.HISTORY + File.separator + world + File.separator + FOLDER);
+    }
+
+    private File getFile(long day, String extension) {
+        return new File(folder, LocalDate.ofEpochDay(day) + "." + extension);
+    }
+
+    private static Long getDay(File file) {
+        String name = file.getName();
+        int i = name.lastIndexOf('.');
+        if (i == -1) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(name.substring(0, i)).toEpochDay();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private Map<UUID, Int2ObjectOpenHashMap<Entry>> getEntries() {
+        if (entries != null) {
+            return entries;
+        }
+        entries = new HashMap<>();
+        indexLengths = new HashMap<>();
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return entries;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            Long day = getDay(file);
+            if (day == null || !file.getName().endsWith(".idx")) {
+                continue;
+            }
+            indexLengths.put(day, readIndex(file, day));
+        }
+        return entries;
+    }
+
+    /**
+     * Read the records of an index into the entries
+     *
+     * @return the length of the valid records
+     */
+    private long readIndex(File file, long day) {
+        long segmentLength = getFile(day, "seg").length();
+        long valid = 0;
+        byte[] record = new byte[RECORD_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                in.readFully(record);
+                crc.reset();
+                crc.update(record, 0, RECORD_DATA);
+                buffer.clear();
+                UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+                int index = buffer.getInt();
+                long modified = buffer.getLong();
+                long offset = buffer.getLong();
+                int[] lengths = new int[EXTENSIONS.length];
+                long total = 0;
+                for (int i = 0; i < lengths.length; i++) {
+                    lengths[i] = buffer.getInt();
+                    if (lengths[i] < -1) {
+                        total = Long.MAX_VALUE;
+                    } else if (lengths[i] > 0) {
+                        total += lengths[i];
+                    }
+                }
+                if ((int) crc.getValue() != buffer.getInt() || (offset >= 0 && (total == Long.MAX_VALUE || offset + total > segmentLength))) {
+                    Fawe.debug("Ignoring the damaged end of " + file + " (from byte " + valid + ")");
+                    break;
+                }
+                valid += RECORD_SIZE;
+                if (offset < 0) {
+                    Int2ObjectOpenHashMap<Entry> map = entries.get(uuid);
+                    if (map != null) {
+                        map.remove(index);
+                    }
+                } else {
+                    Int2ObjectOpenHashMap<Entry> map = entries.get(uuid);
+                    if (map == null) {
+                        entries.put(uuid, map = new Int2ObjectOpenHashMap<>());
+                    }
+                    map.put(index, new Entry(day, offset, lengths, modified));
+                }
+            }
+        } catch (EOFException ignore) {
+            // End of the index (a record cut off by a crash is truncated before the next append)
+        } catch (IOException e) {
+            MainUtil.handleError(e);
+        }
+        return valid;
+    }
+
+    /**
+     * @param uuid
+     * @param index
+     * @return the packed edit, or null
+     */
+    public synchronized Entry get(UUID uuid, int index) {
+        Int2ObjectOpenHashMap<Entry> map = getEntries().get(uuid);
+        return map == null ? null : map.get(index);
+    }
+
+    /**
+     * @param uuid
+     * @return the highest index of a packed edit, or -1
+     */
+    public synchronized int getMaxIndex(UUID uuid) {
+        Int2ObjectOpenHashMap<Entry> map = getEntries().get(uuid);
+        int max = -1;
+        if (map != null) {
+            for (int index : map.keySet()) {
+                max = Math.max(max, index);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @param user the player, or null for every player
+     * @return the packed edits of each player (a copy)
+     */
+    public synchronized Map<UUID, Int2ObjectOpenHashMap<Entry>> getEdits(UUID user) {
+        Map<UUID, Int2ObjectOpenHashMap<Entry>> edits = new HashMap<>();
+        for (Map.Entry<UUID, Int2ObjectOpenHashMap<Entry>> entry : getEntries().entrySet()) {
+            if (!entry.getValue().isEmpty() && (user == null || user.equals(entry.getKey()))) {
+                edits.put(entry.getKey(), new Int2ObjectOpenHashMap<>(entry.getValue()));
+            }
+        }
+        return edits;
+    }
+
+    /**
+     * Read one of the files of a packed edit
+     *
+     * @param entry
+     * @param part  e.g. {@link #BD}
+     * @return the contents, or null if the edit doesn't have that file
+     * @throws IOException
+     */
+    public byte[] read(Entry entry, int part) throws IOException {
+        if (!entry.has(part)) {
+            return null;
+        }
+        File file = getFile(entry.day, "seg");
+        if (!file.exists()) {
+            return null;
+        }
+        long position = entry.offset;
+        for (int i = 0; i < part; i++) {
+            if (entry.lengths[i] > 0) {
+                position += entry.lengths[i];
+            }
+        }
+        byte[] data = new byte[entry.lengths[part]];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (position + data.length > raf.length()) {
+                throw new EOFException("Edit is outside of " + file);
+            }
+            raf.seek(position);
+            raf.readFully(data);
+        }
+        return data;
+    }
+
+    /**
+     * Delete a packed edit
+     *
+     * @param uuid
+     * @param index
+     */
+    public synchronized void remove(UUID uuid, int index) {
+        Int2ObjectOpenHashMap<Entry> map = getEntries().get(uuid);
+        Entry entry = map == null ? null : map.remove(index);
+        if (entry != null) {
+            int[] lengths = new int[EXTENSIONS.length];
+            Arrays.fill(lengths, -1);
+            try {
+                writeIndex(entry.day, uuid, index, entry.modified, -1, lengths);
+            } catch (IOException e) {
+                MainUtil.handleError(e);
+            }
+        }
+    }
+
+    private synchronized void add(UUID uuid, int index, long modified, byte[][] parts) throws IOException {
+        long day = TimeUnit.MILLISECONDS.toDays(modified);
+        File file = getFile(day, "seg");
+        folder.mkdirs();
+        long offset = file.length();
+        int[] lengths = new int[EXTENSIONS.length];
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            for (int i = 0; i < parts.length; i++) {
+                byte[] part = parts[i];
+                lengths[i] = part == null ? -1 : part.length;
+                if (part != null) {
+                    out.write(part);
+                }
+            }
+            out.getFD().sync();
+        }
+        writeIndex(day, uuid, index, modified, offset, lengths);
+        Int2ObjectOpenHashMap<Entry> map = getEntries().get(uuid);
+        if (map == null) {
+            entries.put(uuid, map = new Int2ObjectOpenHashMap<>());
+        }
+        map.put(index, new Entry(day, offset, lengths, modified));
+    }
+
+    private void writeIndex(long day, UUID uuid, int index, long modified, long offset, int[] lengths) throws IOException {
+        getEntries();
+        folder.mkdirs();
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+        buffer.putInt(index);
+        buffer.putLong(modified);
+        buffer.putLong(offset);
+        for (int length : lengths) {
+            buffer.putInt(length);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, RECORD_DATA);
+        buffer.putInt((int) crc.getValue());
+        Long length = indexLengths.get(day);
+        if (length == null) {
+            length = 0L;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(getFile(day, "idx"), "rw")) {
+            // Drop anything after the last good record, so this one isn't read misaligned
+            if (raf.length() != length) {
+                raf.setLength(length);
+            }
+            raf.seek(length);
+            raf.write(buffer.array());
+            raf.getFD().sync();
+        }
+        indexLengths.put(day, length + RECORD_SIZE);
+    }
+
+    /**
+     * Delete the days which are older than `delete-after-days`
+     */
+    public synchronized void purge() {
+        if (Settings.IMP.HISTORY.DELETE_AFTER_DAYS <= 0) {
+            return;
+        }
+        long expires = TimeUnit.MILLISECONDS.toDays(System.currentTimeMillis()) - Settings.IMP.HISTORY.DELETE_AFTER_DAYS;
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        boolean deleted = false;
+        for (File file : files) {
+            Long day = getDay(file);
+            if (day != null && day < expires) {
+                deleted |= file.delete();
+            }
+        }
+        if (deleted) {
+            // Reload the index when next used
+            entries = null;
+            indexLengths = null;
+        }
+    }
+
+    /**
+     * Pack the edits (of every player in this world) which are older than `compact-after-hours`
+     */
+    public void compact() {
+        if (Settings.IMP.HISTORY.COMPACT_AFTER_HOURS <= 0) {
+            return;
+        }
+        purge();
+        long before = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(Settings.IMP.HISTORY.COMPACT_AFTER_HOURS);
+        File[] folders = folder.getParentFile().listFiles();
+        if (folders == null) {
+            return;
+        }
+        for (File userFolder : folders) {
+            if (!userFolder.isDirectory()) {
+                continue;
+            }
+            UUID uuid;
+            try {
+                uuid = UUID.fromString(userFolder.getName());
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            compact(uuid, userFolder, before);
+        }
+    }
+
+    private void compact(UUID uuid, File userFolder, long before) {
+        File[] files = userFolder.listFiles();
+        if (files == null) {
+            return;
+        }
+        // The files of each edit
+        Int2ObjectOpenHashMap<File[]> edits = new Int2ObjectOpenHashMap<>();
+        for (File file : files) {
+            String name = file.getName();
+            int i = name.lastIndexOf('.');
+            if (i == -1 || file.isDirectory()) {
+                continue;
+            }
+            int part = Arrays.asList(EXTENSIONS).indexOf(name.substring(i + 1));
+            Integer index = StringMan.toInteger(name, 0, i);
+            if (part == -1 || index == null) {
+                continue;
+            }
+            File[] editFiles = edits.get((int) index);
+            if (editFiles == null) {
+                edits.put((int) index, editFiles = new File[EXTENSIONS.length]);
+            }
+            editFiles[part] = file;
+        }
+        if (edits.isEmpty()) {
+            return;
+        }
+        // The session lists its edits from the manifest, so it must exist before the files are removed
+        if (HistoryManifest.load(userFolder) == null) {
+            HistoryManifest.scan(userFolder);
+        }
+        int level = Settings.IMP.HISTORY.COMPACT_COMPRESSION_LEVEL;
+        int[] indexes = edits.keySet().toIntArray();
+        Arrays.sort(indexes);
+        for (int index : indexes) {
+            File[] editFiles = edits.get(index);
+            if (editFiles[BD] == null) {
+                continue;
+            }
+            long modified = 0;
+            for (File file : editFiles) {
+                if (file != null) {
+                    modified = Math.max(modified, file.lastModified());
+                }
+            }
+            // Recent edits may still be written to, or undone
+            if (modified > before) {
+                continue;
+            }
+            try {
+                if (get(uuid, index) == null) {
+                    byte[][] parts = new byte[EXTENSIONS.length][];
+                    for (int i = 0; i < editFiles.length; i++) {
+                        if (editFiles[i] != null) {
+                            parts[i] = Files.readAllBytes(editFiles[i].toPath());
+                            if (level > 0) {
+                                parts[i] = recompress(parts[i], level);
+                            }
+                        }
+                    }
+                    add(uuid, index, modified, parts);
+                }
+                for (File file : editFiles) {
+                    if (file != null) {
+                        file.delete();
+                    }
+                }
+            } catch (IOException e) {
+                MainUtil.handleError(e);
+            }
+        }
+    }
+
+    /**
+     * Compress a history file with a higher level
+     *
+     * @return the recompressed data, or the data if it was already compressed as much
+     */
+    private static byte[] recompress(byte[] data, int level) throws IOException {
+        // The first byte is the level the file was written with
+        if (data.length == 0 || data[0] < 10 || data[0] - 10 >= level) {
+            return data;
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(data.length);
+        try (FaweInputStream in = MainUtil.getCompressedIS(new ByteArrayInputStream(data)); FaweOutputStream out = MainUtil.getCompressedOS(baos, level)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        byte[] result = baos.toByteArray();
+        return result.length < data.length ? result : data;
+    }
+}
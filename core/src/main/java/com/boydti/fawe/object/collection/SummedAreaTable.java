@@ -1,6 +1,14 @@
 package com.boydti.fawe.object.collection;
 
 import com.boydti.fawe.util.MathMan;
+import com.boydti.fawe.util.TaskManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class SummedAreaTable {
     private final char[] source;
@@ -26,14 +34,96 @@ public class SummedAreaTable {
         }
     }
 
+    /**
+     * A task over the rows [minRow, maxRow)
+     */
+    public interface RowTask {
+        void run(int minRow, int maxRow);
+    }
+
+    /**
+     * Tables smaller than this are processed on the calling thread
+     */
+    private static final int PARALLEL_AREA = 1 << 16;
+    private static final int TILE = 64;
+
+    /**
+     * Compute the table from the source<br>
+     * - First the prefix sum of each row (rows are independent), then each row adds the row above (columns are independent)<br>
+     * - Both passes are split into tiles and run in parallel for large tables, the result is exact either way
+     */
     public void processSummedAreaTable() {
-        int rowSize = source.length / width;
-        int colSize = width;
-        int index = 0;
-        for (int i = 0; i < rowSize; i++) {
-            for (int j = 0; j < colSize; j++, index++) {
-                long val = getVal(i, j, index, source[index]);
-                summed[index] = val;
+        final int rowSize = source.length / width;
+        forEachRows(rowSize, new RowTask() {
+            @Override
+            public void run(int minRow, int maxRow) {
+                for (int row = minRow; row < maxRow; row++) {
+                    int index = row * width;
+                    int end = index + width;
+                    long sum = 0;
+                    for (; index < end; index++) {
+                        sum += source[index];
+                        summed[index] = sum;
+                    }
+                }
+            }
+        });
+        final int columnTile = TILE * 4;
+        int tiles = (width + columnTile - 1) / columnTile;
+        forEach(tiles, rowSize * width, new RowTask() {
+            @Override
+            public void run(int minTile, int maxTile) {
+                int minCol = minTile * columnTile;
+                int maxCol = Math.min(width, maxTile * columnTile);
+                for (int row = 1; row < rowSize; row++) {
+                    int rowIndex = row * width;
+                    for (int index = rowIndex + minCol, end = rowIndex + maxCol; index < end; index++) {
+                        summed[index] += summed[index - width];
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Run a task over bands of rows, in parallel if the table is large<br>
+     * - Useful for reading the table, e.g. {@link #average(int, int, int)} for every cell
+     *
+     * @param rows the number of rows
+     * @param task
+     */
+    public void forEachRows(int rows, RowTask task) {
+        forEach(rows, rows * width, task);
+    }
+
+    private static void forEach(int count, int area, final RowTask task) {
+        int tiles = (count + TILE - 1) / TILE;
+        ForkJoinPool pool = TaskManager.IMP == null ? null : TaskManager.IMP.getPublicForkJoinPool();
+        if (area < PARALLEL_AREA || tiles <= 1 || pool == null) {
+            task.run(0, count);
+            return;
+        }
+        List<Callable<Object>> tasks = new ArrayList<>(tiles);
+        for (int min = 0; min < count; min += TILE) {
+            final int fMin = min;
+            final int fMax = Math.min(count, min + TILE);
+            tasks.add(Executors.callable(new Runnable() {
+                @Override
+                public void run() {
+                    task.run(fMin, fMax);
+                }
+            }));
+        }
+        for (Future<Object> future : pool.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new RuntimeException(cause);
             }
         }
     }
@@ -69,29 +159,4 @@ public class SummedAreaTable {
             return Math.round(total * areaInverses[area - 2]);
         }
     }
-
-    private long getVal(int row, int col, int index, long curr) {
-        long leftSum;                    // sub matrix sum of left matrix
-        long topSum;                        // sub matrix sum of top matrix
-        long topLeftSum;                    // sub matrix sum of top left matrix
-        /* top left value is itself */
-        if (index == 0) {
-            return curr;
-        }
-		/* top row */
-        else if (row == 0 && col != 0) {
-            leftSum = summed[index - 1];
-            return curr + leftSum;
-        }
-		/* left-most column */
-        else if (row != 0 && col == 0) {
-            topSum = summed[index - width];
-            return curr + topSum;
-        } else {
-            leftSum = summed[index - 1];
-            topSum = summed[index - width];
-            topLeftSum = summed[index - width - 1]; // overlap between leftSum and topSum
-            return curr + leftSum + topSum - topLeftSum;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,143 @@
+package com.boydti.fawe.object.extent;
+
+import com.boydti.fawe.object.HistoryExtent;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.blocks.BaseBlock;
+import com.sk89q.worldedit.extent.AbstractDelegateExtent;
+import com.sk89q.worldedit.extent.Extent;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The setBlock path of an EditSession's extents, fused into direct calls<br>
+ * - Only built when the extents are FAWE's own (region, limit, history) on top of a {@link FastWorldEditExtent}<br>
+ * - Each stage is called directly, instead of through each {@link AbstractDelegateExtent}'s setBlock<br>
+ * - Becomes invalid if any of the extents is replaced (e.g. an edit is cancelled), see {@link #isValid()}
+ */
+public final class BlockSink {
+
+    private final FaweRegionExtent region;
+    private final ProcessedWEExtent processed;
+    private final HistoryExtent history;
+    private final FastWorldEditExtent target;
+    private final Extent top;
+
+    // The layers, and the extent each should still delegate to
+    private final AbstractDelegateExtent[] layers;
+    private final Extent[] delegates;
+
+    private BlockSink(FaweRegionExtent region, ProcessedWEExtent processed, HistoryExtent history, FastWorldEditExtent target, List<AbstractDelegateExtent> layers) {
+        this.region = region;
+        this.processed = processed;
+        this.history = history;
+        this.target = target;
+        this.top = layers.isEmpty() ? target : layers.get(0);
+        this.layers = layers.toArray(new AbstractDelegateExtent[layers.size()]);
+        this.delegates = new Extent[this.layers.length];
+        for (int i = 0; i < this.layers.length; i++) {
+            delegates[i] = this.layers[i].getExtent();
+        }
+    }
+
+    /**
+     * Fuse a chain of extents
+     *
+     * @param extent the top extent
+     * @return the sink, or null if the chain has an extent which can't be fused
+     */
+    public static BlockSink of(Extent extent) {
+        FaweRegionExtent region = null;
+        ProcessedWEExtent processed = null;
+        HistoryExtent history = null;
+        List<AbstractDelegateExtent> layers = new ArrayList<>();
+        while (!(extent instanceof FastWorldEditExtent)) {
+            if (!(extent instanceof AbstractDelegateExtent)) {
+                return null;
+            }
+            AbstractDelegateExtent layer = (AbstractDelegateExtent) extent;
+            if (layer instanceof FaweRegionExtent && region == null && processed == null && history == null && isSetBlockFrom(layer, FaweRegionExtent.class)) {
+                region = (FaweRegionExtent) layer;
+            } else if (layer instanceof ProcessedWEExtent && processed == null && history == null && isSetBlockFrom(layer, ProcessedWEExtent.class)) {
+                processed = (ProcessedWEExtent) layer;
+            } else if (layer instanceof HistoryExtent && history == null && isSetBlockFrom(layer, HistoryExtent.class)) {
+                history = (HistoryExtent) layer;
+            } else {
+                return null;
+            }
+            layers.add(layer);
+            extent = layer.getExtent();
+        }
+        if (!isSetBlockFrom(extent, FastWorldEditExtent.class)) {
+            return null;
+        }
+        return new BlockSink(region, processed, history, (FastWorldEditExtent) extent, layers);
+    }
+
+    private static boolean isSetBlockFrom(Extent extent, Class<?> clazz) {
+        try {
+            Method method = extent.getClass().getMethod("setBlock", int.class, int.class, int.class, BaseBlock.class);
+            return method.getDeclaringClass() == clazz;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param extent the current top extent
+     * @return if this sink can be used instead of setting blocks on the extent
+     */
+    public boolean isFor(Extent extent) {
+        return extent == top && isValid();
+    }
+
+    /**
+     * @return if the extents are unchanged since the sink was built
+     */
+    public boolean isValid() {
+        AbstractDelegateExtent[] layers = this.layers;
+        for (int i = 0; i < layers.length; i++) {
+            if (layers[i].getExtent() != delegates[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The same as setting the block on the top extent
+     */
+    public boolean setBlock(int x, int y, int z, BaseBlock block) throws WorldEditException {
+        if (region != null && !region.canSet(x, y, z)) {
+            return false;
+        }
+        if (processed != null && !processed.canSet(block)) {
+            return false;
+        }
+        if (history != null && !history.record(x, y, z, block)) {
+            return false;
+        }
+        return target.setBlock(x, y, z, block);
+    }
+
+    /**
+     * Set a row of blocks
+     *
+     * @param minX
+     * @param maxX
+     * @param y
+     * @param z
+     * @param block
+     * @return the number of blocks changed
+     * @throws WorldEditException
+     */
+    public int setBlocks(int minX, int maxX, int y, int z, BaseBlock block) throws WorldEditException {
+        int changed = 0;
+        for (int x = minX; x <= maxX; x++) {
+            if (setBlock(x, y, z, block)) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,164 @@
+package com.boydti.fawe.object.extent;
+
+import com.boydti.fawe.util.MathMan;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Answers if a position is in any of a set of regions, by classifying each chunk (when first queried)<br>
+ * - Inside: a cuboid region covers the whole chunk (for y 0-255), so nothing else is checked<br>
+ * - Outside: no region's bounding box overlaps the chunk<br>
+ * - Partial: only the regions whose bounding box overlaps the chunk are checked<br>
+ * - Not thread safe (like the extents using it)
+ */
+public class ChunkRegionIndex {
+
+    private static final int MAX_CHUNKS = 16384;
+
+    private static final class Chunk {
+        // A cuboid covers the chunk's columns, and y 0-255
+        private final boolean full;
+        // A cuboid covers the chunk's columns (any y)
+        private final boolean full2D;
+        private final Region[] regions;
+        // The last region which contained a position
+        private int index;
+
+        private Chunk(boolean full, boolean full2D, Region[] regions) {
+            this.full = full;
+            this.full2D = full2D;
+            this.regions = regions;
+        }
+    }
+
+    private final Region[] regions;
+    // minX, minY, minZ, maxX, maxY, maxZ for each region
+    private final int[] bounds;
+    private final boolean[] cuboid;
+    private final Long2ObjectOpenHashMap<Chunk> chunks = new Long2ObjectOpenHashMap<>();
+
+    private int lastX = Integer.MIN_VALUE;
+    private int lastZ = Integer.MIN_VALUE;
+    private Chunk lastChunk;
+
+    public ChunkRegionIndex(Region[] regions) {
+        this.regions = regions;
+        this.bounds = new int[regions.length * 6];
+        this.cuboid = new boolean[regions.length];
+        for (int i = 0, j = 0; i < regions.length; i++) {
+            Region region = regions[i];
+            Vector min = region.getMinimumPoint();
+            Vector max = region.getMaximumPoint();
+            bounds[j++] = min.getBlockX();
+            bounds[j++] = min.getBlockY();
+            bounds[j++] = min.getBlockZ();
+            bounds[j++] = max.getBlockX();
+            bounds[j++] = max.getBlockY();
+            bounds[j++] = max.getBlockZ();
+            cuboid[i] = region instanceof CuboidRegion;
+        }
+    }
+
+    public Region[] getRegions() {
+        return regions;
+    }
+
+    private Chunk getChunk(int cx, int cz) {
+        if (cx == lastX && cz == lastZ) {
+            return lastChunk;
+        }
+        long key = MathMan.pairInt(cx, cz);
+        Chunk chunk = chunks.get(key);
+        if (chunk == null) {
+            if (chunks.size() >= MAX_CHUNKS) {
+                chunks.clear();
+            }
+            chunk = classify(cx, cz);
+            chunks.put(key, chunk);
+        }
+        lastX = cx;
+        lastZ = cz;
+        lastChunk = chunk;
+        return chunk;
+    }
+
+    private Chunk classify(int cx, int cz) {
+        // Use longs, as the bounds of a region may be at the limits of an int
+        long bx = cx << 4;
+        long bz = cz << 4;
+        long tx = bx + 15;
+        long tz = bz + 15;
+        boolean full = false;
+        boolean full2D = false;
+        List<Region> overlapping = new ArrayList<>();
+        for (int i = 0, j = 0; i < regions.length; i++, j += 6) {
+            int minX = bounds[j];
+            int minY = bounds[j + 1];
+            int minZ = bounds[j + 2];
+            int maxX = bounds[j + 3];
+            int maxY = bounds[j + 4];
+            int maxZ = bounds[j + 5];
+            if (maxX < bx || minX > tx || maxZ < bz || minZ > tz) {
+                continue;
+            }
+            overlapping.add(regions[i]);
+            if (cuboid[i] && minX <= bx && maxX >= tx && minZ <= bz && maxZ >= tz) {
+                full2D = true;
+                if (minY <= 0 && maxY >= 255) {
+                    full = true;
+                }
+            }
+        }
+        return new Chunk(full, full2D, overlapping.toArray(new Region[overlapping.size()]));
+    }
+
+    public boolean contains(int x, int y, int z) {
+        Chunk chunk = getChunk(x >> 4, z >> 4);
+        if (chunk.full && y >= 0 && y <= 255) {
+            return true;
+        }
+        Region[] regions = chunk.regions;
+        int length = regions.length;
+        if (length == 0) {
+            return false;
+        }
+        int index = chunk.index;
+        if (regions[index].contains(x, y, z)) {
+            return true;
+        }
+        for (int i = 0; i < length; i++) {
+            if (i != index && regions[i].contains(x, y, z)) {
+                chunk.index = i;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean contains(int x, int z) {
+        Chunk chunk = getChunk(x >> 4, z >> 4);
+        if (chunk.full2D) {
+            return true;
+        }
+        Region[] regions = chunk.regions;
+        int length = regions.length;
+        if (length == 0) {
+            return false;
+        }
+        int index = chunk.index;
+        if (regions[index].contains(x, z)) {
+            return true;
+        }
+        for (int i = 0; i < length; i++) {
+            if (i != index && regions[i].contains(x, z)) {
+                chunk.index = i;
+                return true;
+            }
+        }
+        return false;
+    }
+}
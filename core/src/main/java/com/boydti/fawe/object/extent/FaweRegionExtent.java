@@ -66,13 +66,26 @@ public abstract class FaweRegionExtent extends ResettableExtent {
 
     @Override
     public boolean setBlock(int x, int y, int z, BaseBlock block) throws WorldEditException {
+        if (!canSet(x, y, z)) {
+            return false;
+        }
+        return super.setBlock(x, y, z, block);
+    }
+
+    /**
+     * Check if a block can be set at a position (see {@link BlockSink})<br>
+     * - A position outside the regions counts as a failure
+     *
+     * @return true if the position is in the regions
+     */
+    public final boolean canSet(int x, int y, int z) {
         if (!contains(x, y, z)) {
             if (!limit.MAX_FAILS()) {
                 WEManager.IMP.cancelEditSafe(this, BBC.WORLDEDIT_CANCEL_REASON_OUTSIDE_REGION);
             }
             return false;
         }
-        return super.setBlock(x, y, z, block);
+        return true;
     }
 
     @Override
@@ -23,6 +23,11 @@ public class MemoryCheckingExtent extends AbstractDelegateExtent {
     public boolean setBlock(final Vector location, final BaseBlock block) throws WorldEditException {
         if (super.setBlock(location, block)) {
             if (MemUtil.isMemoryLimited()) {
+                // Give the queue a chance to place pending chunks before cancelling
+                MemUtil.throttle();
+            }
+            // Only reads the heap pools, the queues are checked once per tick
+            if (MemUtil.isMemoryLimitedSlow()) {
                 if (this.player != null) {
                     player.sendMessage(BBC.WORLDEDIT_CANCEL_REASON.format(BBC.WORLDEDIT_CANCEL_REASON_LOW_MEMORY.s()));
                     if (Perm.hasPermission(this.player, "worldedit.fast")) {
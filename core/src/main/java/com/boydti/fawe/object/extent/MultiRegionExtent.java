@@ -8,9 +8,7 @@ import java.util.Collection;
 
 public class MultiRegionExtent extends FaweRegionExtent {
 
-    private Region region;
-    private final Region[] regions;
-    private int index;
+    private final ChunkRegionIndex index;
 
     /**
      * Create a new instance.
@@ -19,49 +17,21 @@ public class MultiRegionExtent extends FaweRegionExtent {
      */
     public MultiRegionExtent(Extent extent, FaweLimit limit, Region[] regions) {
         super(extent, limit);
-        this.index = 0;
-        this.region = regions[0];
-        this.regions = regions;
+        this.index = new ChunkRegionIndex(regions);
     }
 
     @Override
     public boolean contains(int x, int y, int z) {
-        if (region.contains(x, y, z)) {
-            return true;
-        }
-        for (int i = 0; i < regions.length; i++) {
-            if (i != index) {
-                Region current = regions[i];
-                if (current.contains(x, y, z)) {
-                    region = current;
-                    index = i;
-                    return true;
-                }
-            }
-        }
-        return false;
+        return index.contains(x, y, z);
     }
 
     @Override
     public boolean contains(int x, int z) {
-        if (region.contains(x, z)) {
-            return true;
-        }
-        for (int i = 0; i < regions.length; i++) {
-            if (i != index) {
-                Region current = regions[i];
-                if (current.contains(x, z)) {
-                    region = current;
-                    index = i;
-                    return true;
-                }
-            }
-        }
-        return false;
+        return index.contains(x, z);
     }
 
     @Override
     public Collection<Region> getRegions() {
-        return Arrays.asList(regions);
+        return Arrays.asList(index.getRegions());
     }
 }
@@ -81,25 +81,32 @@ public class ProcessedWEExtent extends AbstractDelegateExtent {
 
     @Override
     public boolean setBlock(int x, int y, int z, BaseBlock block) throws WorldEditException {
+        if (!canSet(block)) {
+            return false;
+        }
+        return extent.setBlock(x, y, z, block);
+    }
+
+    /**
+     * Check the limits for setting a block (see {@link BlockSink})
+     *
+     * @param block
+     * @return true if the block can be set
+     * @throws WorldEditException
+     */
+    public final boolean canSet(BaseBlock block) throws WorldEditException {
         CompoundTag nbt = block.getNbtData();
         if (nbt != null) {
             if (!limit.MAX_BLOCKSTATES()) {
                 WEManager.IMP.cancelEdit(this, BBC.WORLDEDIT_CANCEL_REASON_MAX_TILES);
                 return false;
-            } else {
-                if (!limit.MAX_CHANGES()) {
-                    WEManager.IMP.cancelEdit(this, BBC.WORLDEDIT_CANCEL_REASON_MAX_CHANGES);
-                    return false;
-                }
-                return extent.setBlock(x, y, z, block);
             }
         }
         if (!limit.MAX_CHANGES()) {
             WEManager.IMP.cancelEdit(this, BBC.WORLDEDIT_CANCEL_REASON_MAX_CHANGES);
             return false;
-        } else {
-            return extent.setBlock(x, y, z, block);
         }
+        return true;
     }
 
     @Override
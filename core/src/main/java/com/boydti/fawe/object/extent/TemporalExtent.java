@@ -1,14 +1,13 @@
 package com.boydti.fawe.object.extent;
 
+import com.boydti.fawe.FaweCache;
 import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.Vector2D;
 import com.sk89q.worldedit.blocks.BaseBlock;
-import com.sk89q.worldedit.blocks.BlockMaterial;
 import com.sk89q.worldedit.extent.AbstractDelegateExtent;
 import com.sk89q.worldedit.extent.Extent;
 import com.sk89q.worldedit.world.biome.BaseBiome;
-import com.sk89q.worldedit.world.registry.BundledBlockData;
 
 public class TemporalExtent extends AbstractDelegateExtent {
     private int x, y, z = Integer.MAX_VALUE;
@@ -43,11 +42,7 @@ public class TemporalExtent extends AbstractDelegateExtent {
     @Override
     public int getBrightness(int x, int y, int z) {
         if (this.x == x && this.y == y && this.z == z) {
-            BlockMaterial block = BundledBlockData.getInstance().getMaterialById(this.block.getId());
-            if (block == null) {
-                return 15;
-            }
-            return Math.min(15, block.getLightValue());
+            return FaweCache.getBrightness(this.block.getId());
         }
         return super.getBrightness(x, y, z);
     }
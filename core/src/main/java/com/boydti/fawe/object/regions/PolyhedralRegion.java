@@ -27,6 +27,7 @@ import com.sk89q.worldedit.regions.RegionOperationException;
 import com.sk89q.worldedit.regions.polyhedron.Edge;
 import com.sk89q.worldedit.world.World;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
@@ -313,6 +314,76 @@ public class PolyhedralRegion extends AbstractRegion {
         return false;
     }
 
+    /**
+     * A block is in the region if it touches a triangle of the hull, so each triangle is clipped to the row to find
+     * which blocks touch it, then the runs are merged
+     */
+    @Override
+    public void forEachSpan(int y, int z, int minX, int maxX, SpanVisitor visitor) {
+        if (!isDefined()) {
+            return;
+        }
+        final Vector min = getMinimumPoint();
+        final Vector max = getMaximumPoint();
+        if (y < min.getBlockY() || y > max.getBlockY() || z < min.getBlockZ() || z > max.getBlockZ()) {
+            return;
+        }
+        minX = Math.max(minX, min.getBlockX());
+        maxX = Math.min(maxX, max.getBlockX());
+        if (minX > maxX) {
+            return;
+        }
+        int[] span = new int[2];
+        long[] runs = new long[8];
+        int size = 0;
+        for (Triangle triangle : triangles) {
+            if (!triangle.getSpan(y, z, span)) {
+                continue;
+            }
+            int start = Math.max(minX, span[0]);
+            int end = Math.min(maxX, span[1]);
+            // Correct the ends against contains, which the estimate may be off by one from
+            while (start <= end && !triangle.contains(MutableBlockVector.get(start, y, z))) {
+                start++;
+            }
+            while (end >= start && !triangle.contains(MutableBlockVector.get(end, y, z))) {
+                end--;
+            }
+            if (start > end) {
+                continue;
+            }
+            while (start > minX && triangle.contains(MutableBlockVector.get(start - 1, y, z))) {
+                start--;
+            }
+            while (end < maxX && triangle.contains(MutableBlockVector.get(end + 1, y, z))) {
+                end++;
+            }
+            if (size == runs.length) {
+                runs = Arrays.copyOf(runs, size << 1);
+            }
+            // Sorts by start
+            runs[size++] = ((long) start << 32) | (end & 0xFFFFFFFFL);
+        }
+        if (size == 0) {
+            return;
+        }
+        Arrays.sort(runs, 0, size);
+        int start = (int) (runs[0] >> 32);
+        int end = (int) runs[0];
+        for (int i = 1; i < size; i++) {
+            int nextStart = (int) (runs[i] >> 32);
+            int nextEnd = (int) runs[i];
+            if (nextStart > end + 1) {
+                visitor.run(start, end, y, z);
+                start = nextStart;
+                end = nextEnd;
+            } else if (nextEnd > end) {
+                end = nextEnd;
+            }
+        }
+        visitor.run(start, end, y, z);
+    }
+
     public Collection<Vector> getVertices() {
         if (vertexBacklog.isEmpty()) {
             return vertices;
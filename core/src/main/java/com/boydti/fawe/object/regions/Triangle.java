@@ -59,13 +59,88 @@ public class Triangle {
         return new Vector(verts[index]);
     }
 
-    public boolean contains(Vector pos) {
+    // Synchronized as the box test uses the scratch arrays above (see PolyhedralRegion#forEachSpan)
+    public synchronized boolean contains(Vector pos) {
         center[0] = pos.getBlockX() + RADIUS;
         center[1] = pos.getBlockY() + RADIUS;
         center[2] = pos.getBlockZ() + RADIUS;
         return overlaps(center, radius, verts);
     }
 
+    private static final double EPSILON = 1e-6;
+
+    // Scratch polygons for getSpan, per thread as a region may be iterated by several threads at once
+    private static final ThreadLocal<double[][][]> CLIP_BUFFERS = new ThreadLocal<double[][][]>() {
+        @Override
+        protected double[][][] initialValue() {
+            return new double[2][8][3];
+        }
+    };
+
+    /**
+     * Get the range of x where a block in a row may touch this triangle<br>
+     * - The triangle is clipped to the row's slab (y to y + 1, z to z + 1), then the x range of what is left is taken<br>
+     * - The ends may be off by one from {@link #contains(Vector)} due to rounding, so should be checked against it
+     *
+     * @param y
+     * @param z
+     * @param span the first and last x (inclusive)
+     * @return false if no block in the row touches the triangle
+     */
+    public boolean getSpan(int y, int z, int[] span) {
+        double[][][] buffers = CLIP_BUFFERS.get();
+        double[][] in = buffers[0];
+        double[][] out = buffers[1];
+        for (int i = 0; i < 3; i++) {
+            System.arraycopy(verts[i], 0, in[i], 0, 3);
+        }
+        int n = 3;
+        // Widened slightly so a triangle that only touches the slab is not lost to rounding
+        n = clip(in, n, out, 1, y - EPSILON, true);
+        n = clip(out, n, in, 1, y + 1 + EPSILON, false);
+        n = clip(in, n, out, 2, z - EPSILON, true);
+        n = clip(out, n, in, 2, z + 1 + EPSILON, false);
+        if (n == 0) {
+            return false;
+        }
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            min = Math.min(min, in[i][0]);
+            max = Math.max(max, in[i][0]);
+        }
+        // The block at x covers [x, x + 1]
+        span[0] = (int) Math.ceil(min) - 1;
+        span[1] = (int) Math.floor(max);
+        return true;
+    }
+
+    /**
+     * Clip a polygon to one side of an axis aligned plane (keeping points on the plane)
+     *
+     * @return the number of points left
+     */
+    private static int clip(double[][] in, int n, double[][] out, int axis, double value, boolean above) {
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            double[] p = in[i];
+            double[] q = in[(i + 1) % n];
+            double dp = above ? p[axis] - value : value - p[axis];
+            double dq = above ? q[axis] - value : value - q[axis];
+            if (dp >= 0) {
+                System.arraycopy(p, 0, out[size++], 0, 3);
+            }
+            if ((dp >= 0) != (dq >= 0)) {
+                double t = dp / (dp - dq);
+                double[] o = out[size++];
+                o[0] = p[0] + (q[0] - p[0]) * t;
+                o[1] = p[1] + (q[1] - p[1]) * t;
+                o[2] = p[2] + (q[2] - p[2]) * t;
+            }
+        }
+        return size;
+    }
+
     private void sub(double[] dest, double[] v1, double[] v2) {
         dest[0] = v1[0] - v2[0];
         dest[1] = v1[1] - v2[1];
@@ -1,56 +1,55 @@
 package com.boydti.fawe.object.schematic.visualizer;
 
 import com.boydti.fawe.config.BBC;
+import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.jnbt.anvil.MCAChunk;
-import com.boydti.fawe.jnbt.anvil.MCAQueue;
 import com.boydti.fawe.object.*;
 import com.boydti.fawe.object.brush.visualization.ImmutableVirtualWorld;
 import com.boydti.fawe.object.clipboard.LazyClipboardHolder;
 import com.boydti.fawe.object.clipboard.MultiClipboardHolder;
 import com.boydti.fawe.object.clipboard.URIClipboardHolder;
 import com.boydti.fawe.object.exception.FaweException;
-import com.boydti.fawe.object.io.NonCloseableInputStream;
 import com.boydti.fawe.object.queue.LazyFaweChunk;
-import com.boydti.fawe.object.schematic.Schematic;
 import com.boydti.fawe.util.*;
 import com.google.common.io.ByteSource;
 import com.google.common.io.Files;
-import com.sk89q.jnbt.NBTInputStream;
-import com.sk89q.jnbt.NBTOutputStream;
 import com.sk89q.worldedit.*;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.blocks.BlockID;
 import com.sk89q.worldedit.entity.Player;
 import com.sk89q.worldedit.event.platform.InputType;
 import com.sk89q.worldedit.event.platform.PlayerInputEvent;
-import com.sk89q.worldedit.extent.clipboard.Clipboard;
 import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormat;
-import com.sk89q.worldedit.extent.clipboard.io.ClipboardReader;
 import com.sk89q.worldedit.session.ClipboardHolder;
 import com.sk89q.worldedit.util.Location;
 import com.sk89q.worldedit.util.TargetBlock;
 import com.sk89q.worldedit.world.registry.WorldData;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectIterator;
 import java.io.*;
 import java.net.URI;
-import java.nio.file.LinkOption;
-import java.nio.file.Path;
 import java.util.*;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
- * An Immutable virtual world used to display & select schematics
+ * An Immutable virtual world used to display & select schematics<br>
+ * - The converted schematics are shared with other viewers (see {@link SchemVisCache})<br>
+ * - Only chunks around the viewer are kept, as lightweight copies of the shared chunks
  */
 public class SchemVis extends ImmutableVirtualWorld {
-    private static final WeakHashMap<File, Integer> DIMENSION_CACHE = new WeakHashMap<>();
+    // Schematics which are still being converted are placed once they're done
+    private static final int CONVERT_PRIORITY = Character.MAX_VALUE;
 
     private final WorldData worldData;
 
     private final Long2ObjectOpenHashMap<Map.Entry<File, Long>> files;
-    private final Long2ObjectOpenHashMap<MCAChunk> chunks; // TODO use soft references OR clear chunks outside view distance
+    // The chunks shown to this viewer, least recently used first
+    private final Long2ObjectLinkedOpenHashMap<MCAChunk> chunks;
+    private final int viewDistance;
+    private boolean closed;
 
     private final MutableBlockVector2D lastPos = new MutableBlockVector2D();
     private final FawePlayer player;
@@ -72,7 +71,8 @@ public class SchemVis extends ImmutableVirtualWorld {
 
     public SchemVis(FawePlayer player) {
         this.files = new Long2ObjectOpenHashMap<>();
-        this.chunks = new Long2ObjectOpenHashMap<>();
+        this.chunks = new Long2ObjectLinkedOpenHashMap<>();
+        this.viewDistance = Math.max(1, Settings.IMP.SCHEMATIC_BROWSER.VIEW_DISTANCE);
         this.player = player;
         this.worldData = player.getWorld().getWorldData();
 
@@ -111,7 +111,7 @@ public class SchemVis extends ImmutableVirtualWorld {
             int chunkX = target.getBlockX() >> 4;
             int chunkZ = target.getBlockZ() >> 4;
             long pos = MathMan.pairInt(chunkX, chunkZ);
-            Map.Entry<File, Long> entry = files.get(pos);
+            Map.Entry<File, Long> entry = getFileEntry(pos);
             if (entry != null) {
                 File cachedFile = entry.getKey();
                 String filename = cachedFile.getName();
@@ -182,16 +182,13 @@ public class SchemVis extends ImmutableVirtualWorld {
                                 if (curFileEntry != null) {
                                     Boolean selected = select.get(curFileEntry.getKey());
                                     if (selected != null) {
-                                        if (!selected) {
-                                            iter.remove();
-                                        } else {
-                                            select(mcaChunkEntry.getValue());
-                                        }
+                                        // Copied again (selected or not) when it is sent
+                                        iter.remove();
                                         toSend.add(curChunkPos);
                                     }
                                 }
                             }
-                            for (long curChunkPos : toSend) send(packetQueue, MathMan.unpairIntX(curChunkPos), MathMan.unpairIntY(curChunkPos));
+                            for (long curChunkPos : toSend) send(packetQueue, MathMan.unpairIntX(curChunkPos), MathMan.unpairIntY(curChunkPos), 0);
                         }
                     } catch (IOException e) {
                         throw new RuntimeException(e);
@@ -202,30 +199,25 @@ public class SchemVis extends ImmutableVirtualWorld {
     }
 
     /**
-     * Discard chunks outside FOV
+     * Discard the least recently used chunks outside the view distance
      */
-    private void clean() {
-        if (chunks.size() > 225) {
-            TaskManager.IMP.sync(() -> {
-                if (chunks.size() > 225) {
-                    synchronized (SchemVis.this) {
-                        FaweLocation pos = player.getLocation();
-                        int centerX = pos.x >> 4;
-                        int centerZ = pos.z >> 4;
-                        ObjectIterator<Long2ObjectMap.Entry<MCAChunk>> iter = chunks.long2ObjectEntrySet().fastIterator();
-                        while (iter.hasNext()) {
-                            Long2ObjectMap.Entry<MCAChunk> entry = iter.next();
-                            long pair = entry.getLongKey();
-                            int chunkX = MathMan.unpairIntX(pair);
-                            int chunkZ = MathMan.unpairIntY(pair);
-                            if (Math.abs(centerX - chunkX) > 15 || Math.abs(centerZ - chunkZ) > 15) {
-                                iter.remove();
-                            }
-                        }
-                    }
-                }
-                return null;
-            });
+    private void evict() {
+        int range = (viewDistance << 1) + 1;
+        int max = range * range;
+        if (chunks.size() <= max) {
+            return;
+        }
+        FaweLocation pos = player.getLocation();
+        int centerX = (pos.x >> 4) - chunkOffset.getBlockX();
+        int centerZ = (pos.z >> 4) - chunkOffset.getBlockZ();
+        ObjectIterator<Long2ObjectMap.Entry<MCAChunk>> iter = chunks.long2ObjectEntrySet().fastIterator();
+        while (chunks.size() > max && iter.hasNext()) {
+            long pair = iter.next().getLongKey();
+            int chunkX = MathMan.unpairIntX(pair);
+            int chunkZ = MathMan.unpairIntY(pair);
+            if (Math.abs(centerX - chunkX) > viewDistance || Math.abs(centerZ - chunkZ) > viewDistance) {
+                iter.remove();
+            }
         }
     }
 
@@ -235,8 +227,8 @@ public class SchemVis extends ImmutableVirtualWorld {
      * @param chunkX
      * @param chunkZ
      */
-    private void send(FaweQueue packetQueue, int chunkX, int chunkZ) {
-        TaskManager.IMP.getPublicForkJoinPool().submit(() -> {
+    private void send(FaweQueue packetQueue, int chunkX, int chunkZ, int priority) {
+        SchemVisCache.IMP.submit(priority, () -> {
             try {
                 int OX = chunkOffset.getBlockX();
                 int OZ = chunkOffset.getBlockZ();
@@ -265,10 +257,14 @@ public class SchemVis extends ImmutableVirtualWorld {
      */
     private File getFile(int chunkX, int chunkZ) {
         long pair = MathMan.pairInt(chunkX, chunkZ);
-        Map.Entry<File, Long> entry = files.get(pair);
+        Map.Entry<File, Long> entry = getFileEntry(pair);
         return entry != null ? entry.getKey() : null;
     }
 
+    private synchronized Map.Entry<File, Long> getFileEntry(long pair) {
+        return files.get(pair);
+    }
+
     private Map.Entry<File, Long> getEntry(File file, long position) {
         return new AbstractMap.SimpleEntry(file, position);
     }
@@ -289,27 +285,6 @@ public class SchemVis extends ImmutableVirtualWorld {
         }
     }
 
-    /**
-     * Cache a chunk
-     * @param file
-     * @param chunk
-     */
-    private void cacheChunk(File file, MCAChunk chunk, boolean selected) {
-        long pair = MathMan.pairInt(chunk.getX(), chunk.getZ());
-        // Light chunk
-        for (int layer = 0; layer < 16; layer++) {
-            if (chunk.skyLight[layer] != null) {
-                Arrays.fill(chunk.skyLight[layer], (byte) 255);
-            }
-        }
-        if (selected) {
-            select(chunk);
-        }
-        synchronized (this) {
-            chunks.put(pair, chunk);
-        }
-    }
-
     /**
      * Get the next free position for a schematic of the provided dimensions
      * @param schemDimensions
@@ -363,143 +338,96 @@ public class SchemVis extends ImmutableVirtualWorld {
         return false;
     }
 
+    /**
+     * Add a schematic to the world<br>
+     * - Schematics which haven't been converted yet are converted in the background, and placed once they're done
+     *
+     * @param file
+     * @throws IOException
+     */
     public void add(File file) throws IOException {
         File cached = new File(file.getParentFile(), "." + file.getName() + ".cached");
-        Integer dimensionPair = DIMENSION_CACHE.get(file);
-        if (dimensionPair != null) {
-            int width = (char) MathMan.unpairX(dimensionPair);
-            int length = (char) MathMan.unpairY(dimensionPair);
-            BlockVector2D dimensions = new BlockVector2D(width, length);
-            BlockVector2D offset = registerAndGetChunkOffset(dimensions, cached);
+        BlockVector2D dimensions = SchemVisCache.IMP.getDimensions(file, cached);
+        if (dimensions != null) {
+            synchronized (this) {
+                registerAndGetChunkOffset(dimensions, cached);
+            }
             return;
         }
-        if (cached.exists() && file.lastModified() <= cached.lastModified()) {
-            try (InputStream fis = new BufferedInputStream(new FileInputStream(cached), 4)) {
-                BlockVector2D dimensions = new BlockVector2D(IOUtil.readVarInt(fis), IOUtil.readVarInt(fis));
-                DIMENSION_CACHE.put(file, MathMan.pair((short) dimensions.getBlockX(), (short) dimensions.getBlockZ()));
-                BlockVector2D offset = registerAndGetChunkOffset(dimensions, cached);
+        SchemVisCache.IMP.submit(CONVERT_PRIORITY, () -> {
+            synchronized (this) {
+                if (closed) return;
             }
-        } else {
-            try {
-                player.sendMessage(BBC.getPrefix() + "Converting: " + file);
-                cached.createNewFile();
-                try (FileInputStream in = new FileInputStream(file)) {
-                    ClipboardFormat format = ClipboardFormat.findByFile(file);
-                    if (format != null) {
-                        ClipboardReader reader = format.getReader(in);
-                        Clipboard clipboard = reader.read(worldData);
-                        clipboard.setOrigin(clipboard.getMinimumPoint());
-                        try {
-                            MCAQueue queue = new MCAQueue(null, null, false);
-                            BlockVector2D dimensions = clipboard.getDimensions().toVector2D().toBlockVector2D();
-                            BlockVector2D offset = registerAndGetChunkOffset(dimensions, cached);
-                            new Schematic(clipboard).paste(queue, Vector.ZERO, true);
-                            try (FileOutputStream fos = new FileOutputStream(cached)) {
-                                IOUtil.writeVarInt(fos, dimensions.getBlockX());
-                                IOUtil.writeVarInt(fos, dimensions.getBlockZ());
-
-                                try (FaweOutputStream cos = MainUtil.getCompressedOS(fos, 2)) {
-                                    NBTOutputStream nos = new NBTOutputStream((DataOutput) cos);
-                                    Collection<FaweChunk> writeChunks = queue.getFaweChunks();
-                                    cos.writeInt(writeChunks.size());
-
-                                    boolean selected = isSelected(file);
-
-                                    for (FaweChunk chunk : writeChunks) {
-                                        MCAChunk mcaChunk = ((MCAChunk) chunk);
-                                        mcaChunk.write(nos);
-                                        mcaChunk.setLoc(this, mcaChunk.getX() + offset.getBlockX(), mcaChunk.getZ() + offset.getBlockZ());
-                                        if (Math.abs(mcaChunk.getX()) <= 15 && Math.abs(mcaChunk.getZ()) <= 15) {
-                                            cacheChunk(cached, mcaChunk, selected);
-                                        }
-                                    }
-                                }
-                            }
-                            if (System.getProperty("os.name").contains("Windows")) {
-                                Path path = cached.toPath();
-                                Object hidden = java.nio.file.Files.getAttribute(path, "dos:hidden", LinkOption.NOFOLLOW_LINKS);
-                                if (hidden != null) {
-                                    //link file to DosFileAttributes
-                                    java.nio.file.Files.setAttribute(path, "dos:hidden", Boolean.TRUE, LinkOption.NOFOLLOW_LINKS);
-                                }
-                            }
-
-                            DIMENSION_CACHE.put(file, MathMan.pair((short) dimensions.getBlockX(), (short) dimensions.getBlockZ()));
-                        } finally {
-                            if (clipboard instanceof Closeable) {
-                                ((Closeable) clipboard).close();
-                            }
+            player.sendMessage(BBC.getPrefix() + "Converting: " + file);
+            BlockVector2D converted = SchemVisCache.IMP.convert(file, cached, worldData);
+            if (converted == null) return;
+            BlockVector2D offset;
+            synchronized (this) {
+                if (closed) return;
+                offset = registerAndGetChunkOffset(converted, cached);
+            }
+            // Show it if it's in view
+            FaweQueue packetQueue = SetQueue.IMP.getNewQueue(player.getWorld(), true, false);
+            if (packetQueue.supports(Capability.CHUNK_PACKETS)) {
+                FaweLocation position = player.getLocation();
+                int pcx = (position.x >> 4) - chunkOffset.getBlockX();
+                int pcz = (position.z >> 4) - chunkOffset.getBlockZ();
+                for (int cx = offset.getBlockX(); cx <= offset.getBlockX() + (converted.getBlockX() >> 4); cx++) {
+                    for (int cz = offset.getBlockZ(); cz <= offset.getBlockZ() + (converted.getBlockZ() >> 4); cz++) {
+                        int distance = Math.max(Math.abs(cx - pcx), Math.abs(cz - pcz));
+                        if (distance <= viewDistance) {
+                            send(packetQueue, cx, cz, distance);
                         }
                     }
                 }
-            } catch (Throwable e) {
-                e.printStackTrace();
-                cached.delete();
             }
-        }
+        });
+    }
+
+    private synchronized MCAChunk getCachedChunk(long pair) {
+        return chunks.getAndMoveToLast(pair);
     }
 
-    private synchronized MCAChunk getCachedChunk(int chunkX, int chunkZ) {
-        return chunks.get(MathMan.pairInt(chunkX, chunkZ));
+    private synchronized MCAChunk cacheChunk(long pair, MCAChunk chunk) {
+        MCAChunk existing = chunks.getAndMoveToLast(pair);
+        if (existing != null) return existing;
+        chunks.putAndMoveToLast(pair, chunk);
+        evict();
+        return chunk;
     }
 
     private MCAChunk getChunk(int chunkX, int chunkZ) {
         long pair = MathMan.pairInt(chunkX, chunkZ);
         // Check cached
-        MCAChunk chunk = getCachedChunk(chunkX, chunkZ);
+        MCAChunk chunk = getCachedChunk(pair);
         if (chunk != null) return chunk;
 
-        // We need to cache it
-        Map.Entry<File, Long> entry = files.get(pair);
-        if (entry != null) {
-            File cached = entry.getKey();
-
-            // Guard caching by other threads
-            synchronized (cached) {
-                chunk = getCachedChunk(chunkX, chunkZ);
-
-                // Read chunks from disk
-                if (chunk == null) {
-                    clean();
-                    String filename = cached.getName();
-                    File file = new File(cached.getParentFile(), filename.substring(1, filename.length() - 7));
-                    boolean selected = isSelected(file);
-
-                    long origin = entry.getValue();
-                    int OCX = MathMan.unpairIntX(origin);
-                    int OCZ = MathMan.unpairIntY(origin);
-                    try {
-                        try (FileInputStream fis = new FileInputStream(cached)) {
-                            BlockVector2D dimensions = new BlockVector2D(IOUtil.readVarInt(fis), IOUtil.readVarInt(fis));
-                            try (FaweInputStream in = MainUtil.getCompressedIS(fis)) {
-                                NonCloseableInputStream nonCloseable = new NonCloseableInputStream(in);
-                                try (NBTInputStream nis = new NBTInputStream(nonCloseable)) {
-
-                                    int numChunks = in.readInt();
-                                    for (int i = 0; i < numChunks; i++) {
-                                        MCAChunk mcaChunk = new MCAChunk(nis, null, 0, 0, true);
-                                        mcaChunk.setLoc(this, mcaChunk.getX() + OCX, mcaChunk.getZ() + OCZ);
-                                        cacheChunk(cached, mcaChunk, selected);
-                                    }
-                                }
-                            }
-                        }
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                    // Return the cached chunk, or an empty one
-                    chunk = getCachedChunk(chunkX, chunkZ);
-                    if (chunk == null) {
-                        // TODO use shared chunk
-                        // TODO synchronize on sending chunk packet
-                        cacheChunk(cached, chunk = new MCAChunk(this, chunkX, chunkZ), selected);
-                    }
-                }
-            }
-        } else {
+        Map.Entry<File, Long> entry = getFileEntry(pair);
+        if (entry == null) {
+            return new MCAChunk(this, chunkX, chunkZ);
+        }
+        File cached = entry.getKey();
+        long origin = entry.getValue();
+        int OCX = MathMan.unpairIntX(origin);
+        int OCZ = MathMan.unpairIntY(origin);
+        MCAChunk shared = null;
+        try {
+            shared = SchemVisCache.IMP.get(cached).getChunk(chunkX - OCX, chunkZ - OCZ);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (shared == null) {
+            // The schematic has no blocks in this chunk (or failed to load), so there is nothing to share
             chunk = new MCAChunk(this, chunkX, chunkZ);
+        } else if (isSelected(getRealFile(cached))) {
+            chunk = new MCAChunk(shared, false);
+            select(chunk);
+        } else {
+            // The arrays are shared, this chunk is only read
+            chunk = new MCAChunk(shared, true);
         }
-        return chunk;
+        chunk.setLoc(this, chunkX, chunkZ);
+        return cacheChunk(pair, chunk);
     }
 
     /**
@@ -558,16 +486,14 @@ public class SchemVis extends ImmutableVirtualWorld {
         int pcx = (position.x >> 4) - OX;
         int pcz = (position.z >> 4) - OZ;
 
-        int scx = pcx - 15;
-        int scz = pcz - 15;
-        int ecx = pcx + 15;
-        int ecz = pcz + 15;
-
-        for (int cz = scz; cz <= ecz; cz++) {
-            for (int cx = scx; cx <= ecx; cx++) {
-                final int finalCX = cx;
-                final int finalCZ = cz;
-                send(packetQueue, finalCX, finalCZ);
+        // Closest chunks first
+        send(packetQueue, pcx, pcz, 0);
+        for (int r = 1; r <= viewDistance; r++) {
+            for (int i = -r; i < r; i++) {
+                send(packetQueue, pcx + i, pcz - r, r);
+                send(packetQueue, pcx + r, pcz + i, r);
+                send(packetQueue, pcx - i, pcz + r, r);
+                send(packetQueue, pcx - r, pcz - i, r);
             }
         }
     }
@@ -597,6 +523,7 @@ public class SchemVis extends ImmutableVirtualWorld {
      */
     @Override
     public synchronized void close(boolean update) throws IOException {
+        closed = true;
         clear();
         chunks.clear();
         files.clear();
@@ -611,10 +538,10 @@ public class SchemVis extends ImmutableVirtualWorld {
             int pcx = (position.x >> 4) - OX;
             int pcz = (position.z >> 4) - OZ;
 
-            int scx = pcx - 15;
-            int scz = pcz - 15;
-            int ecx = pcx + 15;
-            int ecz = pcz + 15;
+            int scx = pcx - viewDistance;
+            int scz = pcz - viewDistance;
+            int ecx = pcx + viewDistance;
+            int ecz = pcz + viewDistance;
 
             for (int cz = scz; cz <= ecz; cz++) {
                 for (int cx = scx; cx <= ecx; cx++) {
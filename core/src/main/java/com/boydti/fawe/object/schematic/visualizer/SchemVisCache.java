@@ -0,0 +1,329 @@
+package com.boydti.fawe.object.schematic.visualizer;
+
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.jnbt.anvil.MCAChunk;
+import com.boydti.fawe.jnbt.anvil.MCAQueue;
+import com.boydti.fawe.object.FaweChunk;
+import com.boydti.fawe.object.FaweInputStream;
+import com.boydti.fawe.object.FaweOutputStream;
+import com.boydti.fawe.object.io.NonCloseableInputStream;
+import com.boydti.fawe.object.schematic.Schematic;
+import com.boydti.fawe.util.IOUtil;
+import com.boydti.fawe.util.MainUtil;
+import com.boydti.fawe.util.MathMan;
+import com.sk89q.jnbt.NBTInputStream;
+import com.sk89q.jnbt.NBTOutputStream;
+import com.sk89q.worldedit.BlockVector2D;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormat;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardReader;
+import com.sk89q.worldedit.world.registry.WorldData;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The converted schematics shown by {@link SchemVis}, shared by everyone browsing<br>
+ * - Schematics are converted to chunks once (the .cached file next to the schematic)<br>
+ * - Loaded chunks are kept in a least recently used cache, bounded by the total number of chunks<br>
+ * - Conversion and loading run on a small pool, where lower priorities (e.g. the distance to the viewer) run first
+ */
+public class SchemVisCache {
+
+    public static final SchemVisCache IMP = new SchemVisCache();
+
+    /**
+     * The chunks of a converted schematic, relative to the schematic's origin<br>
+     * - The chunks are shared, so they must not be modified (copy them first)
+     */
+    public static class CachedSchematic {
+        private final long modified;
+        private final Long2ObjectOpenHashMap<MCAChunk> chunks;
+
+        private CachedSchematic(long modified, Long2ObjectOpenHashMap<MCAChunk> chunks) {
+            this.modified = modified;
+            this.chunks = chunks;
+        }
+
+        /**
+         * @param chunkX relative to the schematic
+         * @param chunkZ relative to the schematic
+         * @return the chunk, or null if the schematic has no blocks there
+         */
+        public MCAChunk getChunk(int chunkX, int chunkZ) {
+            return chunks.get(MathMan.pairInt(chunkX, chunkZ));
+        }
+
+        public int size() {
+            return chunks.size();
+        }
+    }
+
+    private static class Task implements Runnable, Comparable<Task> {
+        private static final AtomicLong ORDER = new AtomicLong();
+
+        private final int priority;
+        private final long order = ORDER.getAndIncrement();
+        private final Runnable task;
+
+        private Task(int priority, Runnable task) {
+            this.priority = priority;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(order, other.order);
+        }
+    }
+
+    // Schematic file -> (last modified, width and length)
+    private final Map<File, long[]> dimensions = new ConcurrentHashMap<>();
+    private final LinkedHashMap<File, CachedSchematic> schematics = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<File, FutureTask<CachedSchematic>> loading = new HashMap<>();
+    private final ThreadPoolExecutor executor;
+    private int totalChunks;
+
+    private SchemVisCache() {
+        int threads = Math.max(1, Settings.IMP.SCHEMATIC_BROWSER.THREADS);
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "FAWE Schematic Browser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Run a task on the browser's pool
+     *
+     * @param priority tasks with a lower priority run first
+     * @param task
+     */
+    public void submit(int priority, Runnable task) {
+        executor.execute(new Task(priority, task));
+    }
+
+    /**
+     * Get the dimensions of a schematic which has already been converted
+     *
+     * @param file   the schematic
+     * @param cached the converted file
+     * @return the dimensions, or null if the schematic needs to be converted
+     * @throws IOException
+     */
+    public BlockVector2D getDimensions(File file, File cached) throws IOException {
+        long modified = file.lastModified();
+        long[] known = dimensions.get(file);
+        if (known != null && known[0] == modified) {
+            return new BlockVector2D((char) MathMan.unpairX((int) known[1]), (char) MathMan.unpairY((int) known[1]));
+        }
+        if (cached.exists() && modified <= cached.lastModified()) {
+            try (InputStream fis = new BufferedInputStream(new FileInputStream(cached), 4)) {
+                BlockVector2D value = new BlockVector2D(IOUtil.readVarInt(fis), IOUtil.readVarInt(fis));
+                putDimensions(file, modified, value);
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private void putDimensions(File file, long modified, BlockVector2D value) {
+        dimensions.put(file, new long[]{modified, MathMan.pair((short) value.getBlockX(), (short) value.getBlockZ())});
+    }
+
+    /**
+     * Convert a schematic to chunks, and write them to the cached file
+     *
+     * @param file       the schematic
+     * @param cached     the converted file
+     * @param worldData
+     * @return the dimensions, or null if the file isn't a schematic (or could not be read)
+     */
+    public BlockVector2D convert(File file, File cached, WorldData worldData) {
+        long modified = file.lastModified();
+        try {
+            cached.createNewFile();
+            ClipboardFormat format = ClipboardFormat.findByFile(file);
+            if (format == null) {
+                return null;
+            }
+            Clipboard clipboard;
+            try (FileInputStream in = new FileInputStream(file)) {
+                ClipboardReader reader = format.getReader(in);
+                clipboard = reader.read(worldData);
+            }
+            clipboard.setOrigin(clipboard.getMinimumPoint());
+            try {
+                MCAQueue queue = new MCAQueue(null, null, false);
+                BlockVector2D dimensions = clipboard.getDimensions().toVector2D().toBlockVector2D();
+                new Schematic(clipboard).paste(queue, Vector.ZERO, true);
+                Long2ObjectOpenHashMap<MCAChunk> chunks = new Long2ObjectOpenHashMap<>();
+                try (FileOutputStream fos = new FileOutputStream(cached)) {
+                    IOUtil.writeVarInt(fos, dimensions.getBlockX());
+                    IOUtil.writeVarInt(fos, dimensions.getBlockZ());
+
+                    try (FaweOutputStream cos = MainUtil.getCompressedOS(fos, 2)) {
+                        NBTOutputStream nos = new NBTOutputStream((DataOutput) cos);
+                        Collection<FaweChunk> writeChunks = queue.getFaweChunks();
+                        cos.writeInt(writeChunks.size());
+                        for (FaweChunk chunk : writeChunks) {
+                            MCAChunk mcaChunk = ((MCAChunk) chunk);
+                            mcaChunk.write(nos);
+                            add(chunks, mcaChunk);
+                        }
+                    }
+                }
+                if (System.getProperty("os.name").contains("Windows")) {
+                    Path path = cached.toPath();
+                    Object hidden = java.nio.file.Files.getAttribute(path, "dos:hidden", LinkOption.NOFOLLOW_LINKS);
+                    if (hidden != null) {
+                        //link file to DosFileAttributes
+                        java.nio.file.Files.setAttribute(path, "dos:hidden", Boolean.TRUE, LinkOption.NOFOLLOW_LINKS);
+                    }
+                }
+                putDimensions(file, modified, dimensions);
+                put(cached, new CachedSchematic(cached.lastModified(), chunks));
+                return dimensions;
+            } finally {
+                if (clipboard instanceof Closeable) {
+                    ((Closeable) clipboard).close();
+                }
+            }
+        } catch (Throwable e) {
+            e.printStackTrace();
+            cached.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Get the chunks of a converted schematic, reading them if they aren't cached<br>
+     * - Concurrent requests for the same file share a single read
+     *
+     * @param cached the converted file
+     * @return the schematic
+     * @throws IOException
+     */
+    public CachedSchematic get(File cached) throws IOException {
+        FutureTask<CachedSchematic> task;
+        boolean owner = false;
+        synchronized (this) {
+            CachedSchematic value = schematics.get(cached);
+            if (value != null && value.modified == cached.lastModified()) {
+                return value;
+            }
+            task = loading.get(cached);
+            if (task == null) {
+                task = new FutureTask<>(() -> load(cached));
+                loading.put(cached, task);
+                owner = true;
+            }
+        }
+        if (owner) {
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    loading.remove(cached);
+                }
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private CachedSchematic load(File cached) throws IOException {
+        long modified = cached.lastModified();
+        Long2ObjectOpenHashMap<MCAChunk> chunks = new Long2ObjectOpenHashMap<>();
+        try (FileInputStream fis = new FileInputStream(cached)) {
+            // Dimensions
+            IOUtil.readVarInt(fis);
+            IOUtil.readVarInt(fis);
+            try (FaweInputStream in = MainUtil.getCompressedIS(fis)) {
+                NonCloseableInputStream nonCloseable = new NonCloseableInputStream(in);
+                try (NBTInputStream nis = new NBTInputStream(nonCloseable)) {
+                    int numChunks = in.readInt();
+                    for (int i = 0; i < numChunks; i++) {
+                        add(chunks, new MCAChunk(nis, null, 0, 0, true));
+                    }
+                }
+            }
+        }
+        CachedSchematic value = new CachedSchematic(modified, chunks);
+        put(cached, value);
+        return value;
+    }
+
+    private void add(Long2ObjectOpenHashMap<MCAChunk> chunks, MCAChunk chunk) {
+        // Light chunk
+        for (int layer = 0; layer < 16; layer++) {
+            if (chunk.skyLight[layer] != null) {
+                Arrays.fill(chunk.skyLight[layer], (byte) 255);
+            }
+        }
+        chunks.put(MathMan.pairInt(chunk.getX(), chunk.getZ()), chunk);
+    }
+
+    private synchronized void put(File cached, CachedSchematic value) {
+        CachedSchematic previous = schematics.put(cached, value);
+        if (previous != null) {
+            totalChunks -= previous.size();
+        }
+        totalChunks += value.size();
+        int max = Settings.IMP.SCHEMATIC_BROWSER.CACHE_CHUNKS;
+        Iterator<CachedSchematic> iter = schematics.values().iterator();
+        while (totalChunks > max && schematics.size() > 1 && iter.hasNext()) {
+            CachedSchematic eldest = iter.next();
+            if (eldest == value) {
+                continue;
+            }
+            totalChunks -= eldest.size();
+            iter.remove();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.boydti.fawe.regions.general.plot;
 
 import com.boydti.fawe.util.EditSessionBuilder;
+import com.boydti.fawe.util.RegionLockManager;
 import com.boydti.fawe.util.TaskManager;
 import com.intellectualcrafters.plot.object.ChunkLoc;
 import com.intellectualcrafters.plot.object.Location;
@@ -42,12 +43,19 @@ public class FaweChunkManager extends ChunkManager {
         parent.clearAllEntities(pos1, pos2);
     }
 
+    /**
+     * Operations lock the chunks they modify, so operations on different plots can run at the same time
+     */
+    private static RegionLockManager.Area getArea(Location pos1, Location pos2) {
+        return new RegionLockManager.Area(pos1.getWorld(), pos1.getX(), pos1.getZ(), pos2.getX(), pos2.getZ());
+    }
+
     @Override
     public void swap(final Location pos1, final Location pos2, final Location pos3, final Location pos4, final Runnable whenDone) {
         TaskManager.IMP.async(new Runnable() {
             @Override
             public void run() {
-                synchronized (FaweChunkManager.class) {
+                try (RegionLockManager.Lock lock = RegionLockManager.IMP.lock(getArea(pos1, pos2), getArea(pos3, pos4))) {
                     EditSession sessionA = new EditSessionBuilder(pos1.getWorld()).checkMemory(false).fastmode(true).limitUnlimited().changeSetNull().autoQueue(false).build();
                     EditSession sessionB = new EditSessionBuilder(pos3.getWorld()).checkMemory(false).fastmode(true).limitUnlimited().changeSetNull().autoQueue(false).build();
                     CuboidRegion regionA = new CuboidRegion(new Vector(pos1.getX(), pos1.getY(), pos1.getZ()), new Vector(pos2.getX(), pos2.getY(), pos2.getZ()));
@@ -62,8 +70,11 @@ public class FaweChunkManager extends ChunkManager {
                     } catch (MaxChangedBlocksException e) {
                         e.printStackTrace();
                     }
-                    TaskManager.IMP.task(whenDone);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    return;
                 }
+                TaskManager.IMP.task(whenDone);
             }
         });
     }
@@ -73,17 +84,23 @@ public class FaweChunkManager extends ChunkManager {
         TaskManager.IMP.async(new Runnable() {
             @Override
             public void run() {
-                synchronized (FaweChunkManager.class) {
+                CuboidRegion region = new CuboidRegion(new Vector(pos1.getX(), pos1.getY(), pos1.getZ()), new Vector(pos2.getX(), pos2.getY(), pos2.getZ()));
+                Vector to = new Vector(pos3.getX(), pos3.getY(), pos3.getZ());
+                Vector toMax = to.add(region.getMaximumPoint().subtract(region.getMinimumPoint()));
+                RegionLockManager.Area toArea = new RegionLockManager.Area(pos3.getWorld(), to.getBlockX(), to.getBlockZ(), toMax.getBlockX(), toMax.getBlockZ());
+                try (RegionLockManager.Lock lock = RegionLockManager.IMP.lock(getArea(pos1, pos2), toArea)) {
                     EditSession from = new EditSessionBuilder(pos1.getWorld()).checkMemory(false).fastmode(true).limitUnlimited().changeSetNull().autoQueue(false).build();
-                    EditSession to = new EditSessionBuilder(pos3.getWorld()).checkMemory(false).fastmode(true).limitUnlimited().changeSetNull().autoQueue(false).build();
-                    CuboidRegion region = new CuboidRegion(new Vector(pos1.getX(), pos1.getY(), pos1.getZ()), new Vector(pos2.getX(), pos2.getY(), pos2.getZ()));
-                    ForwardExtentCopy copy = new ForwardExtentCopy(from, region, to, new Vector(pos3.getX(), pos3.getY(), pos3.getZ()));
+                    EditSession toSession = new EditSessionBuilder(pos3.getWorld()).checkMemory(false).fastmode(true).limitUnlimited().changeSetNull().autoQueue(false).build();
+                    ForwardExtentCopy copy = new ForwardExtentCopy(from, region, toSession, to);
                     try {
                         Operations.completeLegacy(copy);
-                        to.flushQueue();
+                        toSession.flushQueue();
                     } catch (MaxChangedBlocksException e) {
                         e.printStackTrace();
                     }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    return;
                 }
                 TaskManager.IMP.task(whenDone);
             }
@@ -96,14 +113,17 @@ public class FaweChunkManager extends ChunkManager {
         TaskManager.IMP.async(new Runnable() {
             @Override
             public void run() {
-                synchronized (FaweChunkManager.class) {
+                try (RegionLockManager.Lock lock = RegionLockManager.IMP.lock(getArea(pos1, pos2))) {
                     EditSession editSession = new EditSessionBuilder(pos1.getWorld()).checkMemory(false).fastmode(true).limitUnlimited().changeSetNull().autoQueue(false).build();
                     World world = editSession.getWorld();
                     CuboidRegion region = new CuboidRegion(new Vector(pos1.getX(), pos1.getY(), pos1.getZ()), new Vector(pos2.getX(), pos2.getY(), pos2.getZ()));
                     world.regenerate(region, editSession);
                     editSession.flushQueue();
-                    TaskManager.IMP.task(whenDone);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    return;
                 }
+                TaskManager.IMP.task(whenDone);
             }
         });
         return true;
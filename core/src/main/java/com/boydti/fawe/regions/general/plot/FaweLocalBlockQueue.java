@@ -2,9 +2,13 @@ package com.boydti.fawe.regions.general.plot;
 
 import com.boydti.fawe.FaweAPI;
 import com.boydti.fawe.FaweCache;
+import com.boydti.fawe.example.MappedFaweQueue;
+import com.boydti.fawe.object.FaweChunk;
 import com.boydti.fawe.object.FaweQueue;
 import com.boydti.fawe.util.SetQueue;
+import com.boydti.fawe.util.TaskManager;
 import com.intellectualcrafters.jnbt.CompoundTag;
+import com.intellectualcrafters.plot.object.Location;
 import com.intellectualcrafters.plot.object.PlotBlock;
 import com.intellectualcrafters.plot.util.StringMan;
 import com.intellectualcrafters.plot.util.block.LocalBlockQueue;
@@ -12,6 +16,7 @@ import com.sk89q.worldedit.world.World;
 import com.sk89q.worldedit.world.biome.BaseBiome;
 import com.sk89q.worldedit.world.biome.Biomes;
 import com.sk89q.worldedit.world.registry.BiomeRegistry;
+import java.util.ArrayList;
 import java.util.List;
 
 public class FaweLocalBlockQueue extends LocalBlockQueue {
@@ -63,6 +68,122 @@ public class FaweLocalBlockQueue extends LocalBlockQueue {
         return IMP.setBlock(x, y, z, (short) id, (byte) data);
     }
 
+    @Override
+    public void setCuboid(Location pos1, Location pos2, PlotBlock block) {
+        fillCuboid(pos1.getX(), pos1.getY(), pos1.getZ(), pos2.getX(), pos2.getY(), pos2.getZ(), block.id, block.data);
+    }
+
+    @Override
+    public void setCuboid(Location pos1, Location pos2, PlotBlock[] blocks) {
+        if (blocks.length == 1) {
+            setCuboid(pos1, pos2, blocks[0]);
+        } else {
+            super.setCuboid(pos1, pos2, blocks);
+        }
+    }
+
+    /**
+     * Fill a cuboid with a block<br>
+     * - Writes to the sections of each chunk directly, and fills the chunks in parallel
+     */
+    public void fillCuboid(int x1, int y1, int z1, int x2, int y2, int z2, final int id, final int data) {
+        final int minY = Math.max(0, Math.min(y1, y2));
+        final int maxY = Math.min(IMP.getMaxY(), Math.max(y1, y2));
+        if (minY > maxY) {
+            return;
+        }
+        forEachChunk(Math.min(x1, x2), Math.min(z1, z2), Math.max(x1, x2), Math.max(z1, z2), new ChunkTask() {
+            @Override
+            public void run(int cx, int cz, FaweChunk chunk, int bx, int bz, int tx, int tz) {
+                fill(cx, cz, chunk, bx, tx, minY, maxY, bz, tz, id, data);
+            }
+        });
+    }
+
+    /**
+     * Set the same layers for every column in an area (e.g. a plot floor)<br>
+     * - Writes to the sections of each chunk directly, and fills the chunks in parallel
+     *
+     * @param minY   the y of the first layer
+     * @param layers the block for each y (null to leave a layer unchanged)
+     */
+    public void setColumns(int x1, int z1, int x2, int z2, final int minY, final PlotBlock[] layers) {
+        final int maxY = IMP.getMaxY();
+        forEachChunk(Math.min(x1, x2), Math.min(z1, z2), Math.max(x1, x2), Math.max(z1, z2), new ChunkTask() {
+            @Override
+            public void run(int cx, int cz, FaweChunk chunk, int bx, int bz, int tx, int tz) {
+                for (int i = 0; i < layers.length; i++) {
+                    PlotBlock block = layers[i];
+                    int y = minY + i;
+                    if (block != null && y >= 0 && y <= maxY) {
+                        fill(cx, cz, chunk, bx, tx, y, y, bz, tz, block.id, block.data);
+                    }
+                }
+            }
+        });
+    }
+
+    private interface ChunkTask {
+        /**
+         * @param cx
+         * @param cz
+         * @param chunk the queued chunk (null if the queue doesn't queue chunks)
+         * @param bx    the min x in the chunk (0-15)
+         * @param bz    the min z in the chunk (0-15)
+         * @param tx    the max x in the chunk (0-15)
+         * @param tz    the max z in the chunk (0-15)
+         */
+        void run(int cx, int cz, FaweChunk chunk, int bx, int bz, int tx, int tz);
+    }
+
+    private void fill(int cx, int cz, FaweChunk chunk, int bx, int tx, int y1, int y2, int bz, int tz, int id, int data) {
+        if (chunk != null) {
+            chunk.fillCuboid(bx, tx, y1, y2, bz, tz, id, (byte) data);
+            return;
+        }
+        int ox = cx << 4;
+        int oz = cz << 4;
+        for (int y = y1; y <= y2; y++) {
+            for (int z = bz; z <= tz; z++) {
+                for (int x = bx; x <= tx; x++) {
+                    IMP.setBlock(ox + x, y, oz + z, id, data);
+                }
+            }
+        }
+    }
+
+    private void forEachChunk(int minX, int minZ, int maxX, int maxZ, final ChunkTask task) {
+        boolean mapped = IMP instanceof MappedFaweQueue;
+        List<Runnable> tasks = new ArrayList<>();
+        for (int cx = minX >> 4; cx <= maxX >> 4; cx++) {
+            for (int cz = minZ >> 4; cz <= maxZ >> 4; cz++) {
+                final int bx = Math.max(minX, cx << 4) & 15;
+                final int bz = Math.max(minZ, cz << 4) & 15;
+                final int tx = Math.min(maxX, (cx << 4) + 15) & 15;
+                final int tz = Math.min(maxZ, (cz << 4) + 15) & 15;
+                if (!mapped) {
+                    task.run(cx, cz, null, bx, bz, tx, tz);
+                    continue;
+                }
+                // The queued chunks are fetched here, as the queue's map isn't thread safe
+                final FaweChunk chunk = ((MappedFaweQueue) IMP).getFaweQueueMap().getFaweChunk(cx, cz);
+                final int chunkX = cx;
+                final int chunkZ = cz;
+                tasks.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        task.run(chunkX, chunkZ, chunk, bx, bz, tx, tz);
+                    }
+                });
+            }
+        }
+        if (tasks.size() == 1) {
+            tasks.get(0).run();
+        } else if (!tasks.isEmpty()) {
+            TaskManager.IMP.parallel(tasks);
+        }
+    }
+
     @Override
     public PlotBlock getBlock(int x, int y, int z) {
         int combined = IMP.getCombinedId4Data(x, y, z);
@@ -0,0 +1,179 @@
+package com.boydti.fawe.util;
+
+import com.boydti.fawe.Fawe;
+import com.boydti.fawe.config.Settings;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * A binary file holding something which is slow to compute (e.g. the parsed block registry, or texture colors)<br>
+ * - The file starts with a version and a key (a hash of the inputs), a snapshot with a different key is ignored<br>
+ * - Snapshots with a matching header are memory mapped to read, and written in the background to a temporary file which is then moved<br>
+ * - Deleting a snapshot is always safe, it will be regenerated
+ */
+public class BinarySnapshot {
+
+    private static final int MAGIC = 0xFA3E5A9;
+
+    /**
+     * Get the file for a snapshot (in the cache directory)
+     *
+     * @param name
+     * @return the file, or null if FAWE hasn't been set up yet
+     */
+    public static File getFile(String name) {
+        if (Fawe.imp() == null || Fawe.imp().getDirectory() == null) {
+            return null;
+        }
+        return MainUtil.getFile(MainUtil.getFile(Fawe.imp().getDirectory(), Settings.IMP.PATHS.CACHE), name + ".bin");
+    }
+
+    /**
+     * Read a snapshot
+     *
+     * @param file
+     * @param version the format version
+     * @param key     the hash of the inputs
+     * @return the contents (after the header), or null if the snapshot doesn't exist or is outdated
+     */
+    public static ByteBuffer read(File file, int version, long key) {
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size < 16) {
+                return null;
+            }
+            // Check the header before mapping, as a mapping is only released on GC and an outdated file has to be replaced (see write)
+            ByteBuffer header = ByteBuffer.allocate(16);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    return null;
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != version || header.getLong() != key) {
+                return null;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 16, size - 16);
+        } catch (IOException e) {
+            MainUtil.handleError(e);
+            return null;
+        }
+    }
+
+    /**
+     * Write a snapshot in the background
+     *
+     * @param file
+     * @param version the format version
+     * @param key     the hash of the inputs
+     * @param data    the contents
+     */
+    public static void write(File file, int version, long key, byte[] data) {
+        if (file == null) {
+            return;
+        }
+        Runnable task = () -> {
+            File tmp = new File(file.getPath() + ".tmp");
+            try {
+                File parent = file.getParentFile();
+                if (parent != null) {
+                    parent.mkdirs();
+                }
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(version);
+                    out.writeLong(key);
+                    out.write(data);
+                }
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                tmp.delete();
+                MainUtil.handleError(e);
+            }
+        };
+        if (TaskManager.IMP != null) {
+            TaskManager.IMP.async(task);
+        } else {
+            task.run();
+        }
+    }
+
+    /**
+     * @param data
+     * @return a 64 bit hash of the data (crc32 and length)
+     */
+    public static long hash(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue() + ((long) data.length << 32);
+    }
+
+    /**
+     * Combine two hashes
+     */
+    public static long hash(long hash, long value) {
+        return hash * 0x9E3779B97F4A7C15L + value;
+    }
+
+    /**
+     * Combine a hash with a file's name, size and modification time
+     */
+    public static long hash(long hash, File file) {
+        hash = hash(hash, file.getName().hashCode());
+        hash = hash(hash, file.length());
+        return hash(hash, file.lastModified());
+    }
+
+    /**
+     * A stream to write the contents of a snapshot to
+     */
+    public static class Writer extends DataOutputStream {
+        public Writer() {
+            super(new ByteArrayOutputStream());
+        }
+
+        /**
+         * Write a (nullable) string
+         */
+        public void writeString(String value) throws IOException {
+            if (value == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            write(bytes);
+        }
+
+        public byte[] toByteArray() {
+            return ((ByteArrayOutputStream) out).toByteArray();
+        }
+    }
+
+    /**
+     * Read a (nullable) string written by {@link Writer#writeString(String)}
+     */
+    public static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
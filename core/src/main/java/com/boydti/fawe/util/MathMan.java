@@ -60,7 +60,7 @@ public class MathMan {
     }
 
     public static double max(double... values) {
-        double max = Double.MIN_VALUE;
+        double max = -Double.MAX_VALUE;
         for (double d : values) {
             if (d > max) {
                 max = d;
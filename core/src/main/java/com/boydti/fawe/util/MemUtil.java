@@ -1,6 +1,14 @@
 package com.boydti.fawe.util;
 
+import com.boydti.fawe.Fawe;
 import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.FaweQueue;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -9,6 +17,17 @@ public class MemUtil {
 
     private static AtomicBoolean memory = new AtomicBoolean(false);
 
+    /**
+     * Producers wait on this lock while memory is limited (see {@link #throttle()})
+     */
+    private static final Object BACKPRESSURE = new Object();
+
+    private static List<MemoryPoolMXBean> heapPools;
+
+    // If the bytes over budget are held by the queues, i.e. waiting for them can free enough
+    // Updated once per SetQueue tick by calculateMemory, as getTrackedBytes has to walk every pending chunk
+    private static volatile boolean reclaimable = true;
+
     public static boolean isMemoryFree() {
         return !memory.get();
     }
@@ -17,11 +36,18 @@ public class MemUtil {
         return memory.get();
     }
 
+    /**
+     * Check if memory is still limited after the last garbage collection<br>
+     * - Uses the collection usage of the heap pools, so no explicit GC is needed<br>
+     * - Doesn't look at the queues (see {@link #calculateMemory()}), so it's cheap enough to call while placing blocks
+     *
+     * @return
+     */
     public static boolean isMemoryLimitedSlow() {
         if (memory.get()) {
-            System.gc();
-            System.gc();
-            calculateMemory();
+            if (getLiveBytes() < getBudgetBytes()) {
+                memoryPlentifulTask();
+            }
             return memory.get();
         }
         return false;
@@ -36,19 +62,112 @@ public class MemUtil {
         return Runtime.getRuntime().maxMemory() - getUsedBytes();
     }
 
+    /**
+     * The number of bytes FAWE should keep the (post collection) heap below
+     *
+     * @return the budget, or Long.MAX_VALUE if there is no limit
+     */
+    public static long getBudgetBytes() {
+        int percent = Settings.IMP.MAX_MEMORY_PERCENT;
+        if (percent < 1 || percent > 99) {
+            return Long.MAX_VALUE;
+        }
+        return (Runtime.getRuntime().maxMemory() / 100) * percent;
+    }
+
+    /**
+     * Get the heap usage which survived the last garbage collection<br>
+     * - Falls back to the current usage if the JVM doesn't provide collection usage
+     *
+     * @return bytes
+     */
+    public static long getLiveBytes() {
+        long total = 0;
+        boolean found = false;
+        for (MemoryPoolMXBean pool : getHeapPools()) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage == null) {
+                usage = pool.getUsage();
+            } else {
+                found = true;
+            }
+            total += usage.getUsed();
+        }
+        return found ? total : getUsedBytes();
+    }
+
+    /**
+     * Get an estimate of the bytes held by pending chunks and in-memory history for all queues
+     *
+     * @return bytes
+     */
+    public static long getTrackedBytes() {
+        long total = 0;
+        for (FaweQueue queue : SetQueue.IMP.getAllQueues()) {
+            total += queue.getMemoryUsage();
+        }
+        return total;
+    }
+
+    public static List<MemoryPoolMXBean> getHeapPools() {
+        List<MemoryPoolMXBean> pools = heapPools;
+        if (pools == null) {
+            pools = new ArrayList<>();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pools.add(pool);
+                }
+            }
+            heapPools = pools;
+        }
+        return pools;
+    }
+
+    /**
+     * Get the percentage of the heap that is still free after the last garbage collection<br>
+     * - Also updates whether the queues hold the bytes over budget (see {@link #throttle()})<br>
+     * - Walks every pending chunk, so it should only be called once per tick (see SetQueue)
+     *
+     * @return percentage of the max heap size, or Integer.MAX_VALUE if memory is plentiful
+     */
     public static int calculateMemory() {
-        final long heapSize = Runtime.getRuntime().totalMemory();
-        final long heapMaxSize = Runtime.getRuntime().maxMemory();
-        if (heapSize < heapMaxSize) {
+        final long budget = getBudgetBytes();
+        if (budget == Long.MAX_VALUE) {
             return Integer.MAX_VALUE;
         }
-        final long heapFreeSize = Runtime.getRuntime().freeMemory();
-        final int size = (int) ((heapFreeSize * 100) / heapMaxSize);
-        if (size > (100 - Settings.IMP.MAX_MEMORY_PERCENT)) {
+        final long live = getLiveBytes();
+        if (live < budget) {
             memoryPlentifulTask();
             return Integer.MAX_VALUE;
         }
-        return size;
+        reclaimable = getTrackedBytes() >= live - budget;
+        final long heapMaxSize = Runtime.getRuntime().maxMemory();
+        return (int) Math.max(0, ((heapMaxSize - live) * 100) / heapMaxSize);
+    }
+
+    /**
+     * Slow down the calling (producer) thread while memory is limited<br>
+     * - Waits at most QUEUE.BACKPRESSURE_MS for the queue to place pending chunks<br>
+     * - Doesn't wait if the queues hold less than the bytes over budget (see {@link #getTrackedBytes()}), as placing them can't free enough<br>
+     * - Never blocks the main thread, as that is what frees memory
+     */
+    public static void throttle() {
+        if (!memory.get() || !reclaimable || Settings.IMP.QUEUE.BACKPRESSURE_MS <= 0) {
+            return;
+        }
+        Fawe fawe = Fawe.get();
+        if (fawe == null || fawe.isMainThread()) {
+            return;
+        }
+        synchronized (BACKPRESSURE) {
+            if (memory.get()) {
+                try {
+                    BACKPRESSURE.wait(Settings.IMP.QUEUE.BACKPRESSURE_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
     }
 
     private static Queue<Runnable> memoryLimitedTasks = new ConcurrentLinkedQueue<>();
@@ -65,8 +184,6 @@ public class MemUtil {
     }
 
     public static void memoryLimitedTask() {
-        System.gc();
-        System.gc();
         for (Runnable task : memoryLimitedTasks) {
             task.run();
         }
@@ -77,6 +194,10 @@ public class MemUtil {
         for (Runnable task : memoryPlentifulTasks) {
             task.run();
         }
-        memory.set(false);
+        if (memory.getAndSet(false)) {
+            synchronized (BACKPRESSURE) {
+                BACKPRESSURE.notifyAll();
+            }
+        }
     }
 }
@@ -0,0 +1,189 @@
+package com.boydti.fawe.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Locks areas of a world (by chunk), so operations on different areas can run concurrently<br>
+ * - All the areas of an operation (e.g. both sides of a swap) are locked together, so operations can't deadlock<br>
+ * - Requests are granted in order, a request waits for any earlier request it overlaps
+ */
+public class RegionLockManager {
+
+    public static final RegionLockManager IMP = new RegionLockManager();
+
+    /**
+     * An area of a world, in chunk coordinates
+     */
+    public static final class Area {
+        public final String world;
+        public final int minChunkX, minChunkZ, maxChunkX, maxChunkZ;
+
+        /**
+         * @param world
+         * @param x1    block x
+         * @param z1    block z
+         * @param x2    block x
+         * @param z2    block z
+         */
+        public Area(String world, int x1, int z1, int x2, int z2) {
+            this.world = world;
+            this.minChunkX = Math.min(x1, x2) >> 4;
+            this.minChunkZ = Math.min(z1, z2) >> 4;
+            this.maxChunkX = Math.max(x1, x2) >> 4;
+            this.maxChunkZ = Math.max(z1, z2) >> 4;
+        }
+
+        public boolean overlaps(Area other) {
+            return world.equals(other.world) && minChunkX <= other.maxChunkX && maxChunkX >= other.minChunkX && minChunkZ <= other.maxChunkZ && maxChunkZ >= other.minChunkZ;
+        }
+
+        @Override
+        public String toString() {
+            return world + ":" + minChunkX + "," + minChunkZ + "->" + maxChunkX + "," + maxChunkZ;
+        }
+    }
+
+    /**
+     * A held lock, released by {@link #close()}
+     */
+    public final class Lock implements AutoCloseable {
+        private final Area[] areas;
+        private boolean released;
+
+        private Lock(Area[] areas) {
+            this.areas = areas;
+        }
+
+        private boolean overlaps(Lock other) {
+            for (Area area : areas) {
+                for (Area otherArea : other.areas) {
+                    if (area.overlaps(otherArea)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+
+    private final List<Lock> held = new ArrayList<>();
+    private final List<Lock> waiting = new ArrayList<>();
+
+    private long acquired;
+    private long waited;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+
+    /**
+     * Lock some areas, waiting for any overlapping operation to finish
+     *
+     * @param areas
+     * @return the lock, which must be closed
+     * @throws InterruptedException
+     */
+    public synchronized Lock lock(Area... areas) throws InterruptedException {
+        Lock lock = new Lock(areas);
+        if (canAcquire(lock)) {
+            acquired++;
+            held.add(lock);
+            return lock;
+        }
+        long start = System.nanoTime();
+        waiting.add(lock);
+        try {
+            while (!canAcquire(lock)) {
+                wait();
+            }
+        } finally {
+            waiting.remove(lock);
+            // A request behind this one may be waiting for it
+            notifyAll();
+        }
+        long wait = System.nanoTime() - start;
+        acquired++;
+        waited++;
+        totalWaitNanos += wait;
+        maxWaitNanos = Math.max(maxWaitNanos, wait);
+        held.add(lock);
+        return lock;
+    }
+
+    private boolean canAcquire(Lock lock) {
+        for (Lock other : held) {
+            if (lock.overlaps(other)) {
+                return false;
+            }
+        }
+        for (Lock other : waiting) {
+            if (other == lock) {
+                break;
+            }
+            if (lock.overlaps(other)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void release(Lock lock) {
+        if (!lock.released) {
+            lock.released = true;
+            held.remove(lock);
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return the number of locks granted
+     */
+    public synchronized long getAcquired() {
+        return acquired;
+    }
+
+    /**
+     * @return the number of locks which had to wait for another operation
+     */
+    public synchronized long getWaited() {
+        return waited;
+    }
+
+    /**
+     * @return the total time spent waiting for locks (ms)
+     */
+    public synchronized long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos);
+    }
+
+    /**
+     * @return the longest time spent waiting for a lock (ms)
+     */
+    public synchronized long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+    }
+
+    /**
+     * @return the number of locks currently held
+     */
+    public synchronized int getHeld() {
+        return held.size();
+    }
+
+    /**
+     * @return the number of requests currently waiting
+     */
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "acquired=" + acquired + ", waited=" + waited + ", totalWait=" + getTotalWaitMillis() + "ms, maxWait=" + getMaxWaitMillis() + "ms, held=" + held.size() + ", waiting=" + waiting.size();
+    }
+}
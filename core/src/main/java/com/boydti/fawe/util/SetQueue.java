@@ -2,14 +2,21 @@ package com.boydti.fawe.util;
 
 import com.boydti.fawe.Fawe;
 import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.FaweLimit;
+import com.boydti.fawe.object.FawePlayer;
 import com.boydti.fawe.object.FaweQueue;
 import com.boydti.fawe.wrappers.WorldWrapper;
+import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.world.World;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ForkJoinPool;
@@ -31,6 +38,11 @@ public class SetQueue {
     private final ConcurrentLinkedDeque<FaweQueue> inactiveQueues;
     private final ConcurrentLinkedDeque<Runnable> tasks;
 
+    /**
+     * Weighted placement time used by each owner (see {@link #getOwner(FaweQueue)})
+     */
+    private final ConcurrentHashMap<Object, Long> ownerUsage = new ConcurrentHashMap<>();
+
     /**
      * Used to calculate elapsed time in milliseconds and ensure block placement doesn't lag the server
      */
@@ -137,53 +149,51 @@ public class SetQueue {
                         final int mem = MemUtil.calculateMemory();
                         if (mem != Integer.MAX_VALUE) {
                             allocate = Math.max(5, allocate - 1);
+                            FaweQueue largest = getLargestQueue();
                             if ((mem <= 1) && Settings.IMP.PREVENT_CRASHES) {
-                                for (FaweQueue queue : getAllQueues()) {
-                                    queue.saveMemory();
+                                if (largest != null) {
+                                    largest.saveMemory();
                                 }
                                 return;
                             }
-                            if (SetQueue.this.forceChunkSet()) {
-                                System.gc();
-                            } else {
+                            // Placing the pending chunks of the largest queue frees the most memory
+                            if (largest == null || !largest.next()) {
                                 SetQueue.this.runEmptyTasks();
                             }
                             return;
                         }
                     }
 
-                    FaweQueue queue = getNextQueue();
-                    if (queue == null) {
-                        return;
-                    }
-
-                    long time = Settings.IMP.QUEUE.EXTRA_TIME_MS + currentAllocate - System.currentTimeMillis() + now;
-                    // Disable the async catcher as it can't discern async vs parallel
-                    boolean parallel = Settings.IMP.QUEUE.PARALLEL_THREADS > 1;
-                    queue.startSet(parallel);
-                    try {
-                        if (!queue.next(Settings.IMP.QUEUE.PARALLEL_THREADS, time) && queue.getStage() == QueueStage.ACTIVE) {
-                            queue.setStage(QueueStage.NONE);
-                            queue.runTasks();
+                    long deadline = now + Settings.IMP.QUEUE.EXTRA_TIME_MS + currentAllocate;
+                    FaweQueue previous = null;
+                    do {
+                        FaweQueue queue = getNextQueue();
+                        if (queue == null || queue == previous) {
+                            return;
                         }
-                    } catch (Throwable e) {
-                        pool.awaitQuiescence(Settings.IMP.QUEUE.DISCARD_AFTER_MS, TimeUnit.MILLISECONDS);
-                        completer = new ExecutorCompletionService(pool);
-                        e.printStackTrace();
-                    }
-                    if (pool.getQueuedSubmissionCount() != 0 || pool.getRunningThreadCount() != 0 || pool.getQueuedTaskCount() != 0) {
-//                        if (Fawe.get().isJava8())
-                        {
+                        previous = queue;
+                        long start = System.nanoTime();
+                        long time = deadline - System.currentTimeMillis();
+                        // Disable the async catcher as it can't discern async vs parallel
+                        boolean parallel = Settings.IMP.QUEUE.PARALLEL_THREADS > 1;
+                        queue.startSet(parallel);
+                        try {
+                            if (!queue.next(Settings.IMP.QUEUE.PARALLEL_THREADS, time) && queue.getStage() == QueueStage.ACTIVE) {
+                                queue.setStage(QueueStage.NONE);
+                                queue.runTasks();
+                            }
+                        } catch (Throwable e) {
+                            pool.awaitQuiescence(Settings.IMP.QUEUE.DISCARD_AFTER_MS, TimeUnit.MILLISECONDS);
+                            completer = new ExecutorCompletionService(pool);
+                            e.printStackTrace();
+                        }
+                        if (pool.getQueuedSubmissionCount() != 0 || pool.getRunningThreadCount() != 0 || pool.getQueuedTaskCount() != 0) {
                             pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
                         }
-//                        else {
-//                            pool.shutdown();
-//                            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-//                            pool = new ForkJoinPool();
-//                            completer = new ExecutorCompletionService(pool);
-//                        }
-                    }
-                    queue.endSet(parallel);
+                        queue.endSet(parallel);
+                        charge(queue, System.nanoTime() - start);
+                        // Small edits usually finish early, so hand the rest of the tick to the next queue
+                    } while (Settings.IMP.QUEUE.FAIR_SCHEDULING && !activeQueues.isEmpty() && deadline > System.currentTimeMillis());
                 } catch (Throwable e) {
                     e.printStackTrace();
                 }
@@ -234,6 +244,25 @@ public class SetQueue {
         return list;
     }
 
+    /**
+     * Get the queue using the most memory
+     *
+     * @return the queue, or null if there are no queues
+     * @see FaweQueue#getMemoryUsage()
+     */
+    public FaweQueue getLargestQueue() {
+        FaweQueue largest = null;
+        long largestUsage = 0;
+        for (FaweQueue queue : getAllQueues()) {
+            long usage = queue.getMemoryUsage();
+            if (usage > largestUsage) {
+                largestUsage = usage;
+                largest = queue;
+            }
+        }
+        return largest;
+    }
+
     public Collection<FaweQueue> getActiveQueues() {
         return Collections.unmodifiableCollection(activeQueues);
     }
@@ -287,8 +316,146 @@ public class SetQueue {
         }
     }
 
+    /**
+     * The owner of a queue, used to share placement time between players<br>
+     * - Console and plugin edits share a single owner
+     *
+     * @param queue
+     * @return the owner's UUID, or this SetQueue
+     */
+    private Object getOwner(FaweQueue queue) {
+        for (EditSession session : queue.getEditSessions()) {
+            FawePlayer player = session.getPlayer();
+            if (player != null) {
+                return player.getUUID();
+            }
+        }
+        return this;
+    }
+
+    private int getShare(FaweQueue queue) {
+        int share = 1;
+        for (EditSession session : queue.getEditSessions()) {
+            FaweLimit limit = session.getLimit();
+            if (limit != null) {
+                share = Math.max(share, limit.QUEUE_SHARE);
+            }
+        }
+        return share;
+    }
+
+    /**
+     * Get the weighted placement time (nanoseconds) an owner has used<br>
+     * - New owners start at the lowest current usage so they neither starve nor are starved
+     *
+     * @param owner
+     * @return
+     */
+    private long getUsage(Object owner) {
+        Long usage = ownerUsage.get(owner);
+        if (usage == null) {
+            long min = Long.MAX_VALUE;
+            for (Long value : ownerUsage.values()) {
+                min = Math.min(min, value);
+            }
+            usage = min == Long.MAX_VALUE ? 0 : min;
+            ownerUsage.put(owner, usage);
+        }
+        return usage;
+    }
+
+    private void charge(FaweQueue queue, long nanos) {
+        if (!Settings.IMP.QUEUE.FAIR_SCHEDULING) {
+            return;
+        }
+        Object owner = getOwner(queue);
+        ownerUsage.put(owner, getUsage(owner) + nanos / getShare(queue));
+    }
+
+    /**
+     * If a queue is for small interactive edits (e.g. brushes), i.e. every edit using it has changed at most
+     * PRIORITY_CHANGES blocks<br>
+     * - Console and plugin queues (without an edit) are not
+     *
+     * @param queue
+     * @return
+     */
+    private boolean isInteractive(FaweQueue queue) {
+        Collection<EditSession> sessions = queue.getEditSessions();
+        if (sessions.isEmpty()) {
+            return false;
+        }
+        for (EditSession session : sessions) {
+            if (session.getBlockChangeCount() > Settings.IMP.QUEUE.PRIORITY_CHANGES) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Pick the next active queue:<br>
+     * - Interactive queues (see {@link #isInteractive(FaweQueue)}) are placed first, oldest first, unless their owner
+     * is more than PRIORITY_LEAD_MS of weighted time ahead of the least served owner<br>
+     * - Otherwise the queue whose owner has used the least weighted time is placed<br>
+     * - Time spent on every queue is charged to its owner (see {@link #charge(FaweQueue, long)})
+     *
+     * @param now
+     * @return the next queue, or null if there are no active queues
+     */
+    private FaweQueue getFairQueue(long now) {
+        FaweQueue fair = null;
+        long fairUsage = Long.MAX_VALUE;
+        List<FaweQueue> interactive = new ArrayList<>();
+        List<Long> interactiveUsage = new ArrayList<>();
+        Set<Object> owners = new HashSet<>();
+        Iterator<FaweQueue> iter = activeQueues.iterator();
+        while (iter.hasNext()) {
+            FaweQueue queue = iter.next();
+            if (queue.size() <= 0) {
+                queue.setStage(QueueStage.NONE);
+                queue.runTasks();
+                iter.remove();
+                continue;
+            }
+            Object owner = getOwner(queue);
+            owners.add(owner);
+            long usage = getUsage(owner);
+            if (isInteractive(queue)) {
+                interactive.add(queue);
+                interactiveUsage.add(usage);
+            }
+            if (usage < fairUsage || (usage == fairUsage && queue.getModified() < fair.getModified())) {
+                fairUsage = usage;
+                fair = queue;
+            }
+        }
+        // Forget owners without any active edits
+        ownerUsage.keySet().retainAll(owners);
+        // fairUsage is the least usage of any owner, so this caps how far ahead the interactive lane can put an owner
+        long cap = fairUsage + Settings.IMP.QUEUE.PRIORITY_LEAD_MS * 1000000L;
+        FaweQueue priority = null;
+        for (int i = 0; i < interactive.size(); i++) {
+            FaweQueue queue = interactive.get(i);
+            if (interactiveUsage.get(i) <= cap && (priority == null || queue.getModified() < priority.getModified())) {
+                priority = queue;
+            }
+        }
+        FaweQueue queue = priority != null ? priority : fair;
+        if (queue != null) {
+            queue.setModified(now);
+        }
+        return queue;
+    }
+
     public FaweQueue getNextQueue() {
         long now = System.currentTimeMillis();
+        if (Settings.IMP.QUEUE.FAIR_SCHEDULING) {
+            FaweQueue queue = getFairQueue(now);
+            if (queue != null) {
+                return queue;
+            }
+        }
         while (!activeQueues.isEmpty()) {
             FaweQueue queue = activeQueues.peek();
             if (queue != null && queue.size() > 0) {
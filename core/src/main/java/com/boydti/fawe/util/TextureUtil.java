@@ -22,6 +22,7 @@ import it.unimi.dsi.fastutil.longs.LongArrayList;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
@@ -67,6 +68,7 @@ public class TextureUtil implements TextureHolder {
         return this;
     }
 
+    private static final int SNAPSHOT_VERSION = 1;
     private final File folder;
     private static final int[] FACTORS = new int[766];
 
@@ -523,23 +525,183 @@ public class TextureUtil implements TextureHolder {
         return colorDistance(red1, green1, blue1, c2);
     }
 
+    /**
+     * Calculate the block and biome colors from the jars in the texture folder<br>
+     * - The result is kept in a snapshot (see {@link BinarySnapshot}), which is used while the jars and block registry are unchanged
+     *
+     * @throws IOException
+     */
     public void loadModTextures() throws IOException {
         BundledBlockData.getInstance().loadFromResource();
-        Int2ObjectOpenHashMap<Integer> colorMap = new Int2ObjectOpenHashMap<>();
-        Int2ObjectOpenHashMap<Long> distanceMap = new Int2ObjectOpenHashMap<>();
-        Gson gson = new Gson();
+        File[] files = null;
         if (folder.exists()) {
             // Get all the jar files
-            File[] files = folder.listFiles(new FilenameFilter() {
+            files = folder.listFiles(new FilenameFilter() {
                 @Override
                 public boolean accept(File dir, String name) {
                     return name.endsWith(".jar");
                 }
             });
-            if (files.length == 0) {
+            if (files == null || files.length == 0) {
                 throw new FileNotFoundException("Please create a `FastAsyncWorldEdit/textures` folder with `.minecraft/versions` jar or mods in it." +
                         "If the file exists, please make sure the server has read access to the directory");
             }
+        }
+        long key = getSnapshotKey(files);
+        File snapshot = getSnapshotFile();
+        ByteBuffer buffer = BinarySnapshot.read(snapshot, SNAPSHOT_VERSION, key);
+        if (buffer != null) {
+            try {
+                readSnapshot(buffer);
+                calculateLayerArrays();
+                return;
+            } catch (RuntimeException e) {
+                MainUtil.handleError(e);
+            }
+        }
+        loadModTextures(files);
+        calculateLayerArrays();
+        BinarySnapshot.write(snapshot, SNAPSHOT_VERSION, key, writeSnapshot());
+    }
+
+    /**
+     * @return the snapshot of the texture colors, or null if FAWE isn't set up
+     */
+    public static File getSnapshotFile() {
+        return BinarySnapshot.getFile("textures");
+    }
+
+    private long getSnapshotKey(File[] files) {
+        long key = BundledBlockData.getInstance().getFingerprint();
+        if (files != null) {
+            File[] sorted = files.clone();
+            Arrays.sort(sorted);
+            for (File file : sorted) {
+                key = BinarySnapshot.hash(key, file);
+            }
+        }
+        return key;
+    }
+
+    private byte[] writeSnapshot() throws IOException {
+        BinarySnapshot.Writer out = new BinarySnapshot.Writer();
+        out.writeInt(validBlockIds.length);
+        for (int i = 0; i < validBlockIds.length; i++) {
+            out.writeChar(validBlockIds[i]);
+            out.writeInt(validColors[i]);
+        }
+        int colors = 0;
+        int blockDistances = 0;
+        for (int i = 0; i < blockColors.length; i++) {
+            if (blockColors[i] != 0) colors++;
+            if (blockDistance[i] != 0) blockDistances++;
+        }
+        out.writeInt(colors);
+        for (int i = 0; i < blockColors.length; i++) {
+            if (blockColors[i] != 0) {
+                out.writeChar(i);
+                out.writeInt(blockColors[i]);
+            }
+        }
+        out.writeInt(blockDistances);
+        for (int i = 0; i < blockDistance.length; i++) {
+            if (blockDistance[i] != 0) {
+                out.writeChar(i);
+                out.writeLong(blockDistance[i]);
+            }
+        }
+        out.writeInt(distances.length);
+        for (long distance : distances) {
+            out.writeLong(distance);
+        }
+        out.writeInt(biomes.length);
+        for (BiomeColor biome : biomes) {
+            out.writeInt(biome.grass);
+            out.writeInt(biome.grassCombined);
+        }
+        out.writeInt(validBiomes == null ? -1 : validBiomes.length);
+        if (validBiomes != null) {
+            for (BiomeColor biome : validBiomes) {
+                int index = 0;
+                while (biomes[index] != biome) index++;
+                out.writeInt(index);
+            }
+        }
+        out.writeInt(validMixBiomeColors == null ? -1 : validMixBiomeColors.length);
+        if (validMixBiomeColors != null) {
+            for (int i = 0; i < validMixBiomeColors.length; i++) {
+                out.writeInt(validMixBiomeColors[i]);
+                out.writeLong(validMixBiomeIds[i]);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private void readSnapshot(ByteBuffer in) {
+        char[] validBlockIds = new char[in.getInt()];
+        int[] validColors = new int[validBlockIds.length];
+        for (int i = 0; i < validBlockIds.length; i++) {
+            validBlockIds[i] = in.getChar();
+            validColors[i] = in.getInt();
+        }
+        int[] blockColors = new int[this.blockColors.length];
+        for (int i = in.getInt(); i > 0; i--) {
+            blockColors[in.getChar()] = in.getInt();
+        }
+        long[] blockDistance = new long[this.blockDistance.length];
+        for (int i = in.getInt(); i > 0; i--) {
+            blockDistance[in.getChar()] = in.getLong();
+        }
+        long[] distances = new long[in.getInt()];
+        for (int i = 0; i < distances.length; i++) {
+            distances[i] = in.getLong();
+        }
+        if (in.getInt() != biomes.length) {
+            throw new IllegalStateException("Invalid biome count");
+        }
+        int[] grass = new int[biomes.length << 1];
+        for (int i = 0; i < grass.length; i++) {
+            grass[i] = in.getInt();
+        }
+        BiomeColor[] validBiomes = null;
+        int numBiomes = in.getInt();
+        if (numBiomes != -1) {
+            validBiomes = new BiomeColor[numBiomes];
+            for (int i = 0; i < numBiomes; i++) {
+                validBiomes[i] = biomes[in.getInt()];
+            }
+        }
+        int[] validMixBiomeColors = null;
+        long[] validMixBiomeIds = null;
+        int numMix = in.getInt();
+        if (numMix != -1) {
+            validMixBiomeColors = new int[numMix];
+            validMixBiomeIds = new long[numMix];
+            for (int i = 0; i < numMix; i++) {
+                validMixBiomeColors[i] = in.getInt();
+                validMixBiomeIds[i] = in.getLong();
+            }
+        }
+        // Everything was read, so apply it
+        this.validBlockIds = validBlockIds;
+        this.validColors = validColors;
+        System.arraycopy(blockColors, 0, this.blockColors, 0, blockColors.length);
+        System.arraycopy(blockDistance, 0, this.blockDistance, 0, blockDistance.length);
+        this.distances = distances;
+        for (int i = 0; i < biomes.length; i++) {
+            biomes[i].grass = grass[i << 1];
+            biomes[i].grassCombined = grass[(i << 1) + 1];
+        }
+        this.validBiomes = validBiomes;
+        this.validMixBiomeColors = validMixBiomeColors;
+        this.validMixBiomeIds = validMixBiomeIds;
+    }
+
+    private void loadModTextures(File[] files) throws IOException {
+        Int2ObjectOpenHashMap<Integer> colorMap = new Int2ObjectOpenHashMap<>();
+        Int2ObjectOpenHashMap<Long> distanceMap = new Int2ObjectOpenHashMap<>();
+        Gson gson = new Gson();
+        if (files != null) {
             for (File file : files) {
                 ZipFile zipFile = new ZipFile(file);
 
@@ -781,7 +943,6 @@ public class TextureUtil implements TextureHolder {
         for (Int2ObjectMap.Entry<Long> entry : distanceMap.int2ObjectEntrySet()) {
             blockDistance[entry.getIntKey()] = entry.getValue();
         }
-        calculateLayerArrays();
     }
 
     public int multiplyColor(int c1, int c2) {
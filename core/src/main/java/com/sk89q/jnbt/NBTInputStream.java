@@ -19,6 +19,7 @@
 
 package com.sk89q.jnbt;
 
+import com.boydti.fawe.jnbt.NBTIntern;
 import com.boydti.fawe.jnbt.NBTStreamer;
 import com.boydti.fawe.object.RunnableVal2;
 import java.io.Closeable;
@@ -27,6 +28,7 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -122,18 +124,58 @@ public final class NBTInputStream implements Closeable {
     }
 
     public String readNamedTagName(int type) throws IOException {
-        String name;
         if (type != NBTConstants.TYPE_END) {
             int nameLength = is.readShort() & 0xFFFF;
-            byte[] nameBytes = new byte[nameLength];
-            is.readFully(nameBytes);
-            return new String(nameBytes, NBTConstants.CHARSET);
+            byte[] nameBytes = getStringBuffer(nameLength);
+            is.readFully(nameBytes, 0, nameLength);
+            return NBTIntern.name(nameBytes, nameLength);
         } else {
             return "";
         }
     }
 
     private byte[] buf;
+    private byte[] stringBuf;
+
+    private byte[] getStringBuffer(int length) {
+        byte[] tmp = stringBuf;
+        if (tmp == null || tmp.length < length) {
+            stringBuf = tmp = new byte[Math.max(length, 256)];
+        }
+        return tmp;
+    }
+
+    private StringTag readStringTag() throws IOException {
+        int length = is.readShort() & 0xFFFF;
+        byte[] bytes = getStringBuffer(length);
+        is.readFully(bytes, 0, length);
+        return NBTIntern.asTag(bytes, length);
+    }
+
+    /**
+     * Read the entries of a compound tag (after its name), up to and including the end tag
+     */
+    private Map<String, Tag> readCompoundPayload(int depth) throws IOException {
+        String[] keys = new String[8];
+        Tag[] values = new Tag[8];
+        int size = 0;
+        while (true) {
+            int childType = is.readByte();
+            if (childType == NBTConstants.TYPE_END) {
+                break;
+            }
+            String name = readNamedTagName(childType);
+            Tag tag = readTagPayload(childType, depth + 1);
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size << 1);
+                values = Arrays.copyOf(values, size << 1);
+            }
+            keys[size] = name;
+            values[size] = tag;
+            size++;
+        }
+        return NBTIntern.compound(keys, values, size);
+    }
 
     public void readTagPaylodLazy(int type, int depth, String node, RunnableVal2<String, RunnableVal2> getReader) throws IOException {
         switch (type) {
@@ -331,10 +373,7 @@ public final class NBTInputStream implements Closeable {
                 is.readFully(bytes);
                 return (bytes);
             case NBTConstants.TYPE_STRING:
-                length = is.readShort();
-                bytes = new byte[length];
-                is.readFully(bytes);
-                return (new String(bytes, NBTConstants.CHARSET));
+                return readStringTag().getValue();
             case NBTConstants.TYPE_LIST:
                 int childType = is.readByte();
                 if (childType == NBTConstants.TYPE_LIST) {
@@ -351,17 +390,7 @@ public final class NBTInputStream implements Closeable {
                 }
                 return (tagList);
             case NBTConstants.TYPE_COMPOUND:
-                Map<String, Tag> tagMap = new HashMap<String, Tag>();
-                while (true) {
-                    NamedTag namedTag = readNamedTag(depth + 1);
-                    Tag tag = namedTag.getTag();
-                    if (tag instanceof EndTag) {
-                        break;
-                    } else {
-                        tagMap.put(namedTag.getName(), tag);
-                    }
-                }
-                return (tagMap);
+                return readCompoundPayload(depth);
             case NBTConstants.TYPE_INT_ARRAY:
                 length = is.readInt();
                 int[] data = new int[length];
@@ -474,11 +503,11 @@ public final class NBTInputStream implements Closeable {
                     return new EndTag();
                 }
             case NBTConstants.TYPE_BYTE:
-                return new ByteTag(is.readByte());
+                return NBTIntern.asTag(is.readByte());
             case NBTConstants.TYPE_SHORT:
-                return new ShortTag(is.readShort());
+                return NBTIntern.asTag(is.readShort());
             case NBTConstants.TYPE_INT:
-                return new IntTag(is.readInt());
+                return NBTIntern.asTag(is.readInt());
             case NBTConstants.TYPE_LONG:
                 return new LongTag(is.readLong());
             case NBTConstants.TYPE_FLOAT:
@@ -491,10 +520,7 @@ public final class NBTInputStream implements Closeable {
                 is.readFully(bytes);
                 return new ByteArrayTag(bytes);
             case NBTConstants.TYPE_STRING:
-                length = is.readShort();
-                bytes = new byte[length];
-                is.readFully(bytes);
-                return new StringTag(new String(bytes, NBTConstants.CHARSET));
+                return readStringTag();
             case NBTConstants.TYPE_LIST:
                 int childType = is.readByte();
                 if (childType == NBTConstants.TYPE_LIST) {
@@ -512,18 +538,7 @@ public final class NBTInputStream implements Closeable {
 
                 return new ListTag(NBTUtils.getTypeClass(childType), tagList);
             case NBTConstants.TYPE_COMPOUND:
-                Map<String, Tag> tagMap = new HashMap<String, Tag>();
-                while (true) {
-                    NamedTag namedTag = readNamedTag(depth + 1);
-                    Tag tag = namedTag.getTag();
-                    if (tag instanceof EndTag) {
-                        break;
-                    } else {
-                        tagMap.put(namedTag.getName(), tag);
-                    }
-                }
-
-                return new CompoundTag(tagMap);
+                return new CompoundTag(readCompoundPayload(depth));
             case NBTConstants.TYPE_INT_ARRAY:
                 length = is.readInt();
                 int[] data = new int[length];
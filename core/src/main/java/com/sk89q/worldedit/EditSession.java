@@ -132,6 +132,7 @@ public class EditSession extends AbstractDelegateExtent implements HasFaweQueue,
     private boolean fastMode;
     private AbstractDelegateExtent extent;
     private HistoryExtent history;
+    private BlockSink sink;
     private AbstractDelegateExtent bypassHistory;
     private AbstractDelegateExtent bypassAll;
     private FaweLimit originalLimit;
@@ -323,6 +324,15 @@ public class EditSession extends AbstractDelegateExtent implements HasFaweQueue,
         }
         this.extent = wrapExtent(this.extent, bus, event, Stage.BEFORE_HISTORY);
         setExtent(this.extent);
+        this.sink = BlockSink.of(this.extent);
+    }
+
+    /**
+     * @return the fused setBlock path, or null if the extents have changed since the session was created (e.g. a mask was set)
+     */
+    private BlockSink getSink() {
+        BlockSink sink = this.sink;
+        return sink != null && sink.isFor(extent) ? sink : null;
     }
 
     /**
@@ -1050,8 +1060,13 @@ public class EditSession extends AbstractDelegateExtent implements HasFaweQueue,
     public boolean setBlock(final Vector position, final BaseBlock block, final Stage stage) throws WorldEditException {
         this.changes++;
         switch (stage) {
-            case BEFORE_HISTORY:
+            case BEFORE_HISTORY: {
+                BlockSink sink = getSink();
+                if (sink != null) {
+                    return sink.setBlock(position.getBlockX(), position.getBlockY(), position.getBlockZ(), block);
+                }
                 return this.extent.setBlock(position, block);
+            }
             case BEFORE_CHANGE:
                 return this.bypassHistory.setBlock(position, block);
             case BEFORE_REORDER:
@@ -1107,6 +1122,10 @@ public class EditSession extends AbstractDelegateExtent implements HasFaweQueue,
     public boolean setBlock(int x, int y, int z, BaseBlock block) {
         this.changes++;
         try {
+            BlockSink sink = getSink();
+            if (sink != null) {
+                return sink.setBlock(x, y, z, block);
+            }
             return this.extent.setBlock(x, y, z, block);
         } catch (WorldEditException e) {
             throw new RuntimeException("Unexpected exception", e);
@@ -1131,6 +1150,10 @@ public class EditSession extends AbstractDelegateExtent implements HasFaweQueue,
     public boolean setBlockFast(final Vector position, final BaseBlock block) {
         this.changes++;
         try {
+            BlockSink sink = getSink();
+            if (sink != null) {
+                return sink.setBlock(position.getBlockX(), position.getBlockY(), position.getBlockZ(), block);
+            }
             return this.extent.setBlock(position, block);
         } catch (final WorldEditException e) {
             throw new RuntimeException("Unexpected exception", e);
@@ -1291,6 +1314,9 @@ public class EditSession extends AbstractDelegateExtent implements HasFaweQueue,
      */
     public void flushQueue() {
         Operations.completeBlindly(commit());
+        if (history != null) {
+            history.releaseSnapshot();
+        }
         // Check fails
         FaweLimit used = getLimitUsed();
         if (used.MAX_FAILS > 0) {
@@ -1618,21 +1644,31 @@ public class EditSession extends AbstractDelegateExtent implements HasFaweQueue,
         if (canBypassAll(region, false, true) && !block.hasNbtData()) {
             return changes = queue.setBlocks((CuboidRegion) region, block.getId(), block.getData());
         }
-        try {
-            if (hasExtraExtents()) {
-                RegionVisitor visitor = new RegionVisitor(region, new BlockReplace(extent, (block)), this);
-                Operations.completeBlindly(visitor);
-                this.changes += visitor.getAffected();
-            } else {
-                Iterator<BlockVector> iter = region.iterator();
-                while (iter.hasNext()) {
-                    if (this.extent.setBlock(iter.next(), block)) {
-                        changes++;
+        BlockSink sink = getSink();
+        if (sink != null) {
+            region.forEachSpan((minX, maxX, y, z) -> {
+                try {
+                    changes += sink.setBlocks(minX, maxX, y, z, block);
+                } catch (WorldEditException e) {
+                    throw new RuntimeException("Unexpected exception", e);
+                }
+            });
+        } else if (hasExtraExtents()) {
+            RegionVisitor visitor = new RegionVisitor(region, new BlockReplace(extent, (block)), this);
+            Operations.completeBlindly(visitor);
+            this.changes += visitor.getAffected();
+        } else {
+            region.forEachSpan((minX, maxX, y, z) -> {
+                try {
+                    for (int x = minX; x <= maxX; x++) {
+                        if (this.extent.setBlock(x, y, z, block)) {
+                            changes++;
+                        }
                     }
+                } catch (WorldEditException e) {
+                    throw new RuntimeException("Unexpected exception", e);
                 }
-            }
-        } catch (final WorldEditException e) {
-            throw new RuntimeException("Unexpected exception", e);
+            });
         }
         return changes;
     }
@@ -30,8 +30,8 @@ import com.boydti.fawe.object.brush.visualization.VirtualWorld;
 import com.boydti.fawe.object.changeset.AnvilHistory;
 import com.boydti.fawe.object.changeset.DiskStorageHistory;
 import com.boydti.fawe.object.changeset.FaweChangeSet;
+import com.boydti.fawe.object.changeset.HistoryManifest;
 import com.boydti.fawe.object.clipboard.MultiClipboardHolder;
-import com.boydti.fawe.object.collection.SparseBitSet;
 import com.boydti.fawe.object.extent.ResettableExtent;
 import com.boydti.fawe.util.*;
 import com.boydti.fawe.util.cui.CUI;
@@ -85,7 +85,7 @@ public class LocalSession implements TextureHolder {
     // Session related
     private transient RegionSelector selector = new CuboidRegionSelector();
     private transient boolean placeAtPos1 = false;
-    private transient List<Object> history = Collections.synchronizedList(new LinkedList<Object>() {
+    private transient List<Object> history = Collections.synchronizedList(new ArrayList<Object>() {
         @Override
         public Object get(int index) {
             Object value = super.get(index);
@@ -196,35 +196,26 @@ public class LocalSession implements TextureHolder {
     }
 
     private boolean loadHistoryChangeSets(UUID uuid, World world) {
-        SparseBitSet set = new SparseBitSet();
         final File folder = MainUtil.getFile(Fawe.imp().getDirectory(), Settings.IMP.PATHS.HISTORY + File.separator + Fawe.imp().getWorldName(world) + File.separator + uuid);
-        if (folder.isDirectory()) {
-            folder.listFiles(new FileFilter() {
-                @Override
-                public boolean accept(File pathname) {
-                    String name = pathname.getName();
-                    Integer val = null;
-                    if (pathname.isDirectory()) {
-                        val = StringMan.toInteger(name, 0, name.length());
-
-                    } else {
-                        int i = name.lastIndexOf('.');
-                        if (i != -1) val = StringMan.toInteger(name, 0, i);
-                    }
-                    if (val != null) set.set(val);
-                    return false;
-                }
-            });
+        HistoryManifest manifest = HistoryManifest.load(folder);
+        if (manifest == null) {
+            if (!folder.isDirectory()) {
+                historySize = 0;
+                return false;
+            }
+            // Older history folders are indexed once, then kept up to date by DiskStorageHistory
+            manifest = HistoryManifest.scan(folder);
         }
-        if (!set.isEmpty()) {
-            historySize = MainUtil.getTotalSize(folder.toPath());
-            for (int index = set.nextSetBit(0); index != -1; index = set.nextSetBit(index + 1)) {
+        int[] indexes = manifest.getIndexes();
+        if (indexes.length != 0) {
+            historySize = manifest.getTotalSize();
+            for (int index : indexes) {
                 history.add(index);
             }
         } else {
             historySize = 0;
         }
-        return !set.isEmpty();
+        return indexes.length != 0;
     }
 
     private void loadHistoryNegativeIndex(UUID uuid, World world) {
@@ -138,7 +138,7 @@ public class HistoryCommands extends MethodCommands {
                 final World world = player.getWorld();
                 UUID uuid = player.getUniqueId();
                 DiskStorageHistory file = new DiskStorageHistory(world, uuid, index);
-                if (file.getBDFile().exists()) {
+                if (file.exists()) {
                     if (restore) file.redo(FawePlayer.wrap(player));
                     else file.undo(FawePlayer.wrap(player));
                     BBC.ROLLBACK_ELEMENT.send(player, Fawe.imp().getWorldName(world) + "/" + user + "-" + index);
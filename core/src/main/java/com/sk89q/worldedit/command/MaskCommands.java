@@ -169,7 +169,7 @@ public class MaskCommands extends MethodCommands {
         return new ConditionalMask(extent) {
             @Override
             public boolean applies(BaseBlock block) {
-                return FaweCache.isLiquid(block.getId());
+                return FaweCache.getProperties().isLiquid(FaweCache.getCombined(block));
             }
         };
     }
@@ -19,13 +19,13 @@
 
 package com.sk89q.worldedit.extent;
 
+import com.boydti.fawe.FaweCache;
 import com.boydti.fawe.object.extent.LightingExtent;
 import com.sk89q.worldedit.MutableBlockVector;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.Vector2D;
 import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.blocks.BaseBlock;
-import com.sk89q.worldedit.blocks.BlockMaterial;
 import com.sk89q.worldedit.entity.BaseEntity;
 import com.sk89q.worldedit.entity.Entity;
 import com.sk89q.worldedit.function.operation.Operation;
@@ -33,7 +33,6 @@ import com.sk89q.worldedit.function.operation.OperationQueue;
 import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.util.Location;
 import com.sk89q.worldedit.world.biome.BaseBiome;
-import com.sk89q.worldedit.world.registry.BundledBlockData;
 import java.util.List;
 import javax.annotation.Nullable;
 
@@ -81,11 +80,7 @@ public class AbstractDelegateExtent implements LightingExtent {
         if (extent instanceof LightingExtent) {
             return ((LightingExtent) extent).getOpacity(x, y, z);
         }
-        BlockMaterial block = BundledBlockData.getInstance().getMaterialById(getLazyBlock(x, y, z).getId());
-        if (block == null) {
-            return 15;
-        }
-        return Math.min(15, block.getLightOpacity());
+        return FaweCache.getOpacity(getLazyBlock(x, y, z).getId());
     }
 
     @Override
@@ -100,11 +95,7 @@ public class AbstractDelegateExtent implements LightingExtent {
         if (extent instanceof LightingExtent) {
             return ((LightingExtent) extent).getBrightness(x, y, z);
         }
-        BlockMaterial block = BundledBlockData.getInstance().getMaterialById(getLazyBlock(x, y, z).getId());
-        if (block == null) {
-            return 15;
-        }
-        return Math.min(15, block.getLightValue());
+        return FaweCache.getBrightness(getLazyBlock(x, y, z).getId());
     }
 
     /**
@@ -19,6 +19,7 @@
 
 package com.sk89q.worldedit.extent.clipboard;
 
+import com.boydti.fawe.FaweCache;
 import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.object.clipboard.DiskOptimizedClipboard;
 import com.boydti.fawe.object.clipboard.FaweClipboard;
@@ -31,14 +32,12 @@ import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.Vector2D;
 import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.blocks.BaseBlock;
-import com.sk89q.worldedit.blocks.BlockMaterial;
 import com.sk89q.worldedit.entity.BaseEntity;
 import com.sk89q.worldedit.entity.Entity;
 import com.sk89q.worldedit.function.operation.Operation;
 import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.util.Location;
 import com.sk89q.worldedit.world.biome.BaseBiome;
-import com.sk89q.worldedit.world.registry.BundledBlockData;
 import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -269,11 +268,7 @@ public class BlockArrayClipboard implements Clipboard, LightingExtent, Closeable
         mutable.mutX(x);
         mutable.mutY(y);
         mutable.mutZ(z);
-        BlockMaterial block = BundledBlockData.getInstance().getMaterialById(getBlock(mutable).getId());
-        if (block == null) {
-            return 15;
-        }
-        return Math.min(15, block.getLightOpacity());
+        return FaweCache.getOpacity(getBlock(mutable).getId());
     }
 
     @Override
@@ -281,10 +276,6 @@ public class BlockArrayClipboard implements Clipboard, LightingExtent, Closeable
         mutable.mutX(x);
         mutable.mutY(y);
         mutable.mutZ(z);
-        BlockMaterial block = BundledBlockData.getInstance().getMaterialById(getBlock(mutable).getId());
-        if (block == null) {
-            return 15;
-        }
-        return Math.min(15, block.getLightValue());
+        return FaweCache.getBrightness(getBlock(mutable).getId());
     }
 }
\ No newline at end of file
@@ -1,7 +1,8 @@
 package com.sk89q.worldedit.function.mask;
 
+import com.boydti.fawe.FaweCache;
+import com.boydti.fawe.object.BlockProperties;
 import com.sk89q.worldedit.blocks.BaseBlock;
-import com.sk89q.worldedit.blocks.BlockType;
 import com.sk89q.worldedit.extent.Extent;
 import javax.annotation.Nullable;
 
@@ -9,9 +10,10 @@ public class SolidBlockMask extends BlockMask {
 
     public SolidBlockMask(Extent extent) {
         super(extent);
+        BlockProperties properties = FaweCache.getProperties();
         for (int id = 0; id < 4096; id++) {
             for (int data = 0; data < 16; data++) {
-                if (!BlockType.canPassThrough(id, data)) {
+                if (properties.isSolid(FaweCache.getCombined(id, data))) {
                     add(new BaseBlock(id, data));
                 }
             }
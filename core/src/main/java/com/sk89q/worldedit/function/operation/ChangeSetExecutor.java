@@ -20,6 +20,7 @@
 package com.sk89q.worldedit.function.operation;
 
 import com.boydti.fawe.object.changeset.FaweChangeSet;
+import com.boydti.fawe.object.changeset.HistoryReplay;
 import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.extent.inventory.BlockBag;
 import com.sk89q.worldedit.history.UndoContext;
@@ -39,6 +40,7 @@ public class ChangeSetExecutor implements Operation {
     public enum Type {UNDO, REDO}
 
     private final Iterator<Change> iterator;
+    private final HistoryReplay replay;
     private final Type type;
     private final UndoContext context;
 
@@ -55,7 +57,10 @@ public class ChangeSetExecutor implements Operation {
         checkNotNull(context);
         this.type = type;
         this.context = context;
-        if (changeSet instanceof FaweChangeSet) {
+        this.replay = blockBag != null && inventory > 0 ? null : HistoryReplay.of(changeSet, context, type == Type.REDO);
+        if (replay != null) {
+            iterator = null;
+        } else if (changeSet instanceof FaweChangeSet) {
             iterator = ((FaweChangeSet) changeSet).getIterator(blockBag, inventory, type == Type.REDO);
         } else if (type == Type.UNDO) {
             iterator = changeSet.backwardIterator();
@@ -66,7 +71,9 @@ public class ChangeSetExecutor implements Operation {
 
     @Override
     public Operation resume(RunContext run) throws WorldEditException {
-        if (type == Type.UNDO) {
+        if (replay != null) {
+            replay.run();
+        } else if (type == Type.UNDO) {
             while (iterator.hasNext()) {
                 iterator.next().undo(context);
             }
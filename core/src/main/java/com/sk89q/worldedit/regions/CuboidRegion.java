@@ -437,6 +437,18 @@ public class CuboidRegion extends AbstractRegion implements FlatRegion {
         return x >= this.minX && x <= this.maxX && z >= this.minZ && z <= this.maxZ;
     }
 
+    @Override
+    public void forEachSpan(int y, int z, int minX, int maxX, SpanVisitor visitor) {
+        if (y < this.minY || y > this.maxY || z < this.minZ || z > this.maxZ) {
+            return;
+        }
+        int start = Math.max(minX, this.minX);
+        int end = Math.min(maxX, this.maxX);
+        if (start <= end) {
+            visitor.run(start, end, y, z);
+        }
+    }
+
     @Override
     public Iterator<BlockVector> iterator() {
         if (Settings.IMP.HISTORY.COMPRESSION_LEVEL >= 9 || useOldIterator) {
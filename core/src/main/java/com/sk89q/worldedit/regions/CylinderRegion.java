@@ -316,19 +316,41 @@ public class CylinderRegion extends AbstractRegion implements FlatRegion {
      */
     @Override
     public boolean contains(Vector position) {
-        final int pt = position.getBlockY();
-        if (pt < getMinimumY() || pt > getMaximumY()) {
+        return contains(position.getBlockX(), position.getBlockY(), position.getBlockZ());
+    }
+
+    @Override
+    public boolean contains(int x, int y, int z) {
+        if (y < getMinimumY() || y > getMaximumY()) {
             return false;
         }
-        int px = position.getBlockX();
-        int pz = position.getBlockZ();
-
-        double dx = Math.abs(px - center.getBlockX()) * radiusInverse.getX();
-        double dz = Math.abs(pz - center.getBlockZ()) * radiusInverse.getZ();
-
+        double dx = Math.abs(x - center.getBlockX()) * radiusInverse.getX();
+        double dz = Math.abs(z - center.getBlockZ()) * radiusInverse.getZ();
         return dx * dx + dz * dz <= 1;
     }
 
+    @Override
+    public void forEachSpan(int y, int z, int minX, int maxX, SpanVisitor visitor) {
+        int centerX = center.getBlockX();
+        if (!contains(centerX, y, z)) {
+            return;
+        }
+        // Each row is symmetric around the center, estimate the half width then correct it against contains
+        double dz = Math.abs(z - center.getBlockZ()) * radiusInverse.getZ();
+        int half = (int) (Math.sqrt(Math.max(0, 1 - dz * dz)) / radiusInverse.getX());
+        while (half > 0 && !contains(centerX + half, y, z)) {
+            half--;
+        }
+        while (contains(centerX + half + 1, y, z)) {
+            half++;
+        }
+        int start = Math.max(minX, centerX - half);
+        int end = Math.min(maxX, centerX + half);
+        if (start <= end) {
+            visitor.run(start, end, y, z);
+        }
+    }
+
 
     /**
      * Sets the height of the cylinder to fit the specified Y.
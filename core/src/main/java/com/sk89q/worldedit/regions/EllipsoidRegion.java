@@ -19,7 +19,6 @@
 
 package com.sk89q.worldedit.regions;
 
-import com.sk89q.worldedit.BlockVector;
 import com.sk89q.worldedit.BlockVector2D;
 import com.sk89q.worldedit.LocalWorld;
 import com.sk89q.worldedit.MutableBlockVector;
@@ -202,17 +201,12 @@ public class EllipsoidRegion extends AbstractRegion {
         final Vector max = getMaximumPoint();
         final int centerY = getCenter().getBlockY();
 
-        for (int x = min.getBlockX(); x <= max.getBlockX(); ++x) {
-            for (int z = min.getBlockZ(); z <= max.getBlockZ(); ++z) {
-                if (!contains(new BlockVector(x, centerY, z))) {
-                    continue;
+        for (int z = min.getBlockZ(); z <= max.getBlockZ(); ++z) {
+            forEachSpan(centerY, z, min.getBlockX(), max.getBlockX(), (minX, maxX, y, rowZ) -> {
+                for (int cx = minX >> ChunkStore.CHUNK_SHIFTS; cx <= maxX >> ChunkStore.CHUNK_SHIFTS; cx++) {
+                    chunks.add(new BlockVector2D(cx, rowZ >> ChunkStore.CHUNK_SHIFTS));
                 }
-
-                chunks.add(new BlockVector2D(
-                        x >> ChunkStore.CHUNK_SHIFTS,
-                        z >> ChunkStore.CHUNK_SHIFTS
-                ));
-            }
+            });
         }
 
         return chunks;
@@ -220,17 +214,22 @@ public class EllipsoidRegion extends AbstractRegion {
 
     @Override
     public boolean contains(Vector position) {
-        int cx = position.getBlockX() - center.getBlockX();
+        return contains(position.getBlockX(), position.getBlockY(), position.getBlockZ());
+    }
+
+    @Override
+    public boolean contains(int x, int y, int z) {
+        int cx = x - center.getBlockX();
         int cx2 = cx * cx;
         if (cx2 > radiusSqr.getBlockX()) {
             return false;
         }
-        int cz = position.getBlockZ() - center.getBlockZ();
+        int cz = z - center.getBlockZ();
         int cz2 = cz * cz;
         if (cz2 > radiusSqr.getBlockZ()) {
             return false;
         }
-        int cy = position.getBlockY() - center.getBlockY();
+        int cy = y - center.getBlockY();
         int cy2 = cy * cy;
         if (radiusSqr.getBlockY() < 255 && cy2 > radiusSqr.getBlockY()) {
             return false;
@@ -244,6 +243,37 @@ public class EllipsoidRegion extends AbstractRegion {
         return cxd * cxd + cyd * cyd + czd * czd <= 1;
     }
 
+    @Override
+    public void forEachSpan(int y, int z, int minX, int maxX, SpanVisitor visitor) {
+        int centerX = center.getBlockX();
+        if (!contains(centerX, y, z)) {
+            return;
+        }
+        int cy = y - center.getBlockY();
+        int cz = z - center.getBlockZ();
+        // Each row is symmetric around the center, estimate the half width then correct it against contains
+        double remainder;
+        if (sphere) {
+            remainder = radiusLengthSqr - cy * cy - cz * cz;
+        } else {
+            double cyd = (double) cy / radius.getBlockY();
+            double czd = (double) cz / radius.getBlockZ();
+            remainder = (1 - cyd * cyd - czd * czd) * radius.getBlockX() * radius.getBlockX();
+        }
+        int half = (int) Math.sqrt(Math.max(0, remainder));
+        while (half > 0 && !contains(centerX + half, y, z)) {
+            half--;
+        }
+        while (contains(centerX + half + 1, y, z)) {
+            half++;
+        }
+        int start = Math.max(minX, centerX - half);
+        int end = Math.min(maxX, centerX + half);
+        if (start <= end) {
+            visitor.run(start, end, y, z);
+        }
+    }
+
     /**
      * Returns string representation in the format
      * "(centerX, centerY, centerZ) - (radiusX, radiusY, radiusZ)".
@@ -21,6 +21,7 @@ package com.sk89q.worldedit.regions;
 
 import com.sk89q.worldedit.*;
 import com.sk89q.worldedit.world.World;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 
 import javax.annotation.Nullable;
 import java.util.List;
@@ -122,6 +123,100 @@ public interface Region extends Iterable<BlockVector>, Cloneable {
         return contains(MutableBlockVector.get(x, 0, z));
     }
 
+    /**
+     * Receives the runs of blocks produced by {@link #forEachSpan(SpanVisitor)}
+     */
+    interface SpanVisitor {
+        /**
+         * @param minX the first x in the run (inclusive)
+         * @param maxX the last x in the run (inclusive)
+         * @param y
+         * @param z
+         */
+        void run(int minX, int maxX, int y, int z);
+    }
+
+    /**
+     * Visit the runs of contained blocks in a (y, z) row, limited to [minX, maxX]<br>
+     * - Shapes should override this to compute the runs directly, the default tests each block with {@link #contains(int, int, int)}
+     *
+     * @param y
+     * @param z
+     * @param minX
+     * @param maxX
+     * @param visitor
+     */
+    default void forEachSpan(int y, int z, int minX, int maxX, SpanVisitor visitor) {
+        int start = 0;
+        boolean open = false;
+        for (int x = minX; x <= maxX; x++) {
+            if (contains(x, y, z)) {
+                if (!open) {
+                    start = x;
+                    open = true;
+                }
+            } else if (open) {
+                visitor.run(start, x - 1, y, z);
+                open = false;
+            }
+        }
+        if (open) {
+            visitor.run(start, maxX, y, z);
+        }
+    }
+
+    /**
+     * Visit every block in this region as runs of x<br>
+     * - Runs are grouped by chunk, in the same order as the cuboid iterator (chunk by chunk, then y, z)<br>
+     * - A run never crosses a chunk border
+     *
+     * @param visitor
+     */
+    default void forEachSpan(SpanVisitor visitor) {
+        Vector min = getMinimumPoint();
+        Vector max = getMaximumPoint();
+        int bx = min.getBlockX();
+        int by = min.getBlockY();
+        int bz = min.getBlockZ();
+        int tx = max.getBlockX();
+        int ty = max.getBlockY();
+        int tz = max.getBlockZ();
+        // The rows of a flat region are the same for every y, so they only need to be computed once per chunk
+        boolean flat = this instanceof FlatRegion;
+        IntArrayList rows = flat ? new IntArrayList() : null;
+        for (int cz = bz >> 4; cz <= tz >> 4; cz++) {
+            int czMin = Math.max(bz, cz << 4);
+            int czMax = Math.min(tz, (cz << 4) + 15);
+            for (int cx = bx >> 4; cx <= tx >> 4; cx++) {
+                int cxMin = Math.max(bx, cx << 4);
+                int cxMax = Math.min(tx, (cx << 4) + 15);
+                if (flat) {
+                    rows.clear();
+                    for (int z = czMin; z <= czMax; z++) {
+                        forEachSpan(by, z, cxMin, cxMax, (x1, x2, y, z1) -> {
+                            rows.add(x1);
+                            rows.add(x2);
+                            rows.add(z1);
+                        });
+                    }
+                    int[] arr = rows.elements();
+                    int len = rows.size();
+                    for (int y = by; len != 0 && y <= ty; y++) {
+                        for (int i = 0; i < len; i += 3) {
+                            visitor.run(arr[i], arr[i + 1], y, arr[i + 2]);
+                        }
+                    }
+                } else {
+                    for (int y = by; y <= ty; y++) {
+                        for (int z = czMin; z <= czMax; z++) {
+                            forEachSpan(y, z, cxMin, cxMax, visitor);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     default boolean isGlobal() {
         Vector pos1 = getMinimumPoint();
         Vector pos2 = getMaximumPoint();
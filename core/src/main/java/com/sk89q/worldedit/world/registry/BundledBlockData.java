@@ -20,6 +20,8 @@
 package com.sk89q.worldedit.world.registry;
 
 import com.boydti.fawe.FaweCache;
+import com.boydti.fawe.util.BinarySnapshot;
+import com.boydti.fawe.util.MainUtil;
 import com.google.common.io.Resources;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -33,17 +35,21 @@ import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.WorldEdit;
 import com.sk89q.worldedit.blocks.BaseBlock;
 import com.sk89q.worldedit.blocks.BlockMaterial;
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
@@ -70,6 +76,10 @@ public class BundledBlockData {
 
     private final BlockEntry[] legacyMap = new BlockEntry[4096];
 
+    private static final int SNAPSHOT_VERSION = 1;
+    private volatile boolean loaded;
+    // Url -> hash of the file the blocks were added from
+    private final Map<String, Long> sources = new ConcurrentHashMap<>();
 
     /**
      * Create a new instance.
@@ -78,30 +88,225 @@ public class BundledBlockData {
     }
 
     /**
-     * Attempt to load the data from file.
+     * Attempt to load the data from file (subsequent calls do nothing).
      *
      * @throws IOException thrown on I/O error
      */
     public void loadFromResource() throws IOException {
+        if (loaded) {
+            return;
+        }
         URL url = WorldEdit.getInstance().getClass().getResource("/com/sk89q/worldedit/world/registry/blocks.json");
         add(url, false);
+        loaded = true;
     }
 
+    /**
+     * Add the blocks from a json file<br>
+     * - The parsed blocks are kept in a binary snapshot (see {@link BinarySnapshot}), which is used while the file is unchanged
+     *
+     * @param url
+     * @param overwrite
+     * @throws IOException
+     */
     public void add(URL url, boolean overwrite) throws IOException {
         if (url == null) {
             throw new IOException("Could not find " + url);
         }
-        GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.registerTypeAdapter(Vector.class, new FaweVectorAdapter());
-        Gson gson = gsonBuilder.create();
-        String data = Resources.toString(url, Charset.defaultCharset());
-        List<BlockEntry> entries = gson.fromJson(data, new TypeToken<List<BlockEntry>>() {
-        }.getType());
+        byte[] bytes = Resources.toByteArray(url);
+        long key = BinarySnapshot.hash(bytes);
+        sources.put(url.toString(), key);
+        String name = url.getPath();
+        File file = BinarySnapshot.getFile("registry-" + name.substring(name.lastIndexOf('/') + 1));
+        List<BlockEntry> entries = null;
+        ByteBuffer snapshot = BinarySnapshot.read(file, SNAPSHOT_VERSION, key);
+        if (snapshot != null) {
+            try {
+                entries = readEntries(snapshot);
+            } catch (RuntimeException e) {
+                MainUtil.handleError(e);
+            }
+        }
+        if (entries == null) {
+            GsonBuilder gsonBuilder = new GsonBuilder();
+            gsonBuilder.registerTypeAdapter(Vector.class, new FaweVectorAdapter());
+            Gson gson = gsonBuilder.create();
+            String data = new String(bytes, Charset.defaultCharset());
+            entries = gson.fromJson(data, new TypeToken<List<BlockEntry>>() {
+            }.getType());
+            // Before adding, as adding modifies the states
+            if (file != null) {
+                BinarySnapshot.write(file, SNAPSHOT_VERSION, key, writeEntries(entries));
+            }
+        }
         for (BlockEntry entry : entries) {
             add(entry, overwrite);
         }
     }
 
+    /**
+     * @return a hash of the files the blocks were added from (changes when blocks are added from another file)
+     */
+    public long getFingerprint() {
+        long hash = 0;
+        for (Map.Entry<String, Long> entry : new TreeMap<>(sources).entrySet()) {
+            hash = BinarySnapshot.hash(hash, entry.getKey().hashCode());
+            hash = BinarySnapshot.hash(hash, entry.getValue());
+        }
+        return hash;
+    }
+
+    private byte[] writeEntries(List<BlockEntry> entries) throws IOException {
+        BinarySnapshot.Writer out = new BinarySnapshot.Writer();
+        out.writeInt(entries.size());
+        for (BlockEntry entry : entries) {
+            out.writeInt(entry.legacyId);
+            out.writeString(entry.id);
+            out.writeString(entry.unlocalizedName);
+            out.writeString(entry.localizedName);
+            out.writeInt(entry.aliases == null ? -1 : entry.aliases.size());
+            if (entry.aliases != null) {
+                for (String alias : entry.aliases) {
+                    out.writeString(alias);
+                }
+            }
+            out.writeInt(entry.states == null ? -1 : entry.states.size());
+            if (entry.states != null) {
+                for (Map.Entry<String, FaweState> stateEntry : entry.states.entrySet()) {
+                    FaweState state = stateEntry.getValue();
+                    out.writeString(stateEntry.getKey());
+                    out.writeBoolean(state.dataMask != null);
+                    if (state.dataMask != null) {
+                        out.writeByte(state.dataMask);
+                    }
+                    out.writeInt(state.values == null ? -1 : state.values.size());
+                    if (state.values != null) {
+                        for (Map.Entry<String, FaweStateValue> valueEntry : state.values.entrySet()) {
+                            FaweStateValue value = valueEntry.getValue();
+                            out.writeString(valueEntry.getKey());
+                            out.writeBoolean(value.data != null);
+                            if (value.data != null) {
+                                out.writeByte(value.data);
+                            }
+                            out.writeBoolean(value.direction != null);
+                            if (value.direction != null) {
+                                out.writeDouble(value.direction.getX());
+                                out.writeDouble(value.direction.getY());
+                                out.writeDouble(value.direction.getZ());
+                            }
+                        }
+                    }
+                }
+            }
+            FaweBlockMaterial material = entry.material;
+            out.writeBoolean(material != null);
+            if (material != null) {
+                out.writeBoolean(material.renderedAsNormalBlock);
+                out.writeBoolean(material.fullCube);
+                out.writeBoolean(material.opaque);
+                out.writeBoolean(material.powerSource);
+                out.writeBoolean(material.liquid);
+                out.writeBoolean(material.solid);
+                out.writeFloat(material.hardness);
+                out.writeFloat(material.resistance);
+                out.writeFloat(material.slipperiness);
+                out.writeBoolean(material.grassBlocking);
+                out.writeFloat(material.ambientOcclusionLightValue);
+                out.writeInt(material.lightOpacity);
+                out.writeInt(material.lightValue);
+                out.writeBoolean(material.fragileWhenPushed);
+                out.writeBoolean(material.unpushable);
+                out.writeBoolean(material.adventureModeExempt);
+                out.writeBoolean(material.ticksRandomly);
+                out.writeBoolean(material.usingNeighborLight);
+                out.writeBoolean(material.movementBlocker);
+                out.writeBoolean(material.burnable);
+                out.writeBoolean(material.toolRequired);
+                out.writeBoolean(material.replacedDuringPlacement);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private List<BlockEntry> readEntries(ByteBuffer in) {
+        int size = in.getInt();
+        List<BlockEntry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            BlockEntry entry = new BlockEntry();
+            entry.legacyId = in.getInt();
+            entry.id = BinarySnapshot.readString(in);
+            entry.unlocalizedName = BinarySnapshot.readString(in);
+            entry.localizedName = BinarySnapshot.readString(in);
+            int aliases = in.getInt();
+            if (aliases != -1) {
+                entry.aliases = new ArrayList<>(aliases);
+                for (int j = 0; j < aliases; j++) {
+                    entry.aliases.add(BinarySnapshot.readString(in));
+                }
+            } else {
+                entry.aliases = null;
+            }
+            int states = in.getInt();
+            if (states != -1) {
+                entry.states = new LinkedHashMap<>();
+                for (int j = 0; j < states; j++) {
+                    String stateName = BinarySnapshot.readString(in);
+                    FaweState state = new FaweState();
+                    if (in.get() != 0) {
+                        state.dataMask = in.get();
+                    }
+                    int values = in.getInt();
+                    if (values != -1) {
+                        state.values = new LinkedHashMap<>();
+                        for (int k = 0; k < values; k++) {
+                            String valueName = BinarySnapshot.readString(in);
+                            FaweStateValue value = new FaweStateValue();
+                            if (in.get() != 0) {
+                                value.data = in.get();
+                            }
+                            if (in.get() != 0) {
+                                value.direction = new Vector(in.getDouble(), in.getDouble(), in.getDouble());
+                            }
+                            state.values.put(valueName, value);
+                        }
+                    }
+                    entry.states.put(stateName, state);
+                }
+            } else {
+                entry.states = null;
+            }
+            if (in.get() != 0) {
+                FaweBlockMaterial material = entry.material;
+                material.renderedAsNormalBlock = in.get() != 0;
+                material.fullCube = in.get() != 0;
+                material.opaque = in.get() != 0;
+                material.powerSource = in.get() != 0;
+                material.liquid = in.get() != 0;
+                material.solid = in.get() != 0;
+                material.hardness = in.getFloat();
+                material.resistance = in.getFloat();
+                material.slipperiness = in.getFloat();
+                material.grassBlocking = in.get() != 0;
+                material.ambientOcclusionLightValue = in.getFloat();
+                material.lightOpacity = in.getInt();
+                material.lightValue = in.getInt();
+                material.fragileWhenPushed = in.get() != 0;
+                material.unpushable = in.get() != 0;
+                material.adventureModeExempt = in.get() != 0;
+                material.ticksRandomly = in.get() != 0;
+                material.usingNeighborLight = in.get() != 0;
+                material.movementBlocker = in.get() != 0;
+                material.burnable = in.get() != 0;
+                material.toolRequired = in.get() != 0;
+                material.replacedDuringPlacement = in.get() != 0;
+            } else {
+                entry.material = null;
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
     public Set<String> getBlockNames() {
         return localIdMap.keySet();
     }
@@ -162,6 +367,7 @@ public class BundledBlockData {
         idMap.putIfAbsent(id, entry);
         localIdMap.putIfAbsent(id, entry);
         legacyMap[entry.legacyId] = entry;
+        FaweCache.setMaterial(entry.legacyId, entry.material);
         stateMap.put(entry.id, FaweCache.getBlock(entry.legacyId, 0));
         stateMap.put(id, FaweCache.getBlock(entry.legacyId, 0));
         if (entry.states == null) {
@@ -201,62 +201,7 @@ public class LevelDBToMCAFile extends MapConverter {
 
     private void copySection(byte[] dest, byte[] src, int srcPos) {
         if (src.length <= srcPos) return;
-        switch (dest.length) {
-            case 4096: {
-                int index = 0;
-                int i1, i2, i3;
-                for (int y = 0; y < 16; y++) {
-                    i1 = y;
-                    for (int z = 0; z < 16; z++) {
-                        i2 = i1 + (z << 4);
-                        for (int x = 0; x < 16; x++) {
-                            i3 = i2 + (x << 8);
-                            dest[index] = src[srcPos + i3];
-                            index++;
-                        }
-                    }
-                }
-                break;
-            }
-            case 2048: {
-                int index = 0;
-                int i1, i2, i3, i4;
-                for (int x = 0; x < 16;) {
-                    {
-                        i1 = x;
-                        for (int z = 0; z < 16; z++) {
-                            i2 = i1 + (z << 4);
-                            for (int y = 0; y < 16; y += 2) {
-                                i3 = i2 + (y << 8);
-                                i4 = i2 + ((y + 1) << 8);
-                                byte newVal = (byte) ((src[srcPos + (i3 >> 1)] & 0xF) + ((src[srcPos + (i4 >> 1)] & 0xF) << 4));
-                                dest[index] = newVal;
-                                index++;
-                            }
-                        }
-                    }
-                    x++;
-                    {
-                        i1 = x;
-                        for (int z = 0; z < 16; z++) {
-                            i2 = i1 + (z << 4);
-                            for (int y = 0; y < 16; y += 2) {
-                                i3 = i2 + (y << 8);
-                                i4 = i2 + ((y + 1) << 8);
-                                byte newVal = (byte) (((src[srcPos + (i3 >> 1)] & 0xF0) >> 4) + ((src[srcPos + (i4 >> 1)] & 0xF0)));
-                                dest[index] = newVal;
-                                index++;
-                            }
-                        }
-                    }
-                    x++;
-
-                }
-                break;
-            }
-            default:
-                System.arraycopy(src, srcPos, dest, 0, dest.length);
-        }
+        SectionOrder.convert(src, srcPos, dest, 0, dest.length);
     }
 
     private byte[] getOrCreate(byte[][] arr, int index, int len) {
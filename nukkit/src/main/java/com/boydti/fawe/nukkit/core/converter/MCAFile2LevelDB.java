@@ -46,6 +46,7 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -53,10 +54,12 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.PriorityQueue;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.zip.GZIPInputStream;
@@ -65,9 +68,17 @@ import net.jpountz.lz4.LZ4BlockOutputStream;
 import org.iq80.leveldb.CompressionType;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.Options;
+import org.iq80.leveldb.WriteBatch;
 import org.iq80.leveldb.impl.Iq80DBFactory;
 
 public class MCAFile2LevelDB extends MapConverter {
+    // Bytes of spilled entries sorted in memory at once
+    private static final long RUN_SIZE = 67108864;
+    // Bytes per LevelDB write batch
+    private static final long BATCH_SIZE = 8388608;
+    // Number of cache files sorted ahead of the one being written
+    private static final int SORT_AHEAD = 2;
+
     private final byte[] VERSION = new byte[] { 4 };
     private final byte[] COMPLETE_STATE = new byte[] { 2, 0, 0, 0 };
 
@@ -322,10 +333,23 @@ public class MCAFile2LevelDB extends MapConverter {
 
             resetProgress(cache.size());
             ArrayList<FileCache> files = new ArrayList<>(cache.values());
+            // Files are in key order, so together with sorting each file the whole database is written in order
             Collections.sort(files);
-            for (FileCache file : files) {
-                file.close();
-                progress(1);
+            // Sort the next files while the current one is written to the database
+            ForkJoinPool sortPool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+            try {
+                ArrayDeque<Future<SortedEntries>> sorted = new ArrayDeque<>();
+                Iterator<FileCache> iter = files.iterator();
+                while (iter.hasNext() || !sorted.isEmpty()) {
+                    while (iter.hasNext() && sorted.size() <= SORT_AHEAD) {
+                        FileCache file = iter.next();
+                        sorted.add(sortPool.submit(file::sort));
+                    }
+                    sorted.poll().get().write();
+                    progress(1);
+                }
+            } finally {
+                sortPool.shutdown();
             }
 
             Fawe.debugPlain("Closing");
@@ -537,10 +561,12 @@ public class MCAFile2LevelDB extends MapConverter {
         private FaweOutputStream os;
         private final File file;
         private int id;
+        private final int chunkX;
         int numKeys = 0;
 
-        public FileCache(int id) throws IOException {
+        public FileCache(int id, int chunkX) throws IOException {
             this.id = id;
+            this.chunkX = chunkX;
             this.file = new File(getFolderTo() + File.separator + "cache" + File.separator + Integer.toHexString(id));
         }
 
@@ -565,10 +591,25 @@ public class MCAFile2LevelDB extends MapConverter {
 
         @Override
         public void close() throws IOException {
-            try {
-                this.os.close();
+            sort().write();
+        }
 
-                FaweInputStream in = new FaweInputStream(new ZstdInputStream(new LZ4BlockInputStream(new BufferedInputStream(new FileInputStream(file)))));
+        /**
+         * Read the spilled entries back and sort them by key<br>
+         * - Runs larger than RUN_SIZE are sorted and spilled again, then merged when written
+         *
+         * @return the sorted entries
+         * @throws IOException
+         */
+        public SortedEntries sort() throws IOException {
+            SortedEntries sorted = new SortedEntries();
+            if (os == null) {
+                return sorted;
+            }
+            this.os.close();
+            try (FaweInputStream in = new FaweInputStream(new ZstdInputStream(new LZ4BlockInputStream(new BufferedInputStream(new FileInputStream(file)))))) {
+                ArrayList<byte[][]> run = new ArrayList<>();
+                long runSize = 0;
                 for (int i = 0; i < numKeys; i++) {
                     int len = in.readVarInt();
                     byte[] key = new byte[len];
@@ -577,22 +618,182 @@ public class MCAFile2LevelDB extends MapConverter {
                     len = in.readVarInt();
                     byte[] value = new byte[len];
                     in.readFully(value);
-                    db.put(key, value);
+
+                    run.add(new byte[][] {key, value});
+                    runSize += key.length + value.length + 32;
+                    if (runSize > RUN_SIZE) {
+                        sorted.runs.add(spill(run, sorted.runs.size()));
+                        run = new ArrayList<>();
+                        runSize = 0;
+                    }
+                }
+                // Stable, so a key written twice keeps its order
+                run.sort(KEY_ORDER);
+                sorted.last = run;
+            }
+            file.delete();
+            return sorted;
+        }
+
+        private File spill(ArrayList<byte[][]> run, int index) throws IOException {
+            run.sort(KEY_ORDER);
+            File runFile = new File(file.getPath() + "." + index);
+            try (FaweOutputStream out = new FaweOutputStream(new BufferedOutputStream(new LZ4BlockOutputStream(new FileOutputStream(runFile))))) {
+                out.writeVarInt(run.size());
+                for (byte[][] entry : run) {
+                    out.writeVarInt(entry[0].length);
+                    out.write(entry[0]);
+                    out.writeVarInt(entry[1].length);
+                    out.write(entry[1]);
                 }
-                in.close();
-                file.delete();
-            } catch (Throwable e) {
-                e.printStackTrace();
-                throw e;
             }
+            return runFile;
         }
 
         @Override
         public int compareTo(FileCache other) {
-            return Integer.compareUnsigned(this.id, other.id);
+            // Keys start with the little endian chunk x
+            return Integer.compareUnsigned(Integer.reverseBytes(this.chunkX), Integer.reverseBytes(other.chunkX));
+        }
+    }
+
+    /**
+     * The sorted entries of a FileCache, written to the database in large batches
+     */
+    private class SortedEntries {
+        private final List<File> runs = new ArrayList<>();
+        private List<byte[][]> last = Collections.emptyList();
+
+        public void write() throws IOException {
+            if (runs.isEmpty()) {
+                write(last.iterator());
+                return;
+            }
+            // Merge the runs, ties go to the earlier run so the last write of a key wins
+            List<Iterator<byte[][]>> sources = new ArrayList<>();
+            List<FaweInputStream> streams = new ArrayList<>();
+            try {
+                for (File runFile : runs) {
+                    FaweInputStream in = new FaweInputStream(new LZ4BlockInputStream(new BufferedInputStream(new FileInputStream(runFile))));
+                    streams.add(in);
+                    sources.add(new RunIterator(in));
+                }
+                sources.add(last.iterator());
+                PriorityQueue<MergeEntry> merge = new PriorityQueue<>();
+                for (int i = 0; i < sources.size(); i++) {
+                    Iterator<byte[][]> source = sources.get(i);
+                    if (source.hasNext()) merge.add(new MergeEntry(source.next(), i));
+                }
+                write(new Iterator<byte[][]>() {
+                    @Override
+                    public boolean hasNext() {
+                        return !merge.isEmpty();
+                    }
+
+                    @Override
+                    public byte[][] next() {
+                        MergeEntry entry = merge.poll();
+                        Iterator<byte[][]> source = sources.get(entry.source);
+                        if (source.hasNext()) merge.add(new MergeEntry(source.next(), entry.source));
+                        return entry.value;
+                    }
+                });
+            } finally {
+                for (FaweInputStream in : streams) {
+                    in.close();
+                }
+                for (File runFile : runs) {
+                    runFile.delete();
+                }
+            }
+        }
+
+        private void write(Iterator<byte[][]> entries) throws IOException {
+            WriteBatch batch = db.createWriteBatch();
+            try {
+                long batchSize = 0;
+                while (entries.hasNext()) {
+                    byte[][] entry = entries.next();
+                    batch.put(entry[0], entry[1]);
+                    batchSize += entry[0].length + entry[1].length;
+                    if (batchSize > BATCH_SIZE) {
+                        db.write(batch);
+                        batch.close();
+                        batch = db.createWriteBatch();
+                        batchSize = 0;
+                    }
+                }
+                if (batchSize != 0) {
+                    db.write(batch);
+                }
+            } finally {
+                batch.close();
+            }
         }
     }
 
+    private static class RunIterator implements Iterator<byte[][]> {
+        private final FaweInputStream in;
+        private int remaining;
+
+        public RunIterator(FaweInputStream in) throws IOException {
+            this.in = in;
+            this.remaining = in.readVarInt();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public byte[][] next() {
+            try {
+                remaining--;
+                byte[] key = new byte[in.readVarInt()];
+                in.readFully(key);
+                byte[] value = new byte[in.readVarInt()];
+                in.readFully(value);
+                return new byte[][] {key, value};
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static class MergeEntry implements Comparable<MergeEntry> {
+        private final byte[][] value;
+        private final int source;
+
+        public MergeEntry(byte[][] value, int source) {
+            this.value = value;
+            this.source = source;
+        }
+
+        @Override
+        public int compareTo(MergeEntry other) {
+            int result = KEY_ORDER.compare(value, other.value);
+            return result != 0 ? result : Integer.compare(source, other.source);
+        }
+    }
+
+    /**
+     * LevelDB's default (bytewise unsigned) key order
+     */
+    private static final Comparator<byte[][]> KEY_ORDER = new Comparator<byte[][]>() {
+        @Override
+        public int compare(byte[][] o1, byte[][] o2) {
+            byte[] a = o1[0];
+            byte[] b = o2[0];
+            int len = Math.min(a.length, b.length);
+            for (int i = 0; i < len; i++) {
+                int result = (a[i] & 0xFF) - (b[i] & 0xFF);
+                if (result != 0) return result;
+            }
+            return a.length - b.length;
+        }
+    };
+
     private Int2ObjectOpenHashMap<FileCache> cache = new Int2ObjectOpenHashMap<>();
 
     private FileCache getFileCache(MCAChunk chunk, int dim) throws IOException {
@@ -603,7 +804,7 @@ public class MCAFile2LevelDB extends MapConverter {
             }
             FileCache cached = cache.get(key);
             if (cached == null) {
-                cached = new FileCache(key);
+                cached = new FileCache(key, chunk.getX());
                 cache.put(key, cached);
             }
             return cached;
@@ -611,62 +812,7 @@ public class MCAFile2LevelDB extends MapConverter {
     }
 
     private void copySection(byte[] src, byte[] dest, int destPos) {
-        switch (src.length) {
-            case 4096: {
-                int index = 0;
-                int i1, i2, i3;
-                for (int y = 0; y < 16; y++) {
-                    i1 = y;
-                    for (int z = 0; z < 16; z++) {
-                        i2 = i1 + (z << 4);
-                        for (int x = 0; x < 16; x++) {
-                            i3 = i2 + (x << 8);
-                            dest[destPos + i3] = src[index];
-                            index++;
-                        }
-                    }
-                }
-                break;
-            }
-            case 2048: {
-                int index = 0;
-                int i1, i2, i3, i4;
-                for (int x = 0; x < 16;) {
-                    {
-                        i1 = x;
-                        for (int z = 0; z < 16; z++) {
-                            i2 = i1 + (z << 4);
-                            for (int y = 0; y < 16; y += 2) {
-                                i3 = i2 + (y << 8);
-                                i4 = i2 + ((y + 1) << 8);
-                                byte newVal = (byte) ((src[i3 >> 1] & 0xF) + ((src[i4 >> 1] & 0xF) << 4));
-                                dest[destPos + index] = newVal;
-                                index++;
-                            }
-                        }
-                    }
-                    x++;
-                    {
-                        i1 = x;
-                        for (int z = 0; z < 16; z++) {
-                            i2 = i1 + (z << 4);
-                            for (int y = 0; y < 16; y += 2) {
-                                i3 = i2 + (y << 8);
-                                i4 = i2 + ((y + 1) << 8);
-                                byte newVal = (byte) (((src[i3 >> 1] & 0xF0) >> 4) + ((src[i4 >> 1] & 0xF0)));
-                                dest[destPos + index] = newVal;
-                                index++;
-                            }
-                        }
-                    }
-                    x++;
-
-                }
-                break;
-            }
-            default:
-                System.arraycopy(src, 0, dest, destPos, src.length);
-        }
+        SectionOrder.convert(src, 0, dest, destPos, src.length);
     }
 
     private byte[] write(Collection<com.sk89q.jnbt.Tag> tags) throws IOException {
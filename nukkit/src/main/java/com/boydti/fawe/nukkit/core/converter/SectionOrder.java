@@ -0,0 +1,120 @@
+package com.boydti.fawe.nukkit.core.converter;
+
+/**
+ * Converts 16x16x16 section arrays between the PC (YZX) and PE (XZY) block order<br>
+ * - Both orders only differ by swapping x and y, so the same transform converts in either direction<br>
+ * - Id arrays use a precomputed permutation, nibble arrays are transposed a word (16 nibbles) at a time
+ */
+public final class SectionOrder {
+
+    /**
+     * Index in the other order, for each block index
+     */
+    private static final short[] SWAP_XY = new short[4096];
+
+    static {
+        for (int i = 0; i < 4096; i++) {
+            SWAP_XY[i] = (short) (((i & 0xF) << 8) | (i & 0xF0) | (i >> 8));
+        }
+    }
+
+    // Nibble columns kept in place by each transpose step
+    private static final long MASK_8 = 0x00000000FFFFFFFFL;
+    private static final long MASK_4 = 0x0000FFFF0000FFFFL;
+    private static final long MASK_2 = 0x00FF00FF00FF00FFL;
+    private static final long MASK_1 = 0x0F0F0F0F0F0F0F0FL;
+
+    private SectionOrder() {}
+
+    /**
+     * Convert a section array (ids: 4096 bytes, nibbles: 2048 bytes)<br>
+     * - Other lengths are copied as is
+     *
+     * @param src
+     * @param srcPos
+     * @param dest
+     * @param destPos
+     * @param length the length of the section array
+     */
+    public static void convert(byte[] src, int srcPos, byte[] dest, int destPos, int length) {
+        switch (length) {
+            case 4096:
+                convertIds(src, srcPos, dest, destPos);
+                break;
+            case 2048:
+                convertNibbles(src, srcPos, dest, destPos);
+                break;
+            default:
+                System.arraycopy(src, srcPos, dest, destPos, length);
+        }
+    }
+
+    /**
+     * Convert a 4096 byte id array
+     */
+    public static void convertIds(byte[] src, int srcPos, byte[] dest, int destPos) {
+        for (int i = 0; i < 4096; i++) {
+            dest[destPos + SWAP_XY[i]] = src[srcPos + i];
+        }
+    }
+
+    /**
+     * Convert a 2048 byte nibble array (data, sky light, block light)<br>
+     * - For each z, the 16x16 (y, x) nibble matrix is read as 16 longs and transposed in place
+     */
+    public static void convertNibbles(byte[] src, int srcPos, byte[] dest, int destPos) {
+        long[] rows = new long[16];
+        for (int z = 0; z < 16; z++) {
+            int zOffset = z << 3;
+            for (int row = 0; row < 16; row++) {
+                rows[row] = readLong(src, srcPos + (row << 7) + zOffset);
+            }
+            transpose(rows, 8, MASK_8);
+            transpose(rows, 4, MASK_4);
+            transpose(rows, 2, MASK_2);
+            transpose(rows, 1, MASK_1);
+            for (int row = 0; row < 16; row++) {
+                writeLong(dest, destPos + (row << 7) + zOffset, rows[row]);
+            }
+        }
+    }
+
+    /**
+     * Swap the off-diagonal blocks of size s for each pair of rows (r, r + s)
+     */
+    private static void transpose(long[] rows, int s, long mask) {
+        int shift = s << 2;
+        for (int r = 0; r < 16; r++) {
+            if ((r & s) != 0) {
+                continue;
+            }
+            long a = rows[r];
+            long b = rows[r + s];
+            long t = ((a >>> shift) ^ b) & mask;
+            rows[r + s] = b ^ t;
+            rows[r] = a ^ (t << shift);
+        }
+    }
+
+    private static long readLong(byte[] array, int pos) {
+        return (array[pos] & 0xFFL)
+                | (array[pos + 1] & 0xFFL) << 8
+                | (array[pos + 2] & 0xFFL) << 16
+                | (array[pos + 3] & 0xFFL) << 24
+                | (array[pos + 4] & 0xFFL) << 32
+                | (array[pos + 5] & 0xFFL) << 40
+                | (array[pos + 6] & 0xFFL) << 48
+                | (array[pos + 7] & 0xFFL) << 56;
+    }
+
+    private static void writeLong(byte[] array, int pos, long value) {
+        array[pos] = (byte) value;
+        array[pos + 1] = (byte) (value >>> 8);
+        array[pos + 2] = (byte) (value >>> 16);
+        array[pos + 3] = (byte) (value >>> 24);
+        array[pos + 4] = (byte) (value >>> 32);
+        array[pos + 5] = (byte) (value >>> 40);
+        array[pos + 6] = (byte) (value >>> 48);
+        array[pos + 7] = (byte) (value >>> 56);
+    }
+}